@@ -12,7 +12,7 @@
 package com.pursuer.reader.easyrss;
 
 import java.net.URLEncoder;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 import com.pursuer.reader.easyrss.R;
@@ -226,7 +226,8 @@ public class FeedViewCtrl extends AbsViewCtrl implements ItemListWrapperListener
     final private boolean isDecendingOrdering;
     private boolean isEnd;
     private String lastDateString;
-    private long lastTimestamp;
+    private Long lastTimestamp;
+    private String lastUid;
     final private ItemListWrapper lstWrapper;
     private ItemDataSyncer syncer;
     private final String uid;
@@ -244,13 +245,14 @@ public class FeedViewCtrl extends AbsViewCtrl implements ItemListWrapperListener
         this.viewType = viewType;
         this.isAvailable = false;
         this.isEnd = false;
-        this.lastTimestamp = 0;
+        this.lastTimestamp = null;
+        this.lastUid = null;
 
         lstWrapper.setListener(this);
         lstWrapper.setAdapterListener(new FeedListAdapterListener());
     }
 
-    private String getCondition(final long timestamp) {
+    private String getCondition() {
         final StringBuilder builder = new StringBuilder();
         if (viewType == Home.VIEW_TYPE_UNREAD) {
             appendCondition(builder, ItemState._ISREAD + "=0");
@@ -260,13 +262,6 @@ public class FeedViewCtrl extends AbsViewCtrl implements ItemListWrapperListener
         if (uid.length() > 0 && !DataUtils.isTagUid(uid)) {
             appendCondition(builder, Item._SOURCEURI + "=\"" + uid + "\"");
         }
-        if (timestamp > 0) {
-            if (isDecendingOrdering) {
-                appendCondition(builder, Item._TIMESTAMP + "<" + timestamp);
-            } else {
-                appendCondition(builder, Item._TIMESTAMP + ">" + timestamp);
-            }
-        }
         return builder.toString();
     }
 
@@ -319,18 +314,18 @@ public class FeedViewCtrl extends AbsViewCtrl implements ItemListWrapperListener
             @Override
             public void run() {
                 final ContentResolver resolver = context.getContentResolver();
-                String condition = getCondition(0);
+                String condition = getCondition();
                 condition = appendCondition(condition, ItemState._ISREAD + "=0");
                 @SuppressWarnings("deprecation")
                 final Uri uri = DataUtils.isTagUid(uid) ? Uri.withAppendedPath(Tag.CONTENT_URI,
                         "items/" + URLEncoder.encode(uid)) : Item.CONTENT_URI;
-                final Cursor cur = resolver.query(uri, null, condition, null, null);
-                final List<Item> items = new LinkedList<Item>();
+                final Cursor cur = resolver.query(uri, new String[] { Item._UID }, condition, null, null);
+                final List<String> uids = new ArrayList<String>(cur.getCount());
                 for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
-                    items.add(Item.fromCursor(cur));
+                    uids.add(cur.getString(0));
                 }
                 cur.close();
-                dataMgr.markItemsAsReadWithTransaction(items);
+                dataMgr.markItemsAsReadWithTransaction(uids);
                 NetworkMgr.getInstance().startImmediateItemStateSyncing();
                 handler.sendMessage(handler.obtainMessage(MSG_DISMISS_DIALOG, pDialog));
                 handler.sendMessage(handler.obtainMessage(MSG_QUIT, FeedViewCtrl.this));
@@ -421,17 +416,11 @@ public class FeedViewCtrl extends AbsViewCtrl implements ItemListWrapperListener
             return;
         }
         lstWrapper.removeItemEnd();
-        final ContentResolver resolver = context.getContentResolver();
-        @SuppressWarnings("deprecation")
-        final Uri uri = DataUtils.isTagUid(uid) ? Uri.withAppendedPath(Tag.CONTENT_URI,
-                "items/" + URLEncoder.encode(uid)) : Item.CONTENT_URI;
-        final Cursor cur = resolver.query(uri, ITEM_PROJECTION, getCondition(lastTimestamp), null, Item._TIMESTAMP
-                + ((isDecendingOrdering) ? " DESC LIMIT 20" : " LIMIT 20"));
-        int count = 0;
-        for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
-            final Item item = Item.fromCursor(cur);
-            count++;
+        final List<Item> items = dataMgr.getItemPage(uid, viewType, isDecendingOrdering, lastTimestamp, lastUid,
+                20, ITEM_PROJECTION);
+        for (final Item item : items) {
             lastTimestamp = item.getTimestamp();
+            lastUid = item.getUid();
             final String curDateString = Utils.timestampToTimeAgo(context, item.getTimestamp());
             if (!curDateString.equals(lastDateString)) {
                 String s;
@@ -454,8 +443,7 @@ public class FeedViewCtrl extends AbsViewCtrl implements ItemListWrapperListener
             }
             lstWrapper.updateItem(item);
         }
-        cur.close();
-        if (count < 20) {
+        if (items.size() < 20) {
             if (!isDecendingOrdering || (viewType == Home.VIEW_TYPE_STARRED && uid.length() > 0)) {
                 lstWrapper.updateItemEndDisabled();
             } else {
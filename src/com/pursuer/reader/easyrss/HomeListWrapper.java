@@ -11,6 +11,8 @@
 
 package com.pursuer.reader.easyrss;
 
+import java.util.Collection;
+
 import com.pursuer.reader.easyrss.R;
 import com.pursuer.reader.easyrss.data.DataMgr;
 import com.pursuer.reader.easyrss.data.DataUtils;
@@ -29,6 +31,7 @@ import com.pursuer.reader.easyrss.listadapter.ListItemTitle;
 import com.pursuer.reader.easyrss.listadapter.OnItemTouchListener;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.widget.ListView;
 
 class HomeListWrapper implements OnTagUpdatedListener, OnSubscriptionUpdatedListener, OnSettingUpdatedListener {
@@ -160,6 +163,15 @@ class HomeListWrapper implements OnTagUpdatedListener, OnSubscriptionUpdatedList
     }
 
     @Override
+    public void onSubscriptionsUpdated(final Collection<Subscription> subs) {
+        adapter.setNotifyOnChange(false);
+        for (final Subscription sub : subs) {
+            onSubscriptionUpdated(sub);
+        }
+        adapter.setNotifyOnChange(true);
+        adapter.notifyDataSetChanged();
+    }
+
     public void onSubscriptionUpdated(final Subscription sub) {
         int loc = adapter.getCount();
         boolean erased = false, updated = false;
@@ -172,7 +184,8 @@ class HomeListWrapper implements OnTagUpdatedListener, OnSubscriptionUpdatedList
             }
             loc--;
         } else {
-            if (sub.getIcon() == null) {
+            final Bitmap icon = sub.getIcon();
+            if (icon == null) {
                 if (!adapter.updateItem(
                         new ListItemSubTag(sub.getUid(), sub.getTitle(), showNumber() ? sub.getUnreadCount() : 0, view
                                 .getResources(), R.drawable.icon_subscription_16), loc)) {
@@ -180,8 +193,8 @@ class HomeListWrapper implements OnTagUpdatedListener, OnSubscriptionUpdatedList
                 }
             } else {
                 if (!adapter.updateItem(
-                        new ListItemSubTag(sub.getUid(), sub.getTitle(), showNumber() ? sub.getUnreadCount() : 0, sub
-                                .getIcon()), loc)) {
+                        new ListItemSubTag(sub.getUid(), sub.getTitle(), showNumber() ? sub.getUnreadCount() : 0,
+                                icon), loc)) {
                     subscriptionCount++;
                 }
             }
@@ -200,6 +213,15 @@ class HomeListWrapper implements OnTagUpdatedListener, OnSubscriptionUpdatedList
     }
 
     @Override
+    public void onTagsUpdated(final Collection<Tag> tags) {
+        adapter.setNotifyOnChange(false);
+        for (final Tag tag : tags) {
+            onTagUpdated(tag);
+        }
+        adapter.setNotifyOnChange(true);
+        adapter.notifyDataSetChanged();
+    }
+
     public void onTagUpdated(final Tag tag) {
         if (DataUtils.isUserTagUid(tag.getUid())) {
             int loc = adapter.getItemLocationById(AbsListItem.ID_TITLE_SUBSCRIPTIONS);
@@ -12,6 +12,8 @@
 package com.pursuer.reader.easyrss;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.TimeZone;
 
 import com.pursuer.reader.easyrss.R;
@@ -161,7 +163,8 @@ public class HomeViewCtrl extends AbsViewCtrl implements HorizontalPagerListener
 
     @Override
     public void handleOnSyncFinished(final String syncerType, final boolean succeeded) {
-        setProgressBarVisibility(false);
+        /* Other syncs may still run, nested in this one or on other workers. */
+        setProgressBarVisibility(NetworkMgr.getInstance().isSyncing());
         if (succeeded) {
             showSyncingProgress();
         }
@@ -399,25 +402,27 @@ public class HomeViewCtrl extends AbsViewCtrl implements HorizontalPagerListener
     private void showHomeList() {
         final ContentResolver resolver = context.getContentResolver();
         {
+            final List<Tag> tags = new ArrayList<Tag>();
             final Cursor cur = resolver.query(Tag.CONTENT_URI, TAG_PROJECTION, null, null, null);
             for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
-                final Tag tag = Tag.fromCursor(cur);
-                lstWrapperAll.onTagUpdated(tag);
-                lstWrapperStarred.onTagUpdated(tag);
-                lstWrapperUnread.onTagUpdated(tag);
+                tags.add(Tag.fromCursor(cur));
             }
             cur.close();
+            lstWrapperAll.onTagsUpdated(tags);
+            lstWrapperStarred.onTagsUpdated(tags);
+            lstWrapperUnread.onTagsUpdated(tags);
         }
 
         {
+            final List<Subscription> subs = new ArrayList<Subscription>();
             final Cursor cur = resolver.query(Subscription.CONTENT_URI, SUBSCRIPTION_PROJECTION, null, null, null);
             for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
-                final Subscription sub = Subscription.fromCursor(cur);
-                lstWrapperAll.onSubscriptionUpdated(sub);
-                lstWrapperStarred.onSubscriptionUpdated(sub);
-                lstWrapperUnread.onSubscriptionUpdated(sub);
+                subs.add(Subscription.fromCursor(cur));
             }
             cur.close();
+            lstWrapperAll.onSubscriptionsUpdated(subs);
+            lstWrapperStarred.onSubscriptionsUpdated(subs);
+            lstWrapperUnread.onSubscriptionsUpdated(subs);
         }
     }
 
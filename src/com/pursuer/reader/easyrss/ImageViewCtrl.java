@@ -11,18 +11,13 @@
 
 package com.pursuer.reader.easyrss;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLConnection;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Handler;
 import android.os.Message;
 import android.view.View;
@@ -32,6 +27,10 @@ import android.widget.Toast;
 import android.widget.ZoomControls;
 
 import com.pursuer.reader.easyrss.data.DataMgr;
+import com.pursuer.reader.easyrss.data.ImageRef;
+import com.pursuer.reader.easyrss.network.ImageTranscoder;
+import com.pursuer.reader.easyrss.network.NetworkClient;
+import com.pursuer.reader.easyrss.network.NetworkClient.NetworkException;
 import com.pursuer.reader.easyrss.view.AbsViewCtrl;
 import com.pursuer.reader.easyrss.view.OnScaleChangedListener;
 import com.pursuer.reader.easyrss.view.TouchImageView;
@@ -112,6 +111,8 @@ public class ImageViewCtrl extends AbsViewCtrl implements ItemListWrapperListene
     };
     static final private int MSG_IMG_FAILED = 0;
     static final private int MSG_IMG_READY = 1;
+    /* The largest texture many devices can draw. */
+    static final private int MAX_IMAGE_SIZE = 2048;
 
     final private String imgPath;
     private Bitmap bitmap;
@@ -135,42 +136,33 @@ public class ImageViewCtrl extends AbsViewCtrl implements ItemListWrapperListene
         final Thread thread = new Thread() {
             @Override
             public void run() {
+                Bitmap bitmap = null;
                 if (imgPath.endsWith(".erss")) {
-                    final Bitmap bitmap = BitmapFactory.decodeFile(imgPath);
-                    if (bitmap != null) {
-                        ImageViewCtrl.this.bitmap = bitmap;
-                        handler.sendMessage(handler.obtainMessage(MSG_IMG_READY, ImageViewCtrl.this));
-                    } else {
-                        handler.sendMessage(handler.obtainMessage(MSG_IMG_FAILED, ImageViewCtrl.this));
-                    }
+                    bitmap = ImageTranscoder.decodeFile(imgPath, MAX_IMAGE_SIZE);
                 } else {
                     try {
-                        final URLConnection connection = new URL(imgPath).openConnection();
-                        connection.setConnectTimeout(30 * 1000);
-                        connection.setReadTimeout(20 * 1000);
-                        final InputStream inputStream = connection.getInputStream();
-                        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                        final byte[] buff = new byte[8192];
-                        int len;
-                        while ((len = inputStream.read(buff)) != -1) {
-                            outputStream.write(buff, 0, len);
-                        }
-                        outputStream.flush();
-                        final byte[] imageBytes = outputStream.toByteArray();
-                        final Bitmap bitmap = BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length);
-                        if (bitmap != null) {
-                            ImageViewCtrl.this.bitmap = bitmap;
-                            handler.sendMessage(handler.obtainMessage(MSG_IMG_READY, ImageViewCtrl.this));
-                        } else {
-                            handler.sendMessage(handler.obtainMessage(MSG_IMG_FAILED, ImageViewCtrl.this));
-                        }
+                        final byte[] imageBytes = NetworkClient.getInstance().doGetByte(imgPath, false);
+                        bitmap = ImageTranscoder.decodeByteArray(imageBytes, MAX_IMAGE_SIZE);
                     } catch (final MalformedURLException exception) {
                         exception.printStackTrace();
-                        handler.sendMessage(handler.obtainMessage(MSG_IMG_FAILED, ImageViewCtrl.this));
                     } catch (final IOException exception) {
                         exception.printStackTrace();
-                        handler.sendMessage(handler.obtainMessage(MSG_IMG_FAILED, ImageViewCtrl.this));
+                    } catch (final NetworkException exception) {
+                        exception.printStackTrace();
                     }
+                    if (bitmap == null) {
+                        /* Offline, the copy stored (and maybe shrunk) for the items is shown. */
+                        final File file = new File(ImageRef.getStoragePathByHash(ImageRef.hashUrl(imgPath)));
+                        if (file.exists()) {
+                            bitmap = ImageTranscoder.decodeFile(file.getPath(), MAX_IMAGE_SIZE);
+                        }
+                    }
+                }
+                if (bitmap != null) {
+                    ImageViewCtrl.this.bitmap = bitmap;
+                    handler.sendMessage(handler.obtainMessage(MSG_IMG_READY, ImageViewCtrl.this));
+                } else {
+                    handler.sendMessage(handler.obtainMessage(MSG_IMG_FAILED, ImageViewCtrl.this));
                 }
             }
         };
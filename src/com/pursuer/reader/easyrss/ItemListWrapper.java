@@ -11,6 +11,8 @@
 
 package com.pursuer.reader.easyrss;
 
+import java.util.Collection;
+
 import android.widget.AbsListView;
 import android.widget.AbsListView.OnScrollListener;
 import android.widget.ListView;
@@ -60,13 +62,22 @@ public class ItemListWrapper implements OnItemUpdatedListener {
         return listener;
     }
 
-    @Override
     public void onItemUpdated(final Item item) {
         if (adapter.hasItem(item.getUid())) {
             updateItem(item);
         }
     }
 
+    @Override
+    public void onItemsUpdated(final Collection<Item> items) {
+        adapter.setNotifyOnChange(false);
+        for (final Item item : items) {
+            onItemUpdated(item);
+        }
+        adapter.setNotifyOnChange(true);
+        adapter.notifyDataSetChanged();
+    }
+
     public void removeItemEnd() {
         final Integer loc = adapter.getItemLocationById(AbsListItem.ID_END);
         if (loc != null) {
@@ -151,7 +151,6 @@ public class SettingsViewCtrl extends AbsViewCtrl implements OnSettingUpdatedLis
             showSettingImageFetching();
         } else if (name.equals(Setting.SETTING_MAX_ITEMS)) {
             showSettingMaxItems();
-            final SettingMaxItems sMaxItems = new SettingMaxItems(dataMgr);
             final ProgressDialog dialog = ProgressDialog.show(context, context.getString(R.string.TxtWorking),
                     context.getString(R.string.TxtRemovingOutdatedItems));
             final Handler handler = new Handler() {
@@ -165,7 +164,7 @@ public class SettingsViewCtrl extends AbsViewCtrl implements OnSettingUpdatedLis
             final Thread thread = new Thread() {
                 @Override
                 public void run() {
-                    dataMgr.removeOutdatedItemsWithLimit(sMaxItems.getData());
+                    dataMgr.removeOutdatedItems();
                     handler.sendEmptyMessage(0);
                 }
             };
@@ -14,8 +14,12 @@ package com.pursuer.reader.easyrss;
 import com.pursuer.reader.easyrss.R;
 import com.pursuer.reader.easyrss.data.DataMgr;
 import com.pursuer.reader.easyrss.listadapter.ListItemItem;
+import com.pursuer.reader.easyrss.network.ItemContentDataSyncer;
 import com.pursuer.reader.easyrss.view.AbsViewCtrl;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import android.content.Context;
 import android.os.Handler;
 import android.os.Message;
@@ -113,6 +117,7 @@ public class VerticalItemViewCtrl extends AbsViewCtrl implements VerticalSingleI
 
         curSingleItemView = initView();
         curSingleItemView.loadContent();
+        prioritizeImages();
     }
 
     @Override
@@ -132,6 +137,19 @@ public class VerticalItemViewCtrl extends AbsViewCtrl implements VerticalSingleI
         }
     }
 
+    /*
+     * Fetches the images of the item shown and of the next one first.
+     */
+    private void prioritizeImages() {
+        final List<String> uids = new ArrayList<String>(2);
+        uids.add(uid);
+        final ListItemItem next = getNextItem(uid);
+        if (next != null) {
+            uids.add(next.getId());
+        }
+        ItemContentDataSyncer.prioritizeItems(uids);
+    }
+
     @Override
     public void showLastItem() {
         final ListItemItem item = getLastItem(this.uid);
@@ -161,6 +179,7 @@ public class VerticalItemViewCtrl extends AbsViewCtrl implements VerticalSingleI
         curSingleItemView.setListener(null);
         curSingleItemView.holdItemViewScroll();
         hideItemMenu();
+        prioritizeImages();
 
         final VerticalSingleItemView view = initView();
         final Animation anim1 = AnimationUtils.loadAnimation(context, inAnimation);
@@ -14,8 +14,6 @@ package com.pursuer.reader.easyrss;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLConnection;
 import java.net.URLEncoder;
 import java.text.SimpleDateFormat;
 import java.util.TimeZone;
@@ -41,6 +39,8 @@ import com.pursuer.reader.easyrss.data.Item;
 import com.pursuer.reader.easyrss.data.Setting;
 import com.pursuer.reader.easyrss.data.readersetting.SettingFontSize;
 import com.pursuer.reader.easyrss.data.readersetting.SettingTheme;
+import com.pursuer.reader.easyrss.network.NetworkClient;
+import com.pursuer.reader.easyrss.network.NetworkClient.NetworkException;
 import com.pursuer.reader.easyrss.view.AbsViewCtrl;
 
 public class WebpageItemViewCtrl extends AbsViewCtrl {
@@ -231,15 +231,17 @@ public class WebpageItemViewCtrl extends AbsViewCtrl {
                         urlBuilder.append(URLEncoder.encode(dataMgr.getSettingByName(Setting.SETTING_USERNAME)));
                         urlBuilder.append("&version=");
                         urlBuilder.append(context.getString(R.string.Version));
-                        final URLConnection connection = new URL(urlBuilder.toString()).openConnection();
-                        connection.setConnectTimeout(30 * 1000);
-                        connection.setReadTimeout(20 * 1000);
-                        final InputStreamReader input = new InputStreamReader(connection.getInputStream());
+                        final InputStreamReader input = new InputStreamReader(NetworkClient.getInstance()
+                                .doGetStream(urlBuilder.toString(), false));
                         final StringBuilder builder = new StringBuilder();
-                        final char buff[] = new char[8192];
-                        int len;
-                        while ((len = input.read(buff)) != -1) {
-                            builder.append(new String(buff, 0, len));
+                        try {
+                            final char buff[] = new char[8192];
+                            int len;
+                            while ((len = input.read(buff)) != -1) {
+                                builder.append(new String(buff, 0, len));
+                            }
+                        } finally {
+                            input.close();
                         }
                         builder.append(theme == SettingTheme.THEME_NORMAL ? DataUtils.DEFAULT_NORMAL_CSS
                                 : DataUtils.DEFAULT_DARK_CSS);
@@ -253,6 +255,10 @@ public class WebpageItemViewCtrl extends AbsViewCtrl {
                         exception.printStackTrace();
                         pageContent = genFailedToLoadContentPage(context, theme);
                         handler.sendMessage(handler.obtainMessage(MSG_LOADING_FINISHED, WebpageItemViewCtrl.this));
+                    } catch (final NetworkException exception) {
+                        exception.printStackTrace();
+                        pageContent = genFailedToLoadContentPage(context, theme);
+                        handler.sendMessage(handler.obtainMessage(MSG_LOADING_FINISHED, WebpageItemViewCtrl.this));
                     }
                 }
             });
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Pursuer (http://pursuer.me).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Pursuer - initial API and implementation
+ ******************************************************************************/
+
+package com.pursuer.reader.easyrss.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/*
+ * Brings the rows of a join table (like itemTags) in line with the wanted
+ * owner -> targets mapping. Existing links are read once per batch, and only the
+ * difference is written back through compiled statements. Must be used inside
+ * a transaction and closed afterwards.
+ */
+final class BatchLinker {
+    final private SQLiteDatabase database;
+    final private String tableName;
+    final private String ownerColumn;
+    final private String targetColumn;
+    final private SQLiteStatement insertStatement;
+    final private SQLiteStatement deleteStatement;
+
+    public BatchLinker(final SQLiteDatabase database, final String tableName, final String ownerColumn,
+            final String targetColumn) {
+        this.database = database;
+        this.tableName = tableName;
+        this.ownerColumn = ownerColumn;
+        this.targetColumn = targetColumn;
+        this.insertStatement = database.compileStatement("INSERT OR IGNORE INTO " + tableName + "(" + ownerColumn
+                + "," + targetColumn + ")VALUES(?,?)");
+        this.deleteStatement = database.compileStatement("DELETE FROM " + tableName + " WHERE " + ownerColumn
+                + "=? AND " + targetColumn + "=?");
+    }
+
+    public void close() {
+        insertStatement.close();
+        deleteStatement.close();
+    }
+
+    public void link(final Map<Long, ? extends Collection<Long>> links) {
+        final Map<Long, Set<Long>> existing = queryLinks(links.keySet());
+        for (final Map.Entry<Long, ? extends Collection<Long>> entry : links.entrySet()) {
+            final long owner = entry.getKey();
+            final Set<Long> targets = existing.get(owner);
+            for (final Long target : entry.getValue()) {
+                if (targets == null || !targets.remove(target)) {
+                    insertStatement.bindLong(1, owner);
+                    insertStatement.bindLong(2, target);
+                    insertStatement.execute();
+                }
+            }
+            if (targets != null) {
+                for (final Long target : targets) {
+                    deleteStatement.bindLong(1, owner);
+                    deleteStatement.bindLong(2, target);
+                    deleteStatement.execute();
+                }
+            }
+        }
+    }
+
+    private Map<Long, Set<Long>> queryLinks(final Collection<Long> owners) {
+        final List<String> sOwners = new ArrayList<String>(owners.size());
+        for (final Long owner : owners) {
+            sOwners.add(String.valueOf(owner));
+        }
+        final Map<Long, Set<Long>> ret = new HashMap<Long, Set<Long>>();
+        for (final String[] args : DataUtils.splitQueryArgs(sOwners)) {
+            final Cursor cur = database.rawQuery("SELECT " + ownerColumn + "," + targetColumn + " FROM " + tableName
+                    + " WHERE " + ownerColumn + " IN(" + DataUtils.buildPlaceholders(args.length) + ")", args);
+            for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
+                final long owner = cur.getLong(0);
+                Set<Long> targets = ret.get(owner);
+                if (targets == null) {
+                    targets = new HashSet<Long>();
+                    ret.put(owner, targets);
+                }
+                targets.add(cur.getLong(1));
+            }
+            cur.close();
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Pursuer (http://pursuer.me).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Pursuer - initial API and implementation
+ ******************************************************************************/
+
+package com.pursuer.reader.easyrss.data;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/*
+ * Merges rows into a table with two compiled statements that are reused for a
+ * whole batch: "INSERT OR IGNORE" for new rows, and "UPDATE" only for rows that
+ * already exist. Must be used inside a transaction and closed afterwards.
+ */
+final class BatchUpserter {
+    final private String[] insertColumns;
+    final private String[] updateColumns;
+    final private SQLiteStatement insertStatement;
+    final private SQLiteStatement updateStatement;
+
+    public BatchUpserter(final SQLiteDatabase database, final String tableName, final String keyColumn,
+            final String[] insertColumns, final String[] updateColumns) {
+        this.insertColumns = insertColumns;
+        this.updateColumns = updateColumns;
+
+        final StringBuilder builder = new StringBuilder(256);
+        builder.append("INSERT OR IGNORE INTO ");
+        builder.append(tableName);
+        builder.append('(');
+        for (int i = 0; i < insertColumns.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(insertColumns[i]);
+        }
+        builder.append(")VALUES(");
+        builder.append(DataUtils.buildPlaceholders(insertColumns.length));
+        builder.append(')');
+        this.insertStatement = database.compileStatement(builder.toString());
+
+        builder.setLength(0);
+        builder.append("UPDATE ");
+        builder.append(tableName);
+        builder.append(" SET ");
+        for (int i = 0; i < updateColumns.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(updateColumns[i]);
+            builder.append("=?");
+        }
+        builder.append(" WHERE ");
+        builder.append(keyColumn);
+        builder.append("=?");
+        this.updateStatement = database.compileStatement(builder.toString());
+    }
+
+    public void close() {
+        insertStatement.close();
+        updateStatement.close();
+    }
+
+    /*
+     * Return: whether a new row is inserted.
+     */
+    public boolean upsert(final String key, final ContentValues insertValues, final ContentValues updateValues) {
+        insertStatement.clearBindings();
+        for (int i = 0; i < insertColumns.length; i++) {
+            DataUtils.bindValue(insertStatement, i + 1, insertValues.get(insertColumns[i]));
+        }
+        if (insertStatement.executeInsert() != -1) {
+            return true;
+        }
+        updateStatement.clearBindings();
+        for (int i = 0; i < updateColumns.length; i++) {
+            DataUtils.bindValue(updateStatement, i + 1, updateValues.get(updateColumns[i]));
+        }
+        updateStatement.bindString(updateColumns.length + 1, key);
+        updateStatement.execute();
+        return false;
+    }
+}
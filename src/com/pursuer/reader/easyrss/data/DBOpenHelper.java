@@ -17,22 +17,60 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import com.pursuer.reader.easyrss.Utils;
+
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
 
 public class DBOpenHelper extends SQLiteOpenHelper {
-    final private static int DB_VERSION = 44;
+    /* New tables need a new version too: onUpgrade() makes them by createTables(). */
+    final private static int DB_VERSION = 51;
+    final private static int SQLITE_VERSION_PARTIAL_INDEX = 3008000;
+    final private static int SQLITE_VERSION_WITHOUT_ROWID = 3008002;
     final private static Map<Integer, String[]> UPGRADE_SQL;
 
     static {
         UPGRADE_SQL = new HashMap<Integer, String[]>();
-        UPGRADE_SQL.put(43, new String[] { SQLConstants.UPGRADE_ITEM_TAGS_ITEM_UID, SQLConstants.UPGRADE_ITEMS_UID });
+        UPGRADE_SQL.put(43, new String[] { SQLConstants.UPGRADE_ITEMS_UID });
+        UPGRADE_SQL.put(45, new String[] { SQLConstants.DROP_TRIGGER_MARK_ITEM_AS_READ });
+        /* Indexes duplicating a primary key or a prefix of another index. */
+        UPGRADE_SQL.put(47, new String[] { sqlDropIndex(Item.TABLE_NAME, new String[] { Item._UID }),
+                sqlDropIndex(Item.TABLE_NAME, new String[] { Item._UPDATETIME }),
+                sqlDropIndex(Item.TABLE_NAME, new String[] { Item._SOURCEURI }),
+                sqlDropIndex(Item.TABLE_NAME, new String[] { Item._SOURCEURI, ItemState._ISREAD }),
+                sqlDropIndex(Item.TABLE_NAME, new String[] { Item._SOURCEURI, ItemState._ISSTARRED }),
+                sqlDropIndex(Item.TABLE_NAME, new String[] { Item._TIMESTAMP }),
+                sqlDropIndex(Item.TABLE_NAME, new String[] { Item._TIMESTAMP, ItemState._ISREAD }),
+                sqlDropIndex(Item.TABLE_NAME, new String[] { Item._TIMESTAMP, ItemState._ISSTARRED }),
+                sqlDropIndex(Setting.TABLE_NAME, new String[] { Setting._NAME }),
+                sqlDropIndex(Subscription.TABLE_NAME, new String[] { Subscription._UID }),
+                sqlDropIndex(Tag.TABLE_NAME, new String[] { Tag._UID }),
+                sqlDropIndex(Transaction.TABLE_NAME, new String[] { Transaction._UID }) });
+        /* Tag pages seek on (tagId, itemTimestamp, itemId), which also covers tagId alone. */
+        UPGRADE_SQL.put(51, new String[] { SQLConstants.FILL_ITEM_TAG_TIMESTAMPS,
+                sqlDropIndex(ItemTag.TABLE_NAME, new String[] { ItemTag._TAGID, ItemTag._ITEMID }) });
     }
 
     private static DBOpenHelper instance;
 
+    /*
+     * Moves a link table of the layout before DB version 48 aside, so that it
+     * can be migrated to integer ids once the other upgrades are done.
+     */
+    private static void backupLinkTable(final SQLiteDatabase database, final String tableName,
+            final String legacyTableName, final String legacyColumn) {
+        final List<String> cols = getTableColumns(database, tableName);
+        if (cols != null && cols.contains(legacyColumn)) {
+            database.execSQL("DROP TABLE IF EXISTS " + legacyTableName);
+            database.execSQL("CREATE TABLE " + legacyTableName + " AS SELECT * FROM " + tableName);
+            database.execSQL("DROP TABLE " + tableName);
+        }
+    }
+
     private static boolean checkDropTable(final SQLiteDatabase database, final String tableName, final String[] columns) {
         final List<String> cols = getTableColumns(database, tableName);
         if (cols == null) {
@@ -77,6 +115,27 @@ public class DBOpenHelper extends SQLiteOpenHelper {
         return instance;
     }
 
+    /*
+     * Return: version of the SQLite library, e.g. 3008002 for 3.8.2.
+     */
+    private static int getSQLiteVersion(final SQLiteDatabase database) {
+        int ret = 0;
+        final Cursor cur = database.rawQuery("SELECT sqlite_version()", null);
+        if (cur.moveToFirst()) {
+            final String[] parts = cur.getString(0).split("\\.");
+            for (int i = 0; i < 3; i++) {
+                ret *= 1000;
+                try {
+                    ret += (i < parts.length) ? Integer.parseInt(parts[i]) : 0;
+                } catch (final NumberFormatException exception) {
+                    exception.printStackTrace();
+                }
+            }
+        }
+        cur.close();
+        return ret;
+    }
+
     private static List<String> getTableColumns(final SQLiteDatabase database, final String tableName) {
         List<String> ret = null;
         try {
@@ -91,6 +150,47 @@ public class DBOpenHelper extends SQLiteOpenHelper {
         return ret;
     }
 
+    /*
+     * Fills items.id and the streams table, then copies the links moved aside
+     * by backupLinkTable() as integer pairs.
+     */
+    private static void migrateLinkTables(final SQLiteDatabase database) {
+        final SQLiteStatement statement = database.compileStatement("UPDATE " + Item.TABLE_NAME + " SET "
+                + Item._ID + "=? WHERE " + Item._UID + "=?");
+        final Cursor cur = database.rawQuery("SELECT " + Item._UID + " FROM " + Item.TABLE_NAME + " WHERE "
+                + Item._ID + " IS NULL", null);
+        try {
+            for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
+                /* Items with other uids keep a null id, and cannot be linked. */
+                if (Item.isValidUid(cur.getString(0))) {
+                    statement.bindLong(1, Item.getIdByUid(cur.getString(0)));
+                    statement.bindString(2, cur.getString(0));
+                    statement.execute();
+                }
+            }
+        } finally {
+            cur.close();
+            statement.close();
+        }
+
+        final String intern = "INSERT OR IGNORE INTO " + StreamIds.TABLE_NAME + "(" + StreamIds._UID + ") SELECT ";
+        database.execSQL(intern + Tag._UID + " FROM " + Tag.TABLE_NAME);
+        database.execSQL(intern + Subscription._UID + " FROM " + Subscription.TABLE_NAME);
+        if (getTableColumns(database, ItemTag.LEGACY_TABLE_NAME) != null) {
+            database.execSQL(intern + "DISTINCT " + ItemTag.LEGACY_TAGUID + " FROM " + ItemTag.LEGACY_TABLE_NAME);
+            database.execSQL(SQLConstants.MIGRATE_ITEM_TAGS);
+            database.execSQL("DROP TABLE " + ItemTag.LEGACY_TABLE_NAME);
+        }
+        if (getTableColumns(database, SubscriptionTag.LEGACY_TABLE_NAME) != null) {
+            database.execSQL(intern + "DISTINCT " + SubscriptionTag.LEGACY_SUBSCRIPTIONUID + " FROM "
+                    + SubscriptionTag.LEGACY_TABLE_NAME);
+            database.execSQL(intern + "DISTINCT " + SubscriptionTag.LEGACY_TAGUID + " FROM "
+                    + SubscriptionTag.LEGACY_TABLE_NAME);
+            database.execSQL(SQLConstants.MIGRATE_SUBSCRIPTION_TAGS);
+            database.execSQL("DROP TABLE " + SubscriptionTag.LEGACY_TABLE_NAME);
+        }
+    }
+
     public static synchronized void init(final Context context) {
         if (instance == null) {
             instance = new DBOpenHelper(context);
@@ -98,12 +198,21 @@ public class DBOpenHelper extends SQLiteOpenHelper {
     }
 
     private static String sqlCreateIndex(final String tableName, final String[] columnNames) {
+        return sqlCreateIndex(tableName, columnNames, null, null);
+    }
+
+    /*
+     * Creates a partial index covering only the rows where filterColumn equals
+     * filterValue, or a full one if filterColumn is null.
+     */
+    private static String sqlCreateIndex(final String tableName, final String[] columnNames,
+            final String filterColumn, final String filterValue) {
         final StringBuilder buff = new StringBuilder(128);
-        buff.append("CREATE INDEX IF NOT EXISTS idx_");
-        buff.append(tableName);
-        for (int i = 0; i < columnNames.length; i++) {
-            buff.append('_');
-            buff.append(columnNames[i]);
+        buff.append("CREATE INDEX IF NOT EXISTS ");
+        buff.append(sqlIndexName(tableName, columnNames));
+        if (filterColumn != null) {
+            buff.append("_where_");
+            buff.append(filterColumn);
         }
         buff.append(" ON ");
         buff.append(tableName);
@@ -115,11 +224,38 @@ public class DBOpenHelper extends SQLiteOpenHelper {
             buff.append(columnNames[i]);
         }
         buff.append(')');
+        if (filterColumn != null) {
+            buff.append(" WHERE ");
+            buff.append(filterColumn);
+            buff.append('=');
+            buff.append(filterValue);
+        }
+        return buff.toString();
+    }
+
+    private static String sqlDropIndex(final String tableName, final String[] columnNames) {
+        return "DROP INDEX IF EXISTS " + sqlIndexName(tableName, columnNames);
+    }
+
+    private static String sqlIndexName(final String tableName, final String[] columnNames) {
+        final StringBuilder buff = new StringBuilder(64);
+        buff.append("idx_");
+        buff.append(tableName);
+        for (int i = 0; i < columnNames.length; i++) {
+            buff.append('_');
+            buff.append(columnNames[i]);
+        }
         return buff.toString();
     }
 
+    final private DatabaseWriter writer;
+
     private DBOpenHelper(final Context context) {
         super(context, "EasyRSSDB", null, DB_VERSION);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
+        this.writer = new DatabaseWriter(this);
     }
 
     private String createTable(final String tableName, final String[] columns, final String[] columnsCreate) {
@@ -140,17 +276,34 @@ public class DBOpenHelper extends SQLiteOpenHelper {
     }
 
     private void createTables(final SQLiteDatabase database) {
+        final int sqliteVersion = getSQLiteVersion(database);
+        /* Only for new tables: existing ones are not rebuilt. */
+        final String linkTableOptions = (sqliteVersion >= SQLITE_VERSION_WITHOUT_ROWID) ? " WITHOUT ROWID" : "";
         database.execSQL(createTable(Item.TABLE_NAME, Item.COLUMNS, Item.COLUMNS_TYPE));
-        database.execSQL(ItemTag.SQL_CREATE_TABLE);
+        database.execSQL(ItemTag.SQL_CREATE_TABLE + linkTableOptions);
         database.execSQL(createTable(Subscription.TABLE_NAME, Subscription.COLUMNS, Subscription.COLUMNS_TYPE));
-        database.execSQL(SubscriptionTag.SQL_CREATE_TABLE);
+        database.execSQL(SubscriptionTag.SQL_CREATE_TABLE + linkTableOptions);
         database.execSQL(Setting.SQL_CREATE_TABLE);
         database.execSQL(createTable(Tag.TABLE_NAME, Tag.COLUMNS, Tag.COLUMNS_TYPE));
         database.execSQL(createTable(Transaction.TABLE_NAME, Transaction.COLUMNS, Transaction.COLUMNS_TYPE));
+        database.execSQL(UnreadCounter.SQL_CREATE_TABLE + linkTableOptions);
+        database.execSQL(StreamIds.SQL_CREATE_TABLE);
+        database.execSQL(HttpValidator.SQL_CREATE_TABLE);
+        database.execSQL(ImageRef.SQL_CREATE_TABLE + linkTableOptions);
 
         for (final String[] columns : Item.INDEX_COLUMNS) {
             database.execSQL(sqlCreateIndex(Item.TABLE_NAME, columns));
         }
+        for (int i = 0; i < Item.FILTERED_INDEX_KEYS.length; i++) {
+            final String key = Item.FILTERED_INDEX_KEYS[i];
+            for (final String[] columns : Item.FILTERED_INDEX_COLUMNS) {
+                if (sqliteVersion >= SQLITE_VERSION_PARTIAL_INDEX) {
+                    database.execSQL(sqlCreateIndex(Item.TABLE_NAME, columns, key, Item.FILTERED_INDEX_VALUES[i]));
+                } else {
+                    database.execSQL(sqlCreateIndex(Item.TABLE_NAME, Utils.arrayMerge(new String[] { key }, columns)));
+                }
+            }
+        }
         for (final String[] columns : SubscriptionTag.INDEX_COLUMNS) {
             database.execSQL(sqlCreateIndex(SubscriptionTag.TABLE_NAME, columns));
         }
@@ -169,11 +322,20 @@ public class DBOpenHelper extends SQLiteOpenHelper {
         for (final String[] columns : Transaction.INDEX_COLUMNS) {
             database.execSQL(sqlCreateIndex(Transaction.TABLE_NAME, columns));
         }
+        for (final String[] columns : ImageRef.INDEX_COLUMNS) {
+            database.execSQL(sqlCreateIndex(ImageRef.TABLE_NAME, columns));
+        }
     }
 
     private void createTriggers(final SQLiteDatabase database) {
         database.execSQL(SQLConstants.CREATE_TRIGGER_DELETE_REDUNDENT_TRANSACTION);
-        database.execSQL(SQLConstants.CREATE_TRIGGER_MARK_ITEM_AS_READ);
+    }
+
+    /*
+     * All writes have to go through the writer, see DatabaseWriter.
+     */
+    DatabaseWriter getWriter() {
+        return writer;
     }
 
     @Override
@@ -181,8 +343,27 @@ public class DBOpenHelper extends SQLiteOpenHelper {
         createTables(database);
     }
 
+    @Override
+    public void onOpen(final SQLiteDatabase database) {
+        super.onOpen(database);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN && !database.isReadOnly()) {
+            /* Lets readers use their own connections while a sync is writing. */
+            database.enableWriteAheadLogging();
+        }
+    }
+
     @Override
     public void onUpgrade(final SQLiteDatabase database, final int oldVersion, final int newVersion) {
+        if (oldVersion < 48) {
+            backupLinkTable(database, ItemTag.TABLE_NAME, ItemTag.LEGACY_TABLE_NAME, ItemTag.LEGACY_ITEMUID);
+            backupLinkTable(database, SubscriptionTag.TABLE_NAME, SubscriptionTag.LEGACY_TABLE_NAME,
+                    SubscriptionTag.LEGACY_SUBSCRIPTIONUID);
+        } else if (oldVersion < 51 && getTableColumns(database, ItemTag.TABLE_NAME) != null) {
+            /* Added before checkDropTable() would drop the links for the new column. */
+            checkTableColumns(database, ItemTag.TABLE_NAME, new String[] { ItemTag._ITEMTIMESTAMP },
+                    new String[] { "INTEGER" });
+        }
         if (checkDropTable(database, ItemTag.TABLE_NAME, ItemTag.COLUMNS)) {
             database.execSQL("DROP TABLE IF EXISTS " + ItemTag.TABLE_NAME);
         }
@@ -198,6 +379,10 @@ public class DBOpenHelper extends SQLiteOpenHelper {
         checkTableColumns(database, Transaction.TABLE_NAME, Transaction.COLUMNS, Transaction.COLUMNS_TYPE);
         createTables(database);
         createTriggers(database);
+        /* The link table is only moved aside if it had the layout before version 48. */
+        if (oldVersion < 43 && getTableColumns(database, ItemTag.LEGACY_TABLE_NAME) != null) {
+            database.execSQL(SQLConstants.UPGRADE_ITEM_TAGS_ITEM_UID);
+        }
         for (int i = oldVersion + 1; i <= newVersion; i++) {
             final String[] sqls = UPGRADE_SQL.get(i);
             if (sqls != null) {
@@ -206,5 +391,11 @@ public class DBOpenHelper extends SQLiteOpenHelper {
                 }
             }
         }
+        if (oldVersion < 48) {
+            migrateLinkTables(database);
+        }
+        if (oldVersion < 45) {
+            UnreadCounter.rebuild(database);
+        }
     }
 }
@@ -11,24 +11,37 @@
 
 package com.pursuer.reader.easyrss.data;
 
-import java.io.File;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
+import com.pursuer.reader.easyrss.Home;
 import com.pursuer.reader.easyrss.Utils;
-
+import com.pursuer.reader.easyrss.data.readersetting.SettingKeepStarredItems;
+import com.pursuer.reader.easyrss.data.readersetting.SettingKeepUnreadItems;
+import com.pursuer.reader.easyrss.data.readersetting.SettingMaxItemAge;
+import com.pursuer.reader.easyrss.data.readersetting.SettingMaxItemSpace;
+import com.pursuer.reader.easyrss.data.readersetting.SettingMaxItems;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.Message;
+import android.os.RemoteException;
 
 final public class DataMgr {
     final private static Handler handler = new Handler() {
@@ -36,24 +49,27 @@ final public class DataMgr {
         public void handleMessage(final Message msg) {
             if (instance != null) {
                 switch (msg.what) {
-                case MSG_ITEM_UPDATED:
-                    for (final OnItemUpdatedListener listener : instance.itemListeners) {
-                        listener.onItemUpdated((Item) msg.obj);
+                case MSG_BATCH_UPDATED:
+                    final UpdateBatch batch = (UpdateBatch) msg.obj;
+                    for (final String name : batch.getSettings()) {
+                        for (final OnSettingUpdatedListener listener : instance.settingListeners) {
+                            listener.onSettingUpdated(name);
+                        }
                     }
-                    break;
-                case MSG_SETTING_UPDATED:
-                    for (final OnSettingUpdatedListener listener : instance.settingListeners) {
-                        listener.onSettingUpdated((String) msg.obj);
+                    if (!batch.getSubscriptions().isEmpty()) {
+                        for (final OnSubscriptionUpdatedListener listener : instance.subscriptionListeners) {
+                            listener.onSubscriptionsUpdated(batch.getSubscriptions());
+                        }
                     }
-                    break;
-                case MSG_SUBSCRIPTION_UPDATED:
-                    for (final OnSubscriptionUpdatedListener listener : instance.subscriptionListeners) {
-                        listener.onSubscriptionUpdated((Subscription) msg.obj);
+                    if (!batch.getTags().isEmpty()) {
+                        for (final OnTagUpdatedListener listener : instance.tagListeners) {
+                            listener.onTagsUpdated(batch.getTags());
+                        }
                     }
-                    break;
-                case MSG_TAG_UPDATED:
-                    for (final OnTagUpdatedListener listener : instance.tagListeners) {
-                        listener.onTagUpdated((Tag) msg.obj);
+                    if (!batch.getItems().isEmpty()) {
+                        for (final OnItemUpdatedListener listener : instance.itemListeners) {
+                            listener.onItemsUpdated(batch.getItems());
+                        }
                     }
                     break;
                 default:
@@ -63,10 +79,106 @@ final public class DataMgr {
         }
     };
     static private DataMgr instance = null;
-    static private final int MSG_ITEM_UPDATED = 0;
-    static private final int MSG_SETTING_UPDATED = 1;
-    static private final int MSG_SUBSCRIPTION_UPDATED = 2;
-    static private final int MSG_TAG_UPDATED = 3;
+    static private final int MSG_BATCH_UPDATED = 0;
+    static private final long UNREAD_COUNTS_VERIFY_INTERVAL = 24L * 60 * 60 * 1000;
+
+    /*
+     * Builds the query of DataMgr.getItemPage(), filling its arguments in args.
+     * The items are walked in the order of an index on (timestamp, uid), so
+     * that a page is read without sorting. A tag stream walks its links on
+     * (tagId, itemTimestamp, itemId) instead and joins the items from there
+     * (CROSS JOIN keeps the links as the outer loop), so items sharing a
+     * timestamp are ordered by id there. The bound on the timestamp alone lets
+     * the walk seek to the page start.
+     */
+    static String buildItemPageQuery(final SQLiteDatabase database, final String streamUid, final int viewType,
+            final boolean isDescending, final Long lastTimestamp, final String lastUid, final int limit,
+            final String[] projection, final List<String> args) {
+        final StringBuilder builder = new StringBuilder(256);
+        builder.append("SELECT ");
+        if (projection == null || projection.length == 0) {
+            builder.append(Item.TABLE_NAME);
+            builder.append(".*");
+        } else {
+            for (int i = 0; i < projection.length; i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(projection[i]);
+            }
+        }
+        builder.append(" FROM ");
+        final String sign = (isDescending) ? "<" : ">";
+        final boolean isTag = DataUtils.isTagUid(streamUid);
+        final String timestampColumn = (isTag) ? ItemTag._ITEMTIMESTAMP : Item._TIMESTAMP;
+        final String tieColumn = (isTag) ? ItemTag._ITEMID : Item._UID;
+        if (isTag) {
+            builder.append(ItemTag.TABLE_NAME);
+            builder.append(" CROSS JOIN ");
+            builder.append(Item.TABLE_NAME);
+            builder.append(" ON ");
+            builder.append(Item._ID);
+            builder.append('=');
+            builder.append(ItemTag._ITEMID);
+            builder.append(" WHERE ");
+            builder.append(ItemTag._TAGID);
+            builder.append("=?");
+            args.add(String.valueOf(StreamIds.lookup(database, streamUid)));
+        } else if (streamUid.length() > 0) {
+            builder.append(Item.TABLE_NAME);
+            builder.append(" WHERE ");
+            builder.append(Item._SOURCEURI);
+            builder.append("=?");
+            args.add(streamUid);
+        } else {
+            builder.append(Item.TABLE_NAME);
+            builder.append(" WHERE 1");
+        }
+        if (viewType == Home.VIEW_TYPE_UNREAD) {
+            builder.append(" AND ");
+            builder.append(ItemState._ISREAD);
+            builder.append("=0");
+        } else if (viewType == Home.VIEW_TYPE_STARRED) {
+            builder.append(" AND ");
+            builder.append(ItemState._ISSTARRED);
+            builder.append("=1");
+        }
+        if (lastTimestamp != null) {
+            // AND timestamp<=? AND (timestamp<? OR (timestamp=? AND uid<?))
+            builder.append(" AND ");
+            builder.append(timestampColumn);
+            builder.append(sign);
+            builder.append("=? AND (");
+            builder.append(timestampColumn);
+            builder.append(sign);
+            builder.append("? OR (");
+            builder.append(timestampColumn);
+            builder.append("=? AND ");
+            builder.append(tieColumn);
+            builder.append(sign);
+            builder.append("?))");
+            args.add(String.valueOf(lastTimestamp));
+            args.add(String.valueOf(lastTimestamp));
+            args.add(String.valueOf(lastTimestamp));
+            if (isTag) {
+                /* An id below all others stands for the empty uid. */
+                final long lastId = (Item.isValidUid(lastUid)) ? Item.getIdByUid(lastUid) : Long.MIN_VALUE;
+                args.add(String.valueOf(lastId));
+            } else {
+                args.add((lastUid == null) ? "" : lastUid);
+            }
+        }
+        final String order = (isDescending) ? " DESC" : "";
+        builder.append(" ORDER BY ");
+        builder.append(timestampColumn);
+        builder.append(order);
+        builder.append(',');
+        builder.append(tieColumn);
+        builder.append(order);
+        builder.append(" LIMIT ");
+        builder.append(limit);
+        return builder.toString();
+    }
 
     public static DataMgr getInstance() {
         return instance;
@@ -78,15 +190,26 @@ final public class DataMgr {
         }
     }
 
+    private static List<Long> internAll(final StreamIds streamIds, final List<String> uids) {
+        final List<Long> ret = new ArrayList<Long>(uids.size());
+        for (final String uid : uids) {
+            ret.add(streamIds.intern(uid));
+        }
+        return ret;
+    }
+
     final private Context context;
     final private DBOpenHelper dbOpenHelper;
+    final private ItemEvictor evictor;
     final private List<OnItemUpdatedListener> itemListeners;
     final private List<OnSettingUpdatedListener> settingListeners;
     final private List<OnSubscriptionUpdatedListener> subscriptionListeners;
     final private List<OnTagUpdatedListener> tagListeners;
+    final private ThreadLocal<UpdateBatch> updateBatch;
 
     private DataMgr(final Context context) {
         this.context = context;
+        this.updateBatch = new ThreadLocal<UpdateBatch>();
         this.itemListeners = new LinkedList<OnItemUpdatedListener>();
         this.subscriptionListeners = new LinkedList<OnSubscriptionUpdatedListener>();
         this.settingListeners = new LinkedList<OnSettingUpdatedListener>();
@@ -94,62 +217,104 @@ final public class DataMgr {
 
         DBOpenHelper.init(context);
         dbOpenHelper = DBOpenHelper.getInstance();
+        evictor = new ItemEvictor(dbOpenHelper);
     }
 
-    public void addItem(final Item item) {
-        final ContentResolver resolver = context.getContentResolver();
-        final Cursor cur = resolver.query(Item.CONTENT_URI, new String[] { Item._UID }, Item._UID + "=?",
-                new String[] { item.getUid() }, null);
-        if (cur.getCount() == 0) {
-            resolver.insert(Item.CONTENT_URI, item.toContentValues());
-        } else {
-            resolver.update(Item.CONTENT_URI, item.toUpdateContentValues(), Item._UID + "=?",
-                    new String[] { item.getUid() });
+    /*
+     * Records that the item shows the images, so that they are kept as long
+     * as the item is.
+     */
+    public void addImageRefs(final String itemUid, final Collection<String> urlHashes) {
+        if (urlHashes.isEmpty()) {
+            return;
         }
-        cur.close();
+        write(new DatabaseWriter.Task<Void>() {
+            @Override
+            public Void run(final SQLiteDatabase database) {
+                final SQLiteStatement statement = database.compileStatement(SQLConstants.INSERT_IMAGE_REF);
+                try {
+                    for (final String urlHash : urlHashes) {
+                        statement.bindString(1, itemUid);
+                        statement.bindString(2, urlHash);
+                        statement.executeInsert();
+                    }
+                } finally {
+                    statement.close();
+                }
+                return null;
+            }
+        });
+    }
 
-        resolver.delete(ItemTag.CONTENT_URI, ItemTag._ITEMUID + "=?", new String[] { item.getUid() });
-        final ItemTag itemTag = new ItemTag();
-        itemTag.setItemUid(item.getUid());
-        for (final String tag : item.getTags()) {
-            itemTag.setTagUid(tag);
-            resolver.insert(ItemTag.CONTENT_URI, itemTag.toContentValues());
-        }
-        notifyItemUpdated(item);
+    public void addItem(final Item item) {
+        addItems(Collections.singletonList(item));
     }
 
     public void addItems(final List<Item> items) {
         addItems(items, null);
     }
 
-    public void addItems(final List<Item> items, Long lastTimestamp) {
-        final SQLiteDatabase database = dbOpenHelper.getWritableDatabase();
-        database.beginTransaction();
+    /*
+     * Items whose uid is not a valid reader id are skipped, as they cannot be
+     * linked to their tags.
+     */
+    public void addItems(final List<Item> allItems, Long lastTimestamp) {
+        final List<Item> items = new ArrayList<Item>(allItems.size());
+        for (final Item item : allItems) {
+            if (Item.isValidUid(item.getUid())) {
+                items.add(item);
+            }
+        }
+        write(new DatabaseWriter.Task<Void>() {
+            @Override
+            public Void run(final SQLiteDatabase database) {
+                final BatchUpserter upserter = new BatchUpserter(database, Item.TABLE_NAME, Item._UID,
+                        Item.INSERT_COLUMNS, Item.UPDATE_COLUMNS);
+                final BatchLinker linker = new BatchLinker(database, ItemTag.TABLE_NAME, ItemTag._ITEMID,
+                        ItemTag._TAGID);
+                final StreamIds streamIds = new StreamIds(database);
+                final UnreadCounter counter = new UnreadCounter(database);
+                final SQLiteStatement timestampStatement = database
+                        .compileStatement(SQLConstants.UPDATE_ITEM_TAG_TIMESTAMP);
+                try {
+                    final List<String> uids = new ArrayList<String>(items.size());
+                    final Map<Long, List<Long>> itemTags = new HashMap<Long, List<Long>>();
+                    for (final Item item : items) {
+                        uids.add(item.getUid());
+                        itemTags.put(Item.getIdByUid(item.getUid()), internAll(streamIds, item.getTags()));
+                    }
+                    counter.stage(uids);
+                    counter.count();
+                    counter.apply(-1);
+                    for (final Item item : items) {
+                        upserter.upsert(item.getUid(), item.toContentValues(), item.toUpdateContentValues());
+                    }
+                    linker.link(itemTags);
+                    /* Copies the timestamp into the links just made, for the tag pages. */
+                    for (final Long itemId : itemTags.keySet()) {
+                        timestampStatement.bindLong(1, itemId);
+                        timestampStatement.bindLong(2, itemId);
+                        timestampStatement.execute();
+                    }
+                    counter.count();
+                    counter.apply(1);
+                } finally {
+                    upserter.close();
+                    linker.close();
+                    streamIds.close();
+                    counter.close();
+                    timestampStatement.close();
+                }
+                return null;
+            }
+        });
+        beginUpdateBatch();
         try {
             for (final Item item : items) {
-                final Cursor cur = database.query(Item.TABLE_NAME, new String[] { Item._UID }, Item._UID + "=?",
-                        new String[] { item.getUid() }, null, null, null);
-                if (cur.getCount() == 0) {
-                    database.insertOrThrow(Item.TABLE_NAME, Item.TABLE_NAME, item.toContentValues());
-                } else {
-                    database.update(Item.TABLE_NAME, item.toUpdateContentValues(), Item._UID + "=?",
-                            new String[] { item.getUid() });
-                }
-                cur.close();
-
-                database.delete(ItemTag.TABLE_NAME, ItemTag._ITEMUID + "=?", new String[] { item.getUid() });
-                for (final String tag : item.getTags()) {
-                    database.execSQL(SQLConstants.INSERT_ITEM_TAG, new String[] { item.getUid(), tag });
-                }
+                notifyItemUpdated(item);
             }
-            database.setTransactionSuccessful();
-        } catch (final Exception exception) {
-            exception.printStackTrace();
         } finally {
-            database.endTransaction();
-        }
-        for (final Item item : items) {
-            notifyItemUpdated(item);
+            endUpdateBatch();
         }
     }
 
@@ -181,102 +346,95 @@ final public class DataMgr {
         tagListeners.add(listener);
     }
 
-    private void addSubscription(final SQLiteDatabase database, final Subscription sub) throws Exception {
-        final Cursor cur = database.query(Subscription.TABLE_NAME, new String[] { Subscription._UID,
-                Subscription._ICON, Subscription._UNREADCOUNT }, Subscription._UID + "=?",
-                new String[] { sub.getUid() }, null, null, null);
-        if (cur.getCount() == 0) {
-            database.insertOrThrow(Subscription.TABLE_NAME, Subscription.TABLE_NAME, sub.toContentValues());
-        } else {
-            database.update(Subscription.TABLE_NAME, sub.toUpdateContentValues(), Subscription._UID + "=?",
-                    new String[] { sub.getUid() });
-            cur.moveToFirst();
-            sub.setIcon(cur.getBlob(1));
-            sub.setUnreadCount(cur.getInt(2));
-        }
-        cur.close();
-
-        database.delete(SubscriptionTag.TABLE_NAME, SubscriptionTag._SUBSCRIPTIONUID + "=?",
-                new String[] { sub.getUid() });
-        for (final String tag : sub.getTags()) {
-            database.execSQL(SQLConstants.INSERT_SUBSCRIPTION_TAG, new String[] { sub.getUid(), tag });
-        }
-    }
-
     public void addSubscription(final Subscription sub) {
-        final SQLiteDatabase database = dbOpenHelper.getWritableDatabase();
-        database.beginTransaction();
-        try {
-            addSubscription(database, sub);
-            database.setTransactionSuccessful();
-        } catch (final Exception exception) {
-            exception.printStackTrace();
-        } finally {
-            database.endTransaction();
-        }
-        notifySubscriptionUpdated(sub);
+        addSubscriptions(Collections.singletonList(sub));
     }
 
     public void addSubscriptions(final List<Subscription> subs) {
-        final SQLiteDatabase database = dbOpenHelper.getWritableDatabase();
-        database.beginTransaction();
+        write(new DatabaseWriter.Task<Void>() {
+            @Override
+            public Void run(final SQLiteDatabase database) {
+                final BatchUpserter upserter = new BatchUpserter(database, Subscription.TABLE_NAME, Subscription._UID,
+                        Subscription.INSERT_COLUMNS, Subscription.UPDATE_COLUMNS);
+                final BatchLinker linker = new BatchLinker(database, SubscriptionTag.TABLE_NAME,
+                        SubscriptionTag._SUBSCRIPTIONID, SubscriptionTag._TAGID);
+                final StreamIds streamIds = new StreamIds(database);
+                final Map<String, Subscription> mSubs = new HashMap<String, Subscription>();
+                try {
+                    final Map<Long, List<Long>> subTags = new HashMap<Long, List<Long>>();
+                    for (final Subscription sub : subs) {
+                        upserter.upsert(sub.getUid(), sub.toContentValues(), sub.toUpdateContentValues());
+                        subTags.put(streamIds.intern(sub.getUid()), internAll(streamIds, sub.getTags()));
+                        mSubs.put(sub.getUid(), sub);
+                    }
+                    linker.link(subTags);
+                } finally {
+                    upserter.close();
+                    linker.close();
+                    streamIds.close();
+                }
+                // Icons and unread counts are not part of the subscription list, keep the stored ones.
+                for (final String[] args : DataUtils.splitQueryArgs(mSubs.keySet())) {
+                    final Cursor cur = database.query(Subscription.TABLE_NAME, new String[] { Subscription._UID,
+                            Subscription._ICON, Subscription._UNREADCOUNT }, Subscription._UID + " IN("
+                            + DataUtils.buildPlaceholders(args.length) + ")", args, null, null, null);
+                    for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
+                        final Subscription sub = mSubs.get(cur.getString(0));
+                        sub.setIcon(cur.getBlob(1));
+                        sub.setUnreadCount(cur.getInt(2));
+                    }
+                    cur.close();
+                }
+                return null;
+            }
+        });
+        beginUpdateBatch();
         try {
             for (final Subscription sub : subs) {
-                addSubscription(database, sub);
+                notifySubscriptionUpdated(sub);
             }
-            database.setTransactionSuccessful();
-        } catch (final Exception exception) {
-            exception.printStackTrace();
         } finally {
-            database.endTransaction();
-        }
-        for (final Subscription sub : subs) {
-            notifySubscriptionUpdated(sub);
-        }
-    }
-
-    public void addTag(final SQLiteDatabase database, final Tag tag) throws Exception {
-        final Cursor cur = database.query(Tag.TABLE_NAME, new String[] { Tag._UID, Tag._UNREADCOUNT }, Tag._UID + "=?",
-                new String[] { tag.getUid() }, null, null, null);
-        if (cur.getCount() == 0) {
-            database.insertOrThrow(Tag.TABLE_NAME, Tag.TABLE_NAME, tag.toContentValues());
-        } else {
-            database.update(Tag.TABLE_NAME, tag.toUpdateContentValues(), Tag._UID + "=?", new String[] { tag.getUid() });
-            cur.moveToFirst();
-            tag.setUnreadCount(cur.getInt(1));
+            endUpdateBatch();
         }
-        cur.close();
     }
 
     public void addTag(final Tag tag) {
-        final SQLiteDatabase database = dbOpenHelper.getWritableDatabase();
-        database.beginTransaction();
-        try {
-            addTag(tag);
-            database.setTransactionSuccessful();
-        } catch (final Exception exception) {
-            exception.printStackTrace();
-        } finally {
-            database.endTransaction();
-        }
-        notifyTagUpdated(tag);
+        addTags(Collections.singletonList(tag));
     }
 
     public void addTags(final List<Tag> tags) {
-        final SQLiteDatabase database = dbOpenHelper.getWritableDatabase();
-        database.beginTransaction();
+        write(new DatabaseWriter.Task<Void>() {
+            @Override
+            public Void run(final SQLiteDatabase database) {
+                final BatchUpserter upserter = new BatchUpserter(database, Tag.TABLE_NAME, Tag._UID, Tag.INSERT_COLUMNS,
+                        Tag.UPDATE_COLUMNS);
+                final Map<String, Tag> mTags = new HashMap<String, Tag>();
+                try {
+                    for (final Tag tag : tags) {
+                        upserter.upsert(tag.getUid(), tag.toContentValues(), tag.toUpdateContentValues());
+                        mTags.put(tag.getUid(), tag);
+                    }
+                } finally {
+                    upserter.close();
+                }
+                for (final String[] args : DataUtils.splitQueryArgs(mTags.keySet())) {
+                    final Cursor cur = database.query(Tag.TABLE_NAME, new String[] { Tag._UID, Tag._UNREADCOUNT },
+                            Tag._UID + " IN(" + DataUtils.buildPlaceholders(args.length) + ")", args, null, null, null);
+                    for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
+                        mTags.get(cur.getString(0)).setUnreadCount(cur.getInt(1));
+                    }
+                    cur.close();
+                }
+                return null;
+            }
+        });
+        beginUpdateBatch();
         try {
             for (final Tag tag : tags) {
-                addTag(database, tag);
+                notifyTagUpdated(tag);
             }
-            database.setTransactionSuccessful();
-        } catch (final Exception exception) {
-            exception.printStackTrace();
         } finally {
-            database.endTransaction();
-        }
-        for (final Tag tag : tags) {
-            notifyTagUpdated(tag);
+            endUpdateBatch();
         }
     }
 
@@ -285,57 +443,113 @@ final public class DataMgr {
     }
 
     public void addTransaction(final Transaction transaction) {
-        final SQLiteDatabase database = dbOpenHelper.getWritableDatabase();
-        addTransaction(database, transaction);
+        write(new DatabaseWriter.Task<Void>() {
+            @Override
+            public Void run(final SQLiteDatabase database) {
+                addTransaction(database, transaction);
+                return null;
+            }
+        });
+    }
+
+    /*
+     * Applies the operations through DataProvider in one transaction. Errors
+     * are printed, and null is returned then.
+     */
+    private ContentProviderResult[] applyBatch(final ArrayList<ContentProviderOperation> operations) {
+        try {
+            return context.getContentResolver().applyBatch(DataProvider.AUTHORITY, operations);
+        } catch (final RemoteException exception) {
+            exception.printStackTrace();
+        } catch (final OperationApplicationException exception) {
+            exception.printStackTrace();
+        }
+        return null;
+    }
+
+    /*
+     * Notifications sent between beginUpdateBatch() and the matching
+     * endUpdateBatch() on the same thread are delivered together as one batch.
+     */
+    void beginUpdateBatch() {
+        UpdateBatch batch = updateBatch.get();
+        if (batch == null) {
+            batch = new UpdateBatch();
+            updateBatch.set(batch);
+        }
+        batch.enter();
     }
 
     public int calcGlobalUnreadItemCount() {
-        final ContentResolver resolver = context.getContentResolver();
-        final Cursor cur = resolver.query(Item.CONTENT_URI, new String[] { "count(*)" }, ItemState._ISREAD + "=0",
-                new String[] {}, null);
-        final int ret = (cur.moveToFirst()) ? cur.getInt(0) : 0;
-        cur.close();
-        return ret;
+        return calcUnreadItemsCountByUid(UnreadCounter.UID_GLOBAL);
     }
 
+    /*
+     * Return: the number of local unread items of the stream, read from the
+     * counters maintained on every write.
+     */
     public int calcUnreadItemsCountByUid(final String uid) {
-        final ContentResolver resolver = context.getContentResolver();
-        int ret = 0;
-        if (uid.startsWith("feed/")) {
-            final Cursor cur = resolver.query(Item.CONTENT_URI, new String[] { "count(*)" }, ItemState._ISREAD
-                    + "=0 AND " + Item._SOURCEURI + "=?", new String[] { uid }, null);
-            ret = (cur.moveToFirst()) ? cur.getInt(0) : 0;
-            cur.close();
-        } else if (uid.indexOf("/label/") != -1) {
-            Cursor cur;
-            try {
-                cur = resolver.query(
-                        Uri.withAppendedPath(Tag.CONTENT_URI, "/items/" + URLEncoder.encode(uid, "UTF-8")),
-                        new String[] { "count(*)" }, ItemState._ISREAD + "=0", new String[] {}, null);
-                ret = (cur.moveToFirst()) ? cur.getInt(0) : 0;
-                cur.close();
-            } catch (final UnsupportedEncodingException exception) {
-                exception.printStackTrace();
-            }
-        } else if (uid.endsWith("/state/com.google/reading-list")) {
-            ret = calcGlobalUnreadItemCount();
-        }
-        return ret;
+        final String key = (DataUtils.isReadingListUid(uid)) ? UnreadCounter.UID_GLOBAL : uid;
+        return UnreadCounter.getCount(dbOpenHelper.getReadableDatabase(), key);
     }
 
     public void clearAll() {
-        clearItems();
-        final SQLiteDatabase database = dbOpenHelper.getWritableDatabase();
-        database.execSQL("DELETE FROM " + Subscription.TABLE_NAME);
-        database.execSQL("DELETE FROM " + SubscriptionTag.TABLE_NAME);
-        database.execSQL("DELETE FROM " + Tag.TABLE_NAME);
-        database.execSQL("DELETE FROM " + Setting.TABLE_NAME);
+        write(new DatabaseWriter.Task<Void>() {
+            @Override
+            public Void run(final SQLiteDatabase database) {
+                clearItems(database);
+                database.execSQL("DELETE FROM " + Subscription.TABLE_NAME);
+                database.execSQL("DELETE FROM " + SubscriptionTag.TABLE_NAME);
+                database.execSQL("DELETE FROM " + Tag.TABLE_NAME);
+                database.execSQL("DELETE FROM " + Setting.TABLE_NAME);
+                database.execSQL("DELETE FROM " + HttpValidator.TABLE_NAME);
+                return null;
+            }
+        });
     }
 
     public void clearItems() {
-        final SQLiteDatabase database = dbOpenHelper.getWritableDatabase();
+        write(new DatabaseWriter.Task<Void>() {
+            @Override
+            public Void run(final SQLiteDatabase database) {
+                clearItems(database);
+                return null;
+            }
+        });
+    }
+
+    private void clearItems(final SQLiteDatabase database) {
         database.execSQL("DELETE FROM " + Item.TABLE_NAME);
         database.execSQL("DELETE FROM " + ItemTag.TABLE_NAME);
+        database.execSQL("DELETE FROM " + UnreadCounter.TABLE_NAME);
+        database.execSQL("DELETE FROM " + ImageRef.TABLE_NAME);
+    }
+
+    void endUpdateBatch() {
+        final UpdateBatch batch = updateBatch.get();
+        if (batch.leave()) {
+            updateBatch.remove();
+            final ContentResolver resolver = context.getContentResolver();
+            for (final String[] args : DataUtils.splitQueryArgs(batch.getSubscriptionUids())) {
+                final Cursor cur = resolver.query(Subscription.CONTENT_URI, null,
+                        Subscription._UID + " IN(" + DataUtils.buildPlaceholders(args.length) + ")", args, null);
+                for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
+                    batch.addSubscription(Subscription.fromCursor(cur));
+                }
+                cur.close();
+            }
+            for (final String[] args : DataUtils.splitQueryArgs(batch.getTagUids())) {
+                final Cursor cur = resolver.query(Tag.CONTENT_URI, null,
+                        Tag._UID + " IN(" + DataUtils.buildPlaceholders(args.length) + ")", args, null);
+                for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
+                    batch.addTag(Tag.fromCursor(cur));
+                }
+                cur.close();
+            }
+            if (!batch.isEmpty()) {
+                handler.sendMessage(Message.obtain(handler, MSG_BATCH_UPDATED, batch));
+            }
+        }
     }
 
     public Context getContext() {
@@ -347,6 +561,17 @@ final public class DataMgr {
         return (ret == null) ? 0 : Integer.valueOf(ret);
     }
 
+    /*
+     * Return: the validators stored for the URL, or null if there are none.
+     */
+    public HttpValidator getHttpValidatorByUrl(final String url) {
+        final Cursor cur = dbOpenHelper.getReadableDatabase().query(HttpValidator.TABLE_NAME, null,
+                HttpValidator._URL + "=?", new String[] { url }, null, null, null);
+        final HttpValidator ret = (cur.moveToFirst()) ? HttpValidator.fromCursor(cur) : null;
+        cur.close();
+        return ret;
+    }
+
     public Item getItemByUid(final String uid) {
         return getItemByUid(uid, null);
     }
@@ -359,6 +584,27 @@ final public class DataMgr {
         return ret;
     }
 
+    /*
+     * Returns the page of items that follows (lastTimestamp, lastUid) in the
+     * stream, ordered by timestamp and then uid (id in a tag stream) so that
+     * items sharing a timestamp are neither skipped nor repeated. Pass a null
+     * lastTimestamp for the first page. An empty streamUid means all items.
+     */
+    public List<Item> getItemPage(final String streamUid, final int viewType, final boolean isDescending,
+            final Long lastTimestamp, final String lastUid, final int limit, final String[] projection) {
+        final List<String> args = new ArrayList<String>();
+        final SQLiteDatabase database = dbOpenHelper.getReadableDatabase();
+        final String sql = buildItemPageQuery(database, streamUid, viewType, isDescending, lastTimestamp, lastUid,
+                limit, projection, args);
+        final List<Item> ret = new ArrayList<Item>(limit);
+        final Cursor cur = database.rawQuery(sql, args.toArray(new String[args.size()]));
+        for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
+            ret.add(Item.fromCursor(cur));
+        }
+        cur.close();
+        return ret;
+    }
+
     public List<Tag> getItemTagsByUid(final String uid) {
         return getItemTagsByUid(uid, null);
     }
@@ -414,27 +660,17 @@ final public class DataMgr {
     }
 
     public int getUnreadCountByUid(final String uid) {
-        int ret = 0;
-        if (uid.startsWith("feed/")) {
-            final Subscription sub = getSubscriptionByUid(uid);
-            ret = (sub == null) ? 0 : sub.getUnreadCount();
-        } else if (uid.indexOf("/label/") != -1) {
-            final Tag tag = getTagByUid(uid);
-            ret = (tag == null) ? 0 : tag.getUnreadCount();
-        } else if (uid.endsWith("/state/com.google/reading-list")) {
-            ret = getGlobalUnreadCount();
-        }
-        return ret;
+        return calcUnreadItemsCountByUid(uid);
     }
 
     public void markAllItemsAsRead() {
-        final ContentResolver resolver = context.getContentResolver();
-        final ContentValues values = new ContentValues();
-        values.put(ItemState._ISREAD, true);
-        resolver.update(Item.CONTENT_URI, values, ItemState._ISREAD + "=0", null);
+        markItemsAsReadWhere(null);
     }
 
-    public void markAllItemsAsRead(final SQLiteDatabase database) {
+    /*
+     * Unread counters are not maintained here!
+     */
+    private void markAllItemsAsRead(final SQLiteDatabase database) {
         final ContentValues values = new ContentValues();
         values.put(ItemState._ISREAD, true);
         database.update(Item.TABLE_NAME, values, ItemState._ISREAD + "=0", null);
@@ -446,34 +682,25 @@ final public class DataMgr {
             return;
         }
         item.getState().setRead(true);
-        final SQLiteDatabase database = dbOpenHelper.getWritableDatabase();
-        database.beginTransaction();
+        beginUpdateBatch();
         try {
-            database.execSQL(SQLConstants.MARK_ITEM_AS_READ, new String[] { uid });
-            addTransaction(database, new Transaction(Item.getFullUid(uid), null, Transaction.TYPE_SET_READ));
-            database.setTransactionSuccessful();
-        } catch (final Exception exception) {
-            exception.printStackTrace();
+            markItemsWithTransaction(Collections.singletonList(uid), true);
+            notifyItemUpdated(item);
         } finally {
-            database.endTransaction();
+            endUpdateBatch();
         }
-        notifySettingUpdated(Setting.SETTING_GLOBAL_ITEM_UNREAD_COUNT);
-        notifySubscriptionUpdated(getSubscriptionByUid(item.getSourceUri()));
-        final Cursor cur = database.rawQuery(SQLConstants.SELECT_ITEM_TAGS, new String[] { uid });
-        for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
-            notifyTagUpdated(Tag.fromCursor(cur));
-        }
-        cur.close();
-        notifyItemUpdated(item);
     }
 
     public void markItemAsStarredWithTransactionByUid(final String uid, final boolean isStarred) {
-        final ContentResolver resolver = context.getContentResolver();
-        final ContentValues values = new ContentValues();
-        values.put(ItemState._ISSTARRED, isStarred);
-        resolver.update(Item.CONTENT_URI, values, Item._UID + "=?", new String[] { uid });
-        addTransaction(new Transaction(Item.getFullUid(uid), null, (isStarred) ? Transaction.TYPE_SET_STARRED
-                : Transaction.TYPE_REMOVE_STARRED));
+        final Transaction transaction = new Transaction(Item.getFullUid(uid), null,
+                (isStarred) ? Transaction.TYPE_SET_STARRED : Transaction.TYPE_REMOVE_STARRED);
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>(2);
+        operations.add(ContentProviderOperation.newUpdate(Item.CONTENT_URI)
+                .withValue(ItemState._ISSTARRED, isStarred).withSelection(Item._UID + "=?", new String[] { uid })
+                .build());
+        operations.add(ContentProviderOperation.newInsert(Transaction.CONTENT_URI)
+                .withValues(transaction.toContentValues()).build());
+        applyBatch(operations);
         notifyItemUpdated(getItemByUid(uid));
     }
 
@@ -483,80 +710,30 @@ final public class DataMgr {
             return;
         }
         item.getState().setRead(false);
-        final SQLiteDatabase database = dbOpenHelper.getWritableDatabase();
-        database.beginTransaction();
+        beginUpdateBatch();
         try {
-            database.execSQL(
-                    "UPDATE " + Item.TABLE_NAME + " SET " + ItemState._ISREAD + "=0 WHERE " + Item._UID + "=?",
-                    new String[] { uid });
-            database.execSQL("UPDATE " + Subscription.TABLE_NAME + " SET " + Subscription._UNREADCOUNT + "="
-                    + Subscription._UNREADCOUNT + "+1 WHERE " + Subscription._UID + "=?",
-                    new String[] { item.getSourceUri() });
-            database.execSQL(SQLConstants.INCREASE_TAG_UNREAD_COUNT, new String[] { item.getUid() });
-            database.setTransactionSuccessful();
-            final String sGlobalUC = getSettingByName(Setting.SETTING_GLOBAL_ITEM_UNREAD_COUNT);
-            final int globalUC = ((sGlobalUC == null) ? 0 : Integer.valueOf(sGlobalUC)) + 1;
-            updateSetting(database, new Setting(Setting.SETTING_GLOBAL_ITEM_UNREAD_COUNT, globalUC));
-            addTransaction(new Transaction(Item.getFullUid(uid), null, Transaction.TYPE_REMOVE_READ));
-        } catch (final Exception exception) {
-            exception.printStackTrace();
+            markItemsWithTransaction(Collections.singletonList(uid), false);
+            notifyItemUpdated(item);
         } finally {
-            database.endTransaction();
+            endUpdateBatch();
         }
-        notifySettingUpdated(Setting.SETTING_GLOBAL_ITEM_UNREAD_COUNT);
-        notifySubscriptionUpdated(getSubscriptionByUid(item.getSourceUri()));
-        final Cursor cur = database.rawQuery(SQLConstants.SELECT_ITEM_TAGS, new String[] { uid });
-        for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
-            notifyTagUpdated(Tag.fromCursor(cur));
-        }
-        notifyItemUpdated(item);
     }
 
     public void markItemsAsReadByTimestampRange(final Long tLow, final Long tHigh) {
-        if (tLow == null && tHigh == null) {
-            markAllItemsAsRead();
-            return;
-        }
-        final ContentResolver resolver = context.getContentResolver();
-        final ContentValues values = new ContentValues();
-        values.put(ItemState._ISREAD, true);
-        final StringBuilder buff = new StringBuilder(128);
-        if (tLow == null) {
-            buff.append(Item._TIMESTAMP + "<");
-            buff.append(tHigh);
-        } else if (tHigh == null) {
-            buff.append(Item._TIMESTAMP + ">");
-            buff.append(tLow);
-        } else {
-            buff.append(Item._TIMESTAMP + "<");
-            buff.append(tHigh);
-            buff.append(" AND " + Item._TIMESTAMP + ">");
-            buff.append(tLow);
-        }
-        resolver.update(Item.CONTENT_URI, values, buff.toString(), null);
+        markItemsAsReadWhere(DataUtils.buildTimestampRange(Item._TIMESTAMP, tLow, tHigh));
     }
 
-    public void markItemsAsReadByTimestampRange(final SQLiteDatabase database, final Long tLow, final Long tHigh) {
+    /*
+     * Unread counters are not maintained here!
+     */
+    private void markItemsAsReadByTimestampRange(final SQLiteDatabase database, final Long tLow, final Long tHigh) {
         if (tLow == null && tHigh == null) {
             markAllItemsAsRead(database);
             return;
         }
         final ContentValues values = new ContentValues();
         values.put(ItemState._ISREAD, true);
-        final StringBuilder buff = new StringBuilder(128);
-        if (tLow == null) {
-            buff.append(Item._TIMESTAMP + "<");
-            buff.append(tHigh);
-        } else if (tHigh == null) {
-            buff.append(Item._TIMESTAMP + ">");
-            buff.append(tLow);
-        } else {
-            buff.append(Item._TIMESTAMP + "<");
-            buff.append(tHigh);
-            buff.append(" AND " + Item._TIMESTAMP + ">");
-            buff.append(tLow);
-        }
-        database.update(Item.TABLE_NAME, values, buff.toString(), null);
+        database.update(Item.TABLE_NAME, values, DataUtils.buildTimestampRange(Item._TIMESTAMP, tLow, tHigh), null);
     }
 
     public void markItemsAsReadItemIds(final List<ItemId> itemIds) {
@@ -567,101 +744,190 @@ final public class DataMgr {
         markItemsAsReadItemIds(itemIds, left, right, false);
     }
 
-    public void markItemsAsReadItemIds(final List<ItemId> itemIds, int left, int right, boolean markPreviousAsRead) {
-        final SQLiteDatabase database = dbOpenHelper.getWritableDatabase();
-        database.beginTransaction();
-        try {
-            Long lastTimestamp = (left > 0) ? (itemIds.get(left - 1).getTimestamp()) : null;
-            final ContentValues values = new ContentValues();
-            values.put(ItemState._ISREAD, false);
-            database.execSQL(SQLConstants.DROP_TRIGGER_MARK_ITEM_AS_READ);
-            for (int i = left; i < right; i++) {
-                final ItemId curItemId = itemIds.get(i);
-                markItemsAsReadByTimestampRange(database, curItemId.getTimestamp(), lastTimestamp);
-                database.update(Item.TABLE_NAME, values, Item._UID + "=?", new String[] { curItemId.getUid() });
-                lastTimestamp = curItemId.getTimestamp();
-            }
-            if (markPreviousAsRead) {
-                markItemsAsReadByTimestampRange(database, null, lastTimestamp);
-            }
-            database.execSQL(SQLConstants.CREATE_TRIGGER_MARK_ITEM_AS_READ);
-            database.setTransactionSuccessful();
-        } catch (final Exception exception) {
-            exception.printStackTrace();
-        } finally {
-            database.endTransaction();
-        }
+    public void markItemsAsReadItemIds(final List<ItemId> itemIds, final int left, final int right,
+            final boolean markPreviousAsRead) {
+        write(new DatabaseWriter.Task<Void>() {
+            @Override
+            public Void run(final SQLiteDatabase database) {
+                final UnreadCounter counter = new UnreadCounter(database);
+                try {
+                    Long lastTimestamp = (left > 0) ? (itemIds.get(left - 1).getTimestamp()) : null;
+                    /*
+                     * Only the listed items and the unread ones between the oldest
+                     * listed item and lastTimestamp may change.
+                     */
+                    final List<String> uids = new ArrayList<String>(right - left);
+                    for (int i = left; i < right; i++) {
+                        uids.add(itemIds.get(i).getUid());
+                    }
+                    final Long tLow = (markPreviousAsRead || right <= left) ? null : itemIds.get(right - 1)
+                            .getTimestamp();
+                    counter.stage(uids);
+                    counter.stageWhere(DataUtils.buildTimestampRange(Item._TIMESTAMP, tLow, lastTimestamp));
+                    counter.count();
+                    counter.apply(-1);
+
+                    final ContentValues values = new ContentValues();
+                    values.put(ItemState._ISREAD, false);
+                    for (int i = left; i < right; i++) {
+                        final ItemId curItemId = itemIds.get(i);
+                        markItemsAsReadByTimestampRange(database, curItemId.getTimestamp(), lastTimestamp);
+                        database.update(Item.TABLE_NAME, values, Item._UID + "=?", new String[] { curItemId.getUid() });
+                        lastTimestamp = curItemId.getTimestamp();
+                    }
+                    if (markPreviousAsRead) {
+                        markItemsAsReadByTimestampRange(database, null, lastTimestamp);
+                    }
+                    counter.count();
+                    counter.apply(1);
+                } finally {
+                    counter.close();
+                }
+                return null;
+            }
+        });
     }
 
     /*
      * This method will not send any signals like "ItemUpdated".
      */
-    public void markItemsAsReadWithTransaction(final List<Item> items) {
-        final HashSet<String> tagsApp = new HashSet<String>();
-        final HashSet<String> subscriptionsApp = new HashSet<String>();
-        final SQLiteDatabase database = dbOpenHelper.getWritableDatabase();
-        database.beginTransaction();
+    public void markItemsAsReadWithTransaction(final Collection<String> uids) {
+        markItemsWithTransaction(uids, true);
+    }
+
+    /*
+     * Marks the unread items matching the selection (all if null) as read,
+     * without queuing transactions.
+     */
+    private void markItemsAsReadWhere(final String selection) {
+        write(new DatabaseWriter.Task<Void>() {
+            @Override
+            public Void run(final SQLiteDatabase database) {
+                final UnreadCounter counter = new UnreadCounter(database);
+                try {
+                    counter.stageWhere(selection);
+                    counter.count();
+                    counter.apply(-1);
+                    database.execSQL(SQLConstants.MARK_STAGED_ITEMS, new Object[] { 1 });
+                } finally {
+                    counter.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    /*
+     * The uids are staged in a temporary table, so that marking, counting and
+     * queuing transactions are each done by a single statement.
+     */
+    private void markItemsWithTransaction(final Collection<String> uids, final boolean isRead) {
+        final List<String> updatedUids = write(new DatabaseWriter.Task<List<String>>() {
+            @Override
+            public List<String> run(final SQLiteDatabase database) {
+                final List<String> ret = new ArrayList<String>();
+                final UnreadCounter counter = new UnreadCounter(database);
+                try {
+                    counter.stage(uids);
+                    counter.retain(!isRead);
+                    counter.count();
+                    counter.apply(-1);
+                    counter.applyToServerCounts(-1);
+                    ret.addAll(counter.getCountedUids());
+                    database.execSQL(SQLConstants.MARK_STAGED_ITEMS, new Object[] { isRead ? 1 : 0 });
+                    counter.count();
+                    counter.apply(1);
+                    counter.applyToServerCounts(1);
+                    ret.addAll(counter.getCountedUids());
+                    database.execSQL(SQLConstants.INSERT_STAGED_TRANSACTIONS,
+                            new Object[] { isRead ? Transaction.TYPE_SET_READ : Transaction.TYPE_REMOVE_READ });
+                } finally {
+                    counter.close();
+                }
+                return ret;
+            }
+        });
+        beginUpdateBatch();
         try {
-            for (final Item item : items) {
-                database.execSQL(SQLConstants.MARK_ITEM_AS_READ, new String[] { item.getUid() });
-                addTransaction(database, new Transaction(item.getFullUid(), null, Transaction.TYPE_SET_READ));
-                subscriptionsApp.add(item.getSourceUri());
-                final Cursor cur = database.rawQuery(SQLConstants.SELECT_ITEM_TAGS_UID, new String[] { item.getUid() });
-                for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
-                    tagsApp.add(cur.getString(0));
+            for (final String uid : updatedUids) {
+                if (uid.startsWith("feed/")) {
+                    notifySubscriptionUpdated(uid);
+                } else {
+                    notifyTagUpdated(uid);
                 }
-                cur.close();
             }
-            database.setTransactionSuccessful();
-        } catch (final Exception exception) {
-            exception.printStackTrace();
+            notifySettingUpdated(Setting.SETTING_GLOBAL_ITEM_UNREAD_COUNT);
         } finally {
-            database.endTransaction();
-        }
-        for (final String uid : tagsApp) {
-            notifyTagUpdated(getTagByUid(uid));
+            endUpdateBatch();
         }
-        for (final String uid : subscriptionsApp) {
-            notifySubscriptionUpdated(getSubscriptionByUid(uid));
-        }
-        notifySettingUpdated(Setting.SETTING_GLOBAL_ITEM_UNREAD_COUNT);
     }
 
     private void notifyItemUpdated(final Item item) {
         if (item != null) {
-            handler.sendMessage(Message.obtain(handler, MSG_ITEM_UPDATED, item));
+            beginUpdateBatch();
+            try {
+                updateBatch.get().addItem(item);
+            } finally {
+                endUpdateBatch();
+            }
         }
     }
 
     private void notifySettingUpdated(final String name) {
-        handler.sendMessage(Message.obtain(handler, MSG_SETTING_UPDATED, name));
+        beginUpdateBatch();
+        try {
+            updateBatch.get().addSetting(name);
+        } finally {
+            endUpdateBatch();
+        }
+    }
+
+    private void notifySubscriptionUpdated(final String uid) {
+        beginUpdateBatch();
+        try {
+            updateBatch.get().addSubscriptionUid(uid);
+        } finally {
+            endUpdateBatch();
+        }
     }
 
     private void notifySubscriptionUpdated(final Subscription sub) {
         if (sub != null) {
-            handler.sendMessage(Message.obtain(handler, MSG_SUBSCRIPTION_UPDATED, sub));
+            beginUpdateBatch();
+            try {
+                updateBatch.get().addSubscription(sub);
+            } finally {
+                endUpdateBatch();
+            }
         }
     }
 
-    private void notifyTagUpdated(final Tag tag) {
-        if (tag != null) {
-            handler.sendMessage(Message.obtain(handler, MSG_TAG_UPDATED, tag));
+    private void notifyTagUpdated(final String uid) {
+        beginUpdateBatch();
+        try {
+            updateBatch.get().addTagUid(uid);
+        } finally {
+            endUpdateBatch();
         }
     }
 
-    public int removeItemByUid(final SQLiteDatabase database, final String uid) {
-        final int ret = database.delete(Item.TABLE_NAME, Item._UID + "=?", new String[] { uid });
-        database.delete(ItemTag.TABLE_NAME, ItemTag._ITEMUID + "=?", new String[] { uid });
-        DataUtils.deleteFile(new File(Item.getStoragePathByUid(uid)));
-        return ret;
+    private void notifyTagUpdated(final Tag tag) {
+        if (tag != null) {
+            beginUpdateBatch();
+            try {
+                updateBatch.get().addTag(tag);
+            } finally {
+                endUpdateBatch();
+            }
+        }
     }
 
+    /*
+     * The files of the item and its images no longer referenced are trashed
+     * once the rows are committed, as with eviction.
+     */
     public int removeItemByUid(final String uid) {
-        final ContentResolver resolver = context.getContentResolver();
-        final int ret = resolver.delete(Item.CONTENT_URI, Item._UID + "=?", new String[] { uid });
-        resolver.delete(ItemTag.CONTENT_URI, ItemTag._ITEMUID + "=?", new String[] { uid });
-        DataUtils.deleteFile(new File(Item.getStoragePathByUid(uid)));
-        return ret;
+        return evictor.remove(uid);
     }
 
     /*
@@ -692,37 +958,45 @@ final public class DataMgr {
         tagListeners.remove(listener);
     }
 
-    public int removeOutdatedItemsWithLimit(final int limit) {
-        int ret = 0;
-        final ContentResolver resolver = context.getContentResolver();
-        final Cursor cur = resolver.query(Uri.withAppendedPath(Item.CONTENT_URI, "offset/" + limit),
-                new String[] { Item._UID }, null, null, Item._UPDATETIME + " DESC");
-        for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
-            ret += removeItemByUid(Item.fromCursor(cur).getUid());
-        }
-        cur.close();
-        return ret;
+    /*
+     * Removes the items outdated by the limits in the settings, see
+     * EvictionPolicy.
+     */
+    public int removeOutdatedItems() {
+        final long day = 24L * 60 * 60 * 1000;
+        return removeOutdatedItems(new EvictionPolicy(new SettingMaxItems(this).getData(),
+                new SettingMaxItemAge(this).getData() * day,
+                new SettingMaxItemSpace(this).getData() * 1024L * 1024L, new SettingKeepStarredItems(this).getData(),
+                new SettingKeepUnreadItems(this).getData()));
     }
 
-    public int removeOutdatedSubscriptions(final long updateTime) {
-        int ret = 0;
-        final ContentResolver resolver = context.getContentResolver();
-        final Cursor cur = resolver.query(Subscription.CONTENT_URI, new String[] { Subscription._UID },
-                Subscription._UPDATETIME + "<?", new String[] { String.valueOf(updateTime) }, null);
-        final SQLiteDatabase database = dbOpenHelper.getWritableDatabase();
-        database.beginTransaction();
+    /*
+     * Return: the number of items removed at once; the space limit is applied
+     * later in the background.
+     */
+    public int removeOutdatedItems(final EvictionPolicy policy) {
         try {
-            for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
-                ret += removeSubscriptionByUid(Utils.getStringFromCursor(cur, Subscription._UID));
-            }
-            database.setTransactionSuccessful();
+            return evictor.evict(policy).size();
         } catch (final Exception exception) {
             exception.printStackTrace();
-        } finally {
-            database.endTransaction();
+            return 0;
         }
-        cur.close();
-        return ret;
+    }
+
+    public int removeOutdatedSubscriptions(final long updateTime) {
+        return write(new DatabaseWriter.Task<Integer>() {
+            @Override
+            public Integer run(final SQLiteDatabase database) {
+                int count = 0;
+                final Cursor cur = database.query(Subscription.TABLE_NAME, new String[] { Subscription._UID },
+                        Subscription._UPDATETIME + "<?", new String[] { String.valueOf(updateTime) }, null, null, null);
+                for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
+                    count += removeSubscriptionByUid(database, Utils.getStringFromCursor(cur, Subscription._UID));
+                }
+                cur.close();
+                return count;
+            }
+        });
     }
 
     public int removeOutdatedTags(final long updateTime) {
@@ -731,14 +1005,13 @@ final public class DataMgr {
     }
 
     public void removeOutdatedUnreadCounts(final long updateTime) {
-        final ContentResolver resolver = context.getContentResolver();
-        final ContentValues values = new ContentValues();
-        values.put(Subscription._UNREADCOUNT, 0);
-        resolver.update(Subscription.CONTENT_URI, values, Subscription._UPDATETIME + "<?",
-                new String[] { String.valueOf(updateTime) });
-        values.clear();
-        values.put(Tag._UNREADCOUNT, 0);
-        resolver.update(Tag.CONTENT_URI, values, Tag._UPDATETIME + "<?", new String[] { String.valueOf(updateTime) });
+        final String[] args = new String[] { String.valueOf(updateTime) };
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>(2);
+        operations.add(ContentProviderOperation.newUpdate(Subscription.CONTENT_URI)
+                .withValue(Subscription._UNREADCOUNT, 0).withSelection(Subscription._UPDATETIME + "<?", args).build());
+        operations.add(ContentProviderOperation.newUpdate(Tag.CONTENT_URI).withValue(Tag._UNREADCOUNT, 0)
+                .withSelection(Tag._UPDATETIME + "<?", args).build());
+        applyBatch(operations);
     }
 
     public int removeSettingByName(final String name) {
@@ -748,24 +1021,90 @@ final public class DataMgr {
 
     public int removeSubscriptionByUid(final SQLiteDatabase database, final String uid) {
         final int ret = database.delete(Subscription.TABLE_NAME, Subscription._UID + "=?", new String[] { uid });
-        database.delete(SubscriptionTag.TABLE_NAME, SubscriptionTag._SUBSCRIPTIONUID + "=?", new String[] { uid });
+        database.delete(SubscriptionTag.TABLE_NAME, SubscriptionTag._SUBSCRIPTIONID + "=?",
+                new String[] { String.valueOf(StreamIds.lookup(database, uid)) });
         return ret;
     }
 
     public int removeSubscriptionByUid(final String uid) {
-        final ContentResolver resolver = context.getContentResolver();
-        final int ret = resolver.delete(Subscription.CONTENT_URI, Subscription._UID + "=?", new String[] { uid });
-        resolver.delete(SubscriptionTag.CONTENT_URI, SubscriptionTag._SUBSCRIPTIONUID + "=?", new String[] { uid });
-        return ret;
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>(2);
+        operations.add(ContentProviderOperation.newDelete(Subscription.CONTENT_URI)
+                .withSelection(Subscription._UID + "=?", new String[] { uid }).build());
+        operations.add(ContentProviderOperation.newDelete(SubscriptionTag.CONTENT_URI)
+                .withSelection(SubscriptionTag._SUBSCRIPTIONID + "=(SELECT " + StreamIds._ID + " FROM "
+                        + StreamIds.TABLE_NAME + " WHERE " + StreamIds._UID + "=?)", new String[] { uid }).build());
+        final ContentProviderResult[] results = applyBatch(operations);
+        return (results == null) ? 0 : results[0].count;
     }
 
     public void removeTransactionById(final long id) {
-        final ContentResolver resolver = context.getContentResolver();
-        resolver.delete(Transaction.CONTENT_URI, Transaction._ID + "=?", new String[] { String.valueOf(id) });
+        removeTransactionsByIds(Collections.singletonList(id));
+    }
+
+    /*
+     * Removes all the transactions in one transaction, a statement per chunk of
+     * ids.
+     */
+    public void removeTransactionsByIds(final Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        final List<String> sIds = new ArrayList<String>(ids.size());
+        for (final long id : ids) {
+            sIds.add(String.valueOf(id));
+        }
+        write(new DatabaseWriter.Task<Void>() {
+            @Override
+            public Void run(final SQLiteDatabase database) {
+                for (final String[] args : DataUtils.splitQueryArgs(sIds)) {
+                    database.delete(Transaction.TABLE_NAME,
+                            Transaction._ID + " IN(" + DataUtils.buildPlaceholders(args.length) + ")", args);
+                }
+                return null;
+            }
+        });
+    }
+
+    /*
+     * Recounting takes a pass over all unread items, so the counters are
+     * checked at most once per UNREAD_COUNTS_VERIFY_INTERVAL.
+     *
+     * Return: whether the unread counters were right, or true if they are not
+     * checked this time. The wrong ones are recounted.
+     */
+    public boolean verifyUnreadCounts() {
+        final long time = System.currentTimeMillis();
+        final String sTime = getSettingByName(Setting.SETTING_UNREAD_COUNTS_VERIFY_TIME);
+        if (sTime != null && Math.abs(time - Long.valueOf(sTime)) < UNREAD_COUNTS_VERIFY_INTERVAL) {
+            return true;
+        }
+        return write(new DatabaseWriter.Task<Boolean>() {
+            @Override
+            public Boolean run(final SQLiteDatabase database) {
+                updateSetting(database, new Setting(Setting.SETTING_UNREAD_COUNTS_VERIFY_TIME, time));
+                return UnreadCounter.verify(database);
+            }
+        });
+    }
+
+    public void updateHttpValidator(final HttpValidator validator) {
+        write(new DatabaseWriter.Task<Void>() {
+            @Override
+            public Void run(final SQLiteDatabase database) {
+                database.replace(HttpValidator.TABLE_NAME, null, validator.toContentValues());
+                return null;
+            }
+        });
     }
 
     public void updateSetting(final Setting setting) {
-        updateSetting(dbOpenHelper.getWritableDatabase(), setting);
+        write(new DatabaseWriter.Task<Void>() {
+            @Override
+            public Void run(final SQLiteDatabase database) {
+                updateSetting(database, setting);
+                return null;
+            }
+        });
         notifySettingUpdated(setting.getName());
     }
 
@@ -777,75 +1116,91 @@ final public class DataMgr {
     }
 
     public void updateSubscriptionIconByUid(final String uid, final byte[] icon) {
-        final ContentResolver resolver = context.getContentResolver();
-        final ContentValues values = new ContentValues();
-        values.put(Subscription._ICON, icon);
-        resolver.update(Subscription.CONTENT_URI, values, Subscription._UID + "=?", new String[] { uid });
-        notifySubscriptionUpdated(getSubscriptionByUid(uid));
+        updateSubscriptionIcons(Collections.singletonMap(uid, icon));
     }
 
-    public void updateUnreadCount(final UnreadCount unread) {
-        final String uid = unread.getUid();
-        final ContentResolver resolver = context.getContentResolver();
-        final ContentValues values = new ContentValues();
-        if (uid.startsWith("feed/")) {
-            values.put(Subscription._UNREADCOUNT, unread.getCount());
-            values.put(Subscription._UPDATETIME, System.currentTimeMillis());
-            resolver.update(Subscription.CONTENT_URI, values, Subscription._UID + "=?", new String[] { uid });
-            notifySubscriptionUpdated(getSubscriptionByUid(uid));
-        } else if (uid.indexOf("/label/") != -1) {
-            values.put(Tag._UNREADCOUNT, unread.getCount());
-            values.put(Tag._UPDATETIME, System.currentTimeMillis());
-            resolver.update(Tag.CONTENT_URI, values, Tag._UID + "=?", new String[] { uid });
-            notifyTagUpdated(getTagByUid(uid));
-        } else if (uid.endsWith("/state/com.google/reading-list")) {
-            updateSetting(new Setting(Setting.SETTING_GLOBAL_ITEM_UNREAD_COUNT, unread.getCount()));
-            updateSetting(new Setting(Setting.SETTING_GLOBAL_ITEM_UPDATE_TIME, System.currentTimeMillis()));
+    /*
+     * icons: the icon data by the uids of the subscriptions, stored in one
+     * transaction and notified in one batch.
+     */
+    public void updateSubscriptionIcons(final Map<String, byte[]> icons) {
+        if (icons.isEmpty()) {
+            return;
+        }
+        write(new DatabaseWriter.Task<Void>() {
+            @Override
+            public Void run(final SQLiteDatabase database) {
+                final ContentValues values = new ContentValues(1);
+                for (final Map.Entry<String, byte[]> icon : icons.entrySet()) {
+                    values.put(Subscription._ICON, icon.getValue());
+                    database.update(Subscription.TABLE_NAME, values, Subscription._UID + "=?",
+                            new String[] { icon.getKey() });
+                }
+                return null;
+            }
+        });
+        beginUpdateBatch();
+        try {
+            for (final String uid : icons.keySet()) {
+                notifySubscriptionUpdated(uid);
+            }
+        } finally {
+            endUpdateBatch();
         }
     }
 
+    public void updateUnreadCount(final UnreadCount unread) {
+        updateUnreadCounts(Collections.singletonList(unread));
+    }
+
     public void updateUnreadCounts(final List<UnreadCount> unreadCounts) {
-        final SQLiteDatabase database = dbOpenHelper.getWritableDatabase();
-        database.beginTransaction();
+        write(new DatabaseWriter.Task<Void>() {
+            @Override
+            public Void run(final SQLiteDatabase database) {
+                for (final UnreadCount unread : unreadCounts) {
+                    final String uid = unread.getUid();
+                    final ContentValues values = new ContentValues();
+                    if (uid.startsWith("feed/")) {
+                        values.put(Subscription._UNREADCOUNT, unread.getCount());
+                        values.put(Subscription._UPDATETIME, System.currentTimeMillis());
+                        database.update(Subscription.TABLE_NAME, values, Subscription._UID + "=?",
+                                new String[] { uid });
+                    } else if (uid.indexOf("/label/") != -1) {
+                        values.put(Tag._UNREADCOUNT, unread.getCount());
+                        values.put(Tag._UPDATETIME, System.currentTimeMillis());
+                        database.update(Tag.TABLE_NAME, values, Tag._UID + "=?", new String[] { uid });
+                    } else if (uid.endsWith("/state/com.google/reading-list")) {
+                        updateSetting(database,
+                                new Setting(Setting.SETTING_GLOBAL_ITEM_UNREAD_COUNT, unread.getCount()));
+                        updateSetting(database,
+                                new Setting(Setting.SETTING_GLOBAL_ITEM_UPDATE_TIME, System.currentTimeMillis()));
+                    }
+                }
+                return null;
+            }
+        });
+        beginUpdateBatch();
         try {
             for (final UnreadCount unread : unreadCounts) {
                 final String uid = unread.getUid();
-                final ContentValues values = new ContentValues();
                 if (uid.startsWith("feed/")) {
-                    values.put(Subscription._UNREADCOUNT, unread.getCount());
-                    values.put(Subscription._UPDATETIME, System.currentTimeMillis());
-                    database.update(Subscription.TABLE_NAME, values, Subscription._UID + "=?", new String[] { uid });
+                    notifySubscriptionUpdated(uid);
                 } else if (uid.indexOf("/label/") != -1) {
-                    values.put(Tag._UNREADCOUNT, unread.getCount());
-                    values.put(Tag._UPDATETIME, System.currentTimeMillis());
-                    database.update(Tag.TABLE_NAME, values, Tag._UID + "=?", new String[] { uid });
-                } else if (uid.endsWith("/state/com.google/reading-list")) {
-                    updateSetting(database, new Setting(Setting.SETTING_GLOBAL_ITEM_UNREAD_COUNT, unread.getCount()));
-                    updateSetting(database,
-                            new Setting(Setting.SETTING_GLOBAL_ITEM_UPDATE_TIME, System.currentTimeMillis()));
+                    notifyTagUpdated(uid);
                 }
             }
-            database.setTransactionSuccessful();
             notifySettingUpdated(Setting.SETTING_GLOBAL_ITEM_UNREAD_COUNT);
-            final ContentResolver resolver = context.getContentResolver();
-            {
-                final Cursor cur = resolver.query(Tag.CONTENT_URI, null, null, null, null);
-                for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
-                    notifyTagUpdated(Tag.fromCursor(cur));
-                }
-                cur.close();
-            }
-            {
-                final Cursor cur = resolver.query(Subscription.CONTENT_URI, null, null, null, null);
-                for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
-                    notifySubscriptionUpdated(Subscription.fromCursor(cur));
-                }
-                cur.close();
-            }
-        } catch (final Exception exception) {
-            exception.printStackTrace();
         } finally {
-            database.endTransaction();
+            endUpdateBatch();
         }
     }
+
+    /*
+     * Runs the task through the database writer, see DatabaseWriter. Errors
+     * are thrown here again once the task is rolled back, so that nothing is
+     * stored or notified after a failed write.
+     */
+    private <T> T write(final DatabaseWriter.Task<T> task) {
+        return dbOpenHelper.getWriter().execute(task);
+    }
 }
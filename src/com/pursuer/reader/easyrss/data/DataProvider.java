@@ -12,15 +12,25 @@
 package com.pursuer.reader.easyrss.data;
 
 import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
 import android.text.TextUtils;
 
@@ -44,8 +54,6 @@ public class DataProvider extends ContentProvider {
     private static final int UM_ITEMS = 11;
     private static final int UM_ITEM_TAGS = 12;
     private static final int UM_ITEMS_WITH_LIMIT = 13;
-    private static final int UM_ITEMS_WITH_OFFSET = 14;
-    private static final int UM_ITEMS_WITH_OFFSET_LIMIT = 15;
     private static final int UM_ITEMTAGS = 20;
     private static final int UM_SUBSCRIPTION_UID = 30;
     private static final int UM_SUBSCRIPTIONS = 31;
@@ -64,8 +72,6 @@ public class DataProvider extends ContentProvider {
         uriMatcher.addURI(AUTHORITY, Item.TABLE_NAME, UM_ITEMS);
         uriMatcher.addURI(AUTHORITY, Item.TABLE_NAME + "/tags/*", UM_ITEM_TAGS);
         uriMatcher.addURI(AUTHORITY, Item.TABLE_NAME + "/limit/#", UM_ITEMS_WITH_LIMIT);
-        uriMatcher.addURI(AUTHORITY, Item.TABLE_NAME + "/offset/#", UM_ITEMS_WITH_OFFSET);
-        uriMatcher.addURI(AUTHORITY, Item.TABLE_NAME + "/offset-limit/#/#", UM_ITEMS_WITH_OFFSET_LIMIT);
         uriMatcher.addURI(AUTHORITY, ItemTag.TABLE_NAME, UM_ITEMTAGS);
         uriMatcher.addURI(AUTHORITY, Subscription.TABLE_NAME + "/id/*", UM_SUBSCRIPTION_UID);
         uriMatcher.addURI(AUTHORITY, Subscription.TABLE_NAME, UM_SUBSCRIPTIONS);
@@ -111,14 +117,135 @@ public class DataProvider extends ContentProvider {
         return buff.toString();
     }
 
+    private static SQLiteStatement compileInsert(final SQLiteDatabase database, final String tableName,
+            final String[] columns) {
+        final StringBuilder builder = new StringBuilder(256);
+        /* ABORT undoes the failing row only, the transaction goes on. */
+        builder.append("INSERT OR ABORT INTO ");
+        builder.append(tableName);
+        builder.append('(');
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(columns[i]);
+        }
+        builder.append(")VALUES(");
+        builder.append(DataUtils.buildPlaceholders(columns.length));
+        builder.append(')');
+        return database.compileStatement(builder.toString());
+    }
+
+    private static String getInsertTableName(final Uri uri) {
+        switch (uriMatcher.match(uri)) {
+        case UM_ITEMS:
+            return Item.TABLE_NAME;
+        case UM_ITEMTAGS:
+            return ItemTag.TABLE_NAME;
+        case UM_SUBSCRIPTIONS:
+            return Subscription.TABLE_NAME;
+        case UM_SUBSCRIPTIONTAGS:
+            return SubscriptionTag.TABLE_NAME;
+        case UM_SETTINGS:
+            return Setting.TABLE_NAME;
+        case UM_TAGS:
+            return Tag.TABLE_NAME;
+        case UM_TRANSACTIONS:
+            return Transaction.TABLE_NAME;
+        default:
+            throw new IllegalArgumentException("Unknown URI " + uri);
+        }
+    }
+
+    /*
+     * Applies all the operations in one transaction on the database writer.
+     * If any of them fails, none of them is applied.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(final ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        try {
+            return mDbHelper.getWriter().execute(new DatabaseWriter.Task<ContentProviderResult[]>() {
+                @Override
+                public ContentProviderResult[] run(final SQLiteDatabase database) {
+                    final ContentProviderResult[] ret = new ContentProviderResult[operations.size()];
+                    for (int i = 0; i < ret.length; i++) {
+                        try {
+                            /* Runs inline: we are on the writer thread already. */
+                            ret[i] = operations.get(i).apply(DataProvider.this, ret, i);
+                        } catch (final OperationApplicationException exception) {
+                            throw new IllegalStateException(exception);
+                        }
+                    }
+                    return ret;
+                }
+            });
+        } catch (final IllegalStateException exception) {
+            if (exception.getCause() instanceof OperationApplicationException) {
+                throw (OperationApplicationException) exception.getCause();
+            }
+            throw exception;
+        }
+    }
+
+    /*
+     * Inserts all the rows in one transaction on the database writer, with one
+     * compiled statement per set of columns. Rows violating a constraint, as
+     * an item or tag already stored, are skipped as with insert() and are not
+     * counted; stored rows are never replaced. Use applyBatch() to update.
+     */
+    @Override
+    public int bulkInsert(final Uri uri, final ContentValues[] values) {
+        final String tableName = getInsertTableName(uri);
+        return mDbHelper.getWriter().execute(new DatabaseWriter.Task<Integer>() {
+            @Override
+            public Integer run(final SQLiteDatabase database) {
+                final Map<Set<String>, String[]> columnLists = new HashMap<Set<String>, String[]>();
+                final Map<Set<String>, SQLiteStatement> statements = new HashMap<Set<String>, SQLiteStatement>();
+                int ret = 0;
+                try {
+                    for (final ContentValues row : values) {
+                        /* ContentValues.keySet() needs API level 11. */
+                        final Set<String> keys = new HashSet<String>();
+                        for (final Map.Entry<String, Object> entry : row.valueSet()) {
+                            keys.add(entry.getKey());
+                        }
+                        String[] columns = columnLists.get(keys);
+                        SQLiteStatement statement = statements.get(keys);
+                        if (statement == null) {
+                            columns = keys.toArray(new String[keys.size()]);
+                            statement = compileInsert(database, tableName, columns);
+                            columnLists.put(keys, columns);
+                            statements.put(keys, statement);
+                        }
+                        statement.clearBindings();
+                        for (int i = 0; i < columns.length; i++) {
+                            DataUtils.bindValue(statement, i + 1, row.get(columns[i]));
+                        }
+                        try {
+                            statement.executeInsert();
+                            ret++;
+                        } catch (final SQLiteConstraintException exception) {
+                            exception.printStackTrace();
+                        }
+                    }
+                } finally {
+                    for (final SQLiteStatement statement : statements.values()) {
+                        statement.close();
+                    }
+                }
+                return ret;
+            }
+        });
+    }
+
     public void close() {
         mDbHelper.close();
     }
 
     @Override
     public int delete(final Uri uri, final String where, final String[] whereArgs) {
-        update(uri, null, where, whereArgs, false);
-        return 0;
+        return update(uri, null, where, whereArgs, false);
     }
 
     @Override
@@ -128,46 +255,16 @@ public class DataProvider extends ContentProvider {
 
     @Override
     public Uri insert(final Uri uri, final ContentValues values) {
-        final String tableName;
-        final Uri contentUri;
-        switch (uriMatcher.match(uri)) {
-        case UM_ITEMS:
-            tableName = Item.TABLE_NAME;
-            contentUri = Item.CONTENT_URI;
-            break;
-        case UM_ITEMTAGS:
-            tableName = ItemTag.TABLE_NAME;
-            contentUri = ItemTag.CONTENT_URI;
-            break;
-        case UM_SUBSCRIPTIONS:
-            tableName = Subscription.TABLE_NAME;
-            contentUri = Subscription.CONTENT_URI;
-            break;
-        case UM_SUBSCRIPTIONTAGS:
-            tableName = SubscriptionTag.TABLE_NAME;
-            contentUri = SubscriptionTag.CONTENT_URI;
-            break;
-        case UM_SETTINGS:
-            tableName = Setting.TABLE_NAME;
-            contentUri = Setting.CONTENT_URI;
-            break;
-        case UM_TAGS:
-            tableName = Tag.TABLE_NAME;
-            contentUri = Tag.CONTENT_URI;
-            break;
-        case UM_TRANSACTIONS:
-            tableName = Transaction.TABLE_NAME;
-            contentUri = Transaction.CONTENT_URI;
-            break;
-        default:
-            throw new IllegalArgumentException("Unknown URI " + uri);
-        }
-
-        final SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        final String tableName = getInsertTableName(uri);
         try {
-            final long rowId = database.insertOrThrow(tableName, tableName, values);
+            final long rowId = mDbHelper.getWriter().execute(new DatabaseWriter.Task<Long>() {
+                @Override
+                public Long run(final SQLiteDatabase database) {
+                    return database.insertOrThrow(tableName, tableName, values);
+                }
+            });
             if (rowId > 0) {
-                final Uri insertedUri = ContentUris.withAppendedId(contentUri, rowId);
+                final Uri insertedUri = ContentUris.withAppendedId(uri, rowId);
                 return insertedUri;
             }
         } catch (final SQLiteConstraintException exception) {
@@ -188,16 +285,9 @@ public class DataProvider extends ContentProvider {
             String sortOrder) {
         final String tableName;
         final int match = uriMatcher.match(uri);
-        if (match == UM_ITEMS_WITH_OFFSET || match == UM_ITEMS_WITH_LIMIT || match == UM_ITEMS_WITH_OFFSET_LIMIT) {
+        if (match == UM_ITEMS_WITH_LIMIT) {
             final SQLiteDatabase database = mDbHelper.getReadableDatabase();
-            final String limit;
-            if (match == UM_ITEMS_WITH_OFFSET) {
-                limit = " LIMIT 1000000 OFFSET " + uri.getPathSegments().get(2);
-            } else if (match == UM_ITEMS_WITH_LIMIT) {
-                limit = " LIMIT " + uri.getPathSegments().get(2);
-            } else {
-                limit = " LIMIT " + uri.getPathSegments().get(3) + " OFFSET " + uri.getPathSegments().get(2);
-            }
+            final String limit = " LIMIT " + uri.getPathSegments().get(2);
             if (selection == null) {
                 selection = "";
             } else if (!selection.equals("")) {
@@ -214,28 +304,35 @@ public class DataProvider extends ContentProvider {
             final SQLiteDatabase database = mDbHelper.getReadableDatabase();
             @SuppressWarnings("deprecation")
             final String uid = URLDecoder.decode(uri.getPathSegments().get(2));
+            if (!Item.isValidUid(uid)) {
+                /* No item can have tags under such a uid. */
+                return new MatrixCursor((projection == null) ? new String[0] : projection);
+            }
             final String pro = toProjectionString(projection);
-            selection = appendWhere(selection, ItemTag._ITEMUID, uid);
+            selection = appendWhere(selection, ItemTag._ITEMID, String.valueOf(Item.getIdByUid(uid)));
             if (sortOrder == null) {
                 sortOrder = "";
             } else if (!sortOrder.equals("")) {
                 sortOrder = " ORDER BY " + sortOrder;
             }
-            return database.rawQuery("SELECT " + pro + " FROM " + Tag.TABLE_NAME + " INNER JOIN " + ItemTag.TABLE_NAME
-                    + " ON " + ItemTag._TAGUID + "=" + Tag._UID + " WHERE " + selection + sortOrder, selectionArgs);
+            return database.rawQuery("SELECT " + pro + " FROM " + Tag.TABLE_NAME + " INNER JOIN "
+                    + StreamIds.TABLE_NAME + " ON " + StreamIds._UID + "=" + Tag._UID + " INNER JOIN "
+                    + ItemTag.TABLE_NAME + " ON " + ItemTag._TAGID + "=" + StreamIds._ID + " WHERE " + selection
+                    + sortOrder, selectionArgs);
         } else if (match == UM_TAG_ITEMS) {
             final SQLiteDatabase database = mDbHelper.getReadableDatabase();
             @SuppressWarnings("deprecation")
             final String uid = URLDecoder.decode(uri.getPathSegments().get(2));
             final String pro = toProjectionString(projection);
-            selection = appendWhere(selection, ItemTag._TAGUID, uid);
+            selection = appendWhere(selection, ItemTag._TAGID,
+                    String.valueOf(StreamIds.lookup(mDbHelper.getReadableDatabase(), uid)));
             if (sortOrder == null) {
                 sortOrder = "";
             } else if (!sortOrder.equals("")) {
                 sortOrder = " ORDER BY " + sortOrder;
             }
             return database.rawQuery("SELECT " + pro + " FROM " + Item.TABLE_NAME + " INNER JOIN " + ItemTag.TABLE_NAME
-                    + " ON " + ItemTag._ITEMUID + "=" + Item._UID + " WHERE " + selection + sortOrder, selectionArgs);
+                    + " ON " + ItemTag._ITEMID + "=" + Item._ID + " WHERE " + selection + sortOrder, selectionArgs);
         } else {
             switch (match) {
             case UM_ITEMS:
@@ -269,8 +366,7 @@ public class DataProvider extends ContentProvider {
 
     @Override
     public int update(final Uri uri, final ContentValues values, final String selection, final String[] selectionArgs) {
-        update(uri, values, selection, selectionArgs, true);
-        return 0;
+        return update(uri, values, selection, selectionArgs, true);
     }
 
     @SuppressWarnings("deprecation")
@@ -323,9 +419,13 @@ public class DataProvider extends ContentProvider {
             throw new IllegalArgumentException("Unknown URI " + uri);
         }
 
-        final SQLiteDatabase database = mDbHelper.getWritableDatabase();
-        final int count = update ? database.update(tableName, values, where, whereArgs) : database.delete(tableName,
-                where, whereArgs);
-        return count;
+        final String selection = where;
+        return mDbHelper.getWriter().execute(new DatabaseWriter.Task<Integer>() {
+            @Override
+            public Integer run(final SQLiteDatabase database) {
+                return update ? database.update(tableName, values, selection, whereArgs) : database.delete(tableName,
+                        selection, whereArgs);
+            }
+        });
     }
 }
@@ -20,13 +20,15 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Queue;
 
-import org.htmlcleaner.CleanerProperties;
-import org.htmlcleaner.FastHtmlSerializer;
+import org.apache.http.protocol.HTTP;
 import org.htmlcleaner.HtmlCleaner;
 import org.htmlcleaner.TagNode;
 
@@ -34,6 +36,7 @@ import com.pursuer.reader.easyrss.R;
 
 import android.content.Context;
 import android.content.Intent;
+import android.database.sqlite.SQLiteStatement;
 import android.text.ClipboardManager;
 import android.text.Html;
 import android.widget.Toast;
@@ -48,7 +51,61 @@ final public class DataUtils {
             + "html{background:#101010;color:#BBB;line-height:140%;}"
             + "a{color:#EEE;font-weight:bold;text-decoration:none;border-bottom:1px #777 dashed;}"
             + "img{max-width:100%;overflow:hidden;height:auto;}" + "</style>";
-    public final static String DEFAULT_JS = "<script>window.onload=function(){var pics=document.getElementsByTagName('img');for(var i=0;i<pics.length;i++){var pic=pics[i];pic.onclick=function(){alert(this.getAttribute('src'));};}}</script>";
+    public final static String DEFAULT_JS = "<script>window.onload=function(){var pics=document.getElementsByTagName('img');for(var i=0;i<pics.length;i++){var pic=pics[i];pic.onclick=function(){alert(this.getAttribute('"
+            + ImageRef.ATTR_ORIGINAL_SRC + "')||this.getAttribute('src'));};}}</script>";
+
+    /*
+     * Binds a value taken from ContentValues to the statement by its type.
+     */
+    static void bindValue(final SQLiteStatement statement, final int index, final Object value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else if (value instanceof Boolean) {
+            statement.bindLong(index, ((Boolean) value) ? 1 : 0);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte) {
+            statement.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            statement.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof byte[]) {
+            statement.bindBlob(index, (byte[]) value);
+        } else {
+            statement.bindString(index, value.toString());
+        }
+    }
+
+    public static String buildPlaceholders(final int count) {
+        final StringBuilder builder = new StringBuilder(count * 2);
+        for (int i = 0; i < count; i++) {
+            builder.append((i > 0) ? ",?" : "?");
+        }
+        return builder.toString();
+    }
+
+    /*
+     * Return: "column>tLow AND column<tHigh", either side left out if null, or
+     * null if both are.
+     */
+    public static String buildTimestampRange(final String column, final Long tLow, final Long tHigh) {
+        if (tLow == null && tHigh == null) {
+            return null;
+        }
+        final StringBuilder builder = new StringBuilder(64);
+        if (tLow != null) {
+            builder.append(column);
+            builder.append('>');
+            builder.append(tLow);
+        }
+        if (tHigh != null) {
+            if (tLow != null) {
+                builder.append(" AND ");
+            }
+            builder.append(column);
+            builder.append('<');
+            builder.append(tHigh);
+        }
+        return builder.toString();
+    }
 
     public static long calcFileSpace(final File dir) {
         if (!dir.exists()) {
@@ -91,6 +148,22 @@ final public class DataUtils {
         return android.os.Environment.getExternalStorageDirectory().getAbsolutePath() + File.separator + "EasyRSS";
     }
 
+    /*
+     * Return: the file a download of the target is written into until it
+     * completes.
+     */
+    public static File getPartFile(final File target) {
+        return new File(target.getPath() + ".part");
+    }
+
+    /*
+     * Return: the file recording how much of the part file of the target is
+     * written.
+     */
+    public static File getPartIndexFile(final File target) {
+        return new File(target.getPath() + ".idx");
+    }
+
     public static String getUserIdFromTagUid(final String uid) {
         final int start = uid.indexOf('/') + 1;
         final int end = uid.indexOf('/', start);
@@ -204,6 +277,25 @@ final public class DataUtils {
         context.startActivity(Intent.createChooser(intent, context.getString(R.string.TxtSendTo)));
     }
 
+    /*
+     * Splits arguments into chunks small enough for a "IN (?,?,...)" clause.
+     */
+    public static List<String[]> splitQueryArgs(final Collection<String> args) {
+        final List<String[]> ret = new ArrayList<String[]>();
+        final List<String> chunk = new ArrayList<String>(SQLConstants.MAX_QUERY_ARGS);
+        for (final String arg : args) {
+            chunk.add(arg);
+            if (chunk.size() == SQLConstants.MAX_QUERY_ARGS) {
+                ret.add(chunk.toArray(new String[chunk.size()]));
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            ret.add(chunk.toArray(new String[chunk.size()]));
+        }
+        return ret;
+    }
+
     public static void streamTransfer(final InputStream in, final OutputStream out) {
         final byte[] buffer = new byte[8192];
         int read;
@@ -217,48 +309,29 @@ final public class DataUtils {
     }
 
     public static void writeItemToFile(final Item item) throws IOException {
+        final String content = item.getContent();
+        writeItemToFile(item, new StringReader((content == null) ? "" : content));
+    }
+
+    /*
+     * Writes the original and the stripped content files of the item from the
+     * content as it is read.
+     */
+    public static void writeItemToFile(final Item item, final Reader content) throws IOException {
         final File fdir = new File(item.getStoragePath());
         fdir.mkdirs();
-        final String content = item.getContent();
-        final HtmlCleaner cleaner = new HtmlCleaner();
-        final TagNode node = cleaner.clean((content == null) ? "" : content);
-        final List<TagNode> imgList = new ArrayList<TagNode>();
-        final Queue<TagNode> nodes = new LinkedList<TagNode>();
-        nodes.add(node);
-        while (!nodes.isEmpty()) {
-            final TagNode tag = nodes.poll();
-            final String tagName = tag.getName().toLowerCase();
-            if ("frame".equals(tagName) || "iframe".equals(tagName) || "script".equals(tagName)) {
-                tag.removeFromTree();
-            } else if ("img".equals(tagName)) {
-                tag.removeAttribute("style");
-                final String src = tag.getAttributeByName("src");
-                if (src != null && (src.startsWith("http://") || src.startsWith("https://"))) {
-                    tag.removeAttribute("width");
-                    tag.removeAttribute("height");
-                    imgList.add(tag);
-                } else {
-                    tag.removeFromTree();
-                }
-            } else if (tag.hasChildren()) {
-                nodes.addAll(tag.getChildTagList());
+        final Writer original = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(
+                item.getOriginalContentStoragePath())), HTTP.UTF_8), 8192);
+        try {
+            final Writer stripped = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(
+                    item.getStrippedContentStoragePath())), HTTP.UTF_8), 8192);
+            try {
+                new HtmlSanitizer(content, original, stripped).sanitize();
+            } finally {
+                stripped.close();
             }
-        }
-        final CleanerProperties prop = cleaner.getProperties();
-        prop.setOmitXmlDeclaration(false);
-        final FastHtmlSerializer serializer = new FastHtmlSerializer(prop);
-        {
-            final OutputStream out = new FileOutputStream(new File(item.getOriginalContentStoragePath()));
-            serializer.writeToStream(node, out);
-            out.close();
-        }
-        for (final TagNode tag : imgList) {
-            tag.removeFromTree();
-        }
-        {
-            final OutputStream out = new FileOutputStream(new File(item.getStrippedContentStoragePath()));
-            serializer.writeToStream(node, out);
-            out.close();
+        } finally {
+            original.close();
         }
     }
 
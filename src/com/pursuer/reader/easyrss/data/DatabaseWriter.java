@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Pursuer (http://pursuer.me).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Pursuer - initial API and implementation
+ ******************************************************************************/
+
+package com.pursuer.reader.easyrss.data;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+
+/*
+ * Runs every write to the database on one thread. Writes queued while another
+ * group is running are committed together in a single transaction (group
+ * commit); if one of them fails, the group is rolled back and its writes are
+ * run again one transaction each, so that only the failing one is lost.
+ *
+ * Tasks must not begin transactions of their own, and must not keep state
+ * outside of run(), as they may be run twice.
+ */
+final class DatabaseWriter {
+    public interface Task<T> {
+        T run(SQLiteDatabase database);
+    }
+
+    final private static class PendingTask<T> {
+        final private Task<T> task;
+        private RuntimeException error;
+        private boolean isDone;
+        private T result;
+
+        public PendingTask(final Task<T> task) {
+            this.task = task;
+            this.isDone = false;
+        }
+
+        public synchronized void finish() {
+            isDone = true;
+            notifyAll();
+        }
+
+        public void run(final SQLiteDatabase database) {
+            result = task.run(database);
+            error = null;
+        }
+
+        public void setError(final Throwable throwable) {
+            error = (throwable instanceof RuntimeException) ? (RuntimeException) throwable : new RuntimeException(
+                    throwable);
+        }
+
+        public synchronized T waitForResult() {
+            boolean isInterrupted = false;
+            while (!isDone) {
+                try {
+                    wait();
+                } catch (final InterruptedException exception) {
+                    isInterrupted = true;
+                }
+            }
+            if (isInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (error != null) {
+                throw error;
+            }
+            return result;
+        }
+    }
+
+    final private static int MAX_GROUP_SIZE = 32;
+
+    private static void beginTransaction(final SQLiteDatabase database) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            /* Readers are not blocked by the writer in WAL mode. */
+            database.beginTransactionNonExclusive();
+        } else {
+            database.beginTransaction();
+        }
+    }
+
+    final private SQLiteOpenHelper helper;
+    final private LinkedList<PendingTask<?>> queue;
+    final private Thread thread;
+
+    public DatabaseWriter(final SQLiteOpenHelper helper) {
+        this.helper = helper;
+        this.queue = new LinkedList<PendingTask<?>>();
+        this.thread = new Thread("DatabaseWriter") {
+            @Override
+            public void run() {
+                while (true) {
+                    runGroup(takeGroup());
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /*
+     * Runs the task on the writer thread and waits for it. Errors thrown by the
+     * task are thrown here again. Called from the writer thread itself (from
+     * within another task), the task is run at once in the current transaction.
+     */
+    public <T> T execute(final Task<T> task) {
+        if (Thread.currentThread() == thread) {
+            return task.run(helper.getWritableDatabase());
+        }
+        final PendingTask<T> pending = new PendingTask<T>(task);
+        synchronized (queue) {
+            queue.add(pending);
+            queue.notifyAll();
+        }
+        return pending.waitForResult();
+    }
+
+    private void runGroup(final List<PendingTask<?>> group) {
+        final SQLiteDatabase database;
+        try {
+            database = helper.getWritableDatabase();
+        } catch (final Throwable throwable) {
+            for (final PendingTask<?> pending : group) {
+                pending.setError(throwable);
+                pending.finish();
+            }
+            return;
+        }
+        boolean needsRetry = false;
+        try {
+            beginTransaction(database);
+            try {
+                for (final PendingTask<?> pending : group) {
+                    pending.run(database);
+                }
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+        } catch (final Throwable throwable) {
+            if (group.size() == 1) {
+                group.get(0).setError(throwable);
+            } else {
+                needsRetry = true;
+            }
+        }
+        if (needsRetry) {
+            for (final PendingTask<?> pending : group) {
+                try {
+                    beginTransaction(database);
+                    try {
+                        pending.run(database);
+                        database.setTransactionSuccessful();
+                    } finally {
+                        database.endTransaction();
+                    }
+                } catch (final Throwable throwable) {
+                    pending.setError(throwable);
+                }
+            }
+        }
+        for (final PendingTask<?> pending : group) {
+            pending.finish();
+        }
+    }
+
+    private List<PendingTask<?>> takeGroup() {
+        final List<PendingTask<?>> ret = new ArrayList<PendingTask<?>>();
+        synchronized (queue) {
+            while (queue.isEmpty()) {
+                try {
+                    queue.wait();
+                } catch (final InterruptedException exception) {
+                    exception.printStackTrace();
+                }
+            }
+            while (!queue.isEmpty() && ret.size() < MAX_GROUP_SIZE) {
+                ret.add(queue.removeFirst());
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Pursuer (http://pursuer.me).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Pursuer - initial API and implementation
+ ******************************************************************************/
+
+package com.pursuer.reader.easyrss.data;
+
+/*
+ * Tells which items are outdated. An item is evicted when it falls behind any
+ * of the limits (count, age, or space on disk, newest items kept first), unless
+ * it is protected by being starred or unread. A limit of 0 means no limit.
+ */
+final public class EvictionPolicy {
+    final private long maxAge;
+    final private int maxItems;
+    final private long maxSpace;
+    final private boolean isStarredKept;
+    final private boolean isUnreadKept;
+
+    /*
+     * maxAge: in milliseconds since the last update of an item.
+     * maxSpace: in bytes taken by the stored items.
+     */
+    public EvictionPolicy(final int maxItems, final long maxAge, final long maxSpace, final boolean isStarredKept,
+            final boolean isUnreadKept) {
+        this.maxItems = maxItems;
+        this.maxAge = maxAge;
+        this.maxSpace = maxSpace;
+        this.isStarredKept = isStarredKept;
+        this.isUnreadKept = isUnreadKept;
+    }
+
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    public int getMaxItems() {
+        return maxItems;
+    }
+
+    public long getMaxSpace() {
+        return maxSpace;
+    }
+
+    public boolean isStarredKept() {
+        return isStarredKept;
+    }
+
+    public boolean isUnreadKept() {
+        return isUnreadKept;
+    }
+}
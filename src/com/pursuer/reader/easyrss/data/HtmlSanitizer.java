@@ -0,0 +1,349 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Pursuer (http://pursuer.me).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Pursuer - initial API and implementation
+ ******************************************************************************/
+
+package com.pursuer.reader.easyrss.data;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Cleans the HTML content of an item in a single pass over it, without building
+ * its DOM, and writes the original version (with images) and the stripped one
+ * (without) at the same time. Scripts and frames are dropped, and so are the
+ * images not fetched over HTTP(S). The elements left open are closed at the
+ * end, and stray end tags are dropped, so that the content cannot swallow what
+ * the page adds after it.
+ */
+final class HtmlSanitizer {
+    final private static int BUFFER_SIZE = 4096;
+    final private static String DOCUMENT_HEAD = "<html><head></head><body>";
+    final private static String DOCUMENT_TAIL = "</body></html>";
+    /* Elements dropped along with their content. */
+    final private static Set<String> DROPPED_ELEMENTS = new HashSet<String>(Arrays.asList("iframe", "script"));
+    /* Tags dropped, but not their content. */
+    final private static Set<String> DROPPED_TAGS = new HashSet<String>(Arrays.asList("body", "frame", "head",
+            "html"));
+    /* Elements without content or end tag. */
+    final private static Set<String> VOID_ELEMENTS = new HashSet<String>(Arrays.asList("area", "base", "br", "col",
+            "embed", "hr", "img", "input", "link", "meta", "param", "source", "track", "wbr"));
+
+    private static boolean isName(final String str) {
+        for (int i = 0; i < str.length(); i++) {
+            if (!isNameChar(str.charAt(i))) {
+                return false;
+            }
+        }
+        return str.length() > 0;
+    }
+
+    private static boolean isNameChar(final char ch) {
+        return Character.isLetterOrDigit(ch) || ch == '-' || ch == ':' || ch == '_';
+    }
+
+    private static void writeTag(final Writer output, final String name, final Map<String, String> attrs,
+            final boolean isSelfClosing) throws IOException {
+        output.write('<');
+        output.write(name);
+        for (final Map.Entry<String, String> attr : attrs.entrySet()) {
+            output.write(' ');
+            output.write(attr.getKey());
+            if (attr.getValue() != null) {
+                output.write("=\"");
+                output.write(attr.getValue().replace("\"", "&quot;"));
+                output.write('"');
+            }
+        }
+        output.write(isSelfClosing ? " />" : ">");
+    }
+
+    final private Reader input;
+    final private Writer original;
+    final private Writer stripped;
+    final private char[] buffer;
+    final private List<String> openElements;
+    private int limit;
+    private int position;
+
+    public HtmlSanitizer(final Reader input, final Writer original, final Writer stripped) {
+        this.input = input;
+        this.original = original;
+        this.stripped = stripped;
+        this.buffer = new char[BUFFER_SIZE];
+        this.openElements = new ArrayList<String>();
+        this.limit = 0;
+        this.position = 0;
+    }
+
+    /*
+     * Closes the open elements from the index on, innermost first.
+     */
+    private void closeElements(final int index) throws IOException {
+        for (int i = openElements.size() - 1; i >= index; i--) {
+            write("</" + openElements.remove(i) + ">");
+        }
+    }
+
+    /*
+     * Return: whether there are chars left in the buffer.
+     */
+    private boolean fill() throws IOException {
+        while (position >= limit) {
+            limit = input.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit == -1) {
+                limit = 0;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void handleTag(final String tag) throws IOException {
+        int pos = 0;
+        while (pos < tag.length() && isNameChar(tag.charAt(pos))) {
+            pos++;
+        }
+        final String name = tag.substring(0, pos).toLowerCase();
+        final boolean isVoid = VOID_ELEMENTS.contains(name);
+        final Map<String, String> attrs = new LinkedHashMap<String, String>();
+        boolean isSelfClosing = false;
+        while (pos < tag.length()) {
+            final char ch = tag.charAt(pos);
+            if (Character.isWhitespace(ch)) {
+                pos++;
+            } else if (ch == '/') {
+                isSelfClosing = true;
+                pos++;
+            } else {
+                isSelfClosing = false;
+                final int start = pos;
+                while (pos < tag.length() && !Character.isWhitespace(tag.charAt(pos)) && tag.charAt(pos) != '='
+                        && tag.charAt(pos) != '/') {
+                    pos++;
+                }
+                final String attrName = tag.substring(start, pos).toLowerCase();
+                while (pos < tag.length() && Character.isWhitespace(tag.charAt(pos))) {
+                    pos++;
+                }
+                String value = null;
+                if (pos < tag.length() && tag.charAt(pos) == '=') {
+                    pos++;
+                    while (pos < tag.length() && Character.isWhitespace(tag.charAt(pos))) {
+                        pos++;
+                    }
+                    if (pos < tag.length() && (tag.charAt(pos) == '"' || tag.charAt(pos) == '\'')) {
+                        final int end = tag.indexOf(tag.charAt(pos), pos + 1);
+                        value = tag.substring(pos + 1, (end == -1) ? tag.length() : end);
+                        pos = (end == -1) ? tag.length() : end + 1;
+                    } else {
+                        final int vStart = pos;
+                        while (pos < tag.length() && !Character.isWhitespace(tag.charAt(pos))) {
+                            pos++;
+                        }
+                        value = tag.substring(vStart, pos);
+                        if (isVoid && pos == tag.length() && value.endsWith("/")) {
+                            /* The slash of "<img src=a.png/>" closes the tag. */
+                            value = value.substring(0, value.length() - 1);
+                            isSelfClosing = true;
+                        }
+                    }
+                }
+                /* Drops junk such as the b"c of "<a b"c=d>". */
+                if (isName(attrName) && !attrs.containsKey(attrName)) {
+                    attrs.put(attrName, value);
+                }
+            }
+        }
+        if (DROPPED_ELEMENTS.contains(name)) {
+            if (!isSelfClosing) {
+                skipElement(name);
+            }
+        } else if ("img".equals(name)) {
+            final String src = attrs.get("src");
+            if (src != null && (src.startsWith("http://") || src.startsWith("https://"))) {
+                attrs.remove("style");
+                attrs.remove("width");
+                attrs.remove("height");
+                writeTag(original, name, attrs, isSelfClosing);
+            }
+        } else if (!DROPPED_TAGS.contains(name)) {
+            /* Browsers ignore the slash of "<div/>", and keep the element open. */
+            writeTag(original, name, attrs, isSelfClosing && isVoid);
+            writeTag(stripped, name, attrs, isSelfClosing && isVoid);
+            if (!isVoid) {
+                openElements.add(name);
+            }
+        }
+    }
+
+    private int read() throws IOException {
+        return fill() ? buffer[position++] : -1;
+    }
+
+    /*
+     * Handles the markup following a '<'.
+     */
+    private void readMarkup() throws IOException {
+        if (!fill()) {
+            write("&lt;");
+            return;
+        }
+        final char first = buffer[position];
+        if (first == '!') {
+            position++;
+            final int ch = read();
+            if (ch == '-' && read() == '-') {
+                skipComment();
+            } else if (ch != '>') {
+                skipPast('>');
+            }
+        } else if (first == '?') {
+            skipPast('>');
+        } else if (first == '/') {
+            position++;
+            final StringBuilder tag = new StringBuilder();
+            if (!readTag(tag)) {
+                writeUnterminated("</", tag);
+                return;
+            }
+            int pos = 0;
+            while (pos < tag.length() && isNameChar(tag.charAt(pos))) {
+                pos++;
+            }
+            /* Also closes the elements left open inside it. */
+            final int index = openElements.lastIndexOf(tag.substring(0, pos).toLowerCase());
+            if (index != -1) {
+                closeElements(index);
+            }
+        } else if (Character.isLetter(first)) {
+            final StringBuilder tag = new StringBuilder();
+            if (readTag(tag)) {
+                handleTag(tag.toString());
+            } else {
+                writeUnterminated("<", tag);
+            }
+        } else {
+            /* Not markup, but a bare '<' in the text. */
+            write("&lt;");
+        }
+    }
+
+    /*
+     * Reads the text up to the '>' closing the tag into the builder.
+     *
+     * Return: whether the '>' is found before the end of input.
+     */
+    private boolean readTag(final StringBuilder builder) throws IOException {
+        char quote = 0;
+        /* Quotes only delimit a value, right after its '='. */
+        boolean isValueStart = false;
+        int ch;
+        while ((ch = read()) != -1) {
+            if (quote != 0) {
+                if (ch == quote) {
+                    quote = 0;
+                }
+            } else if (isValueStart && (ch == '"' || ch == '\'')) {
+                quote = (char) ch;
+            } else if (ch == '>') {
+                return true;
+            }
+            if (quote == 0 && !Character.isWhitespace(ch)) {
+                isValueStart = (ch == '=');
+            }
+            builder.append((char) ch);
+        }
+        return false;
+    }
+
+    public void sanitize() throws IOException {
+        write(DOCUMENT_HEAD);
+        while (fill()) {
+            final int start = position;
+            while (position < limit && buffer[position] != '<') {
+                position++;
+            }
+            if (position > start) {
+                original.write(buffer, start, position - start);
+                stripped.write(buffer, start, position - start);
+            }
+            if (position < limit) {
+                position++;
+                readMarkup();
+            }
+        }
+        closeElements(0);
+        write(DOCUMENT_TAIL);
+    }
+
+    /*
+     * Skips the content of the element up to its end tag, which is skipped as
+     * well.
+     */
+    private void skipElement(final String name) throws IOException {
+        final String end = "</" + name;
+        int matched = 0;
+        int ch;
+        while ((ch = read()) != -1) {
+            if (Character.toLowerCase((char) ch) == end.charAt(matched)) {
+                matched++;
+                if (matched == end.length()) {
+                    skipPast('>');
+                    return;
+                }
+            } else {
+                matched = (ch == '<') ? 1 : 0;
+            }
+        }
+    }
+
+    /*
+     * Skips the rest of a comment after its "<!--". As in browsers, the dashes
+     * of "<!--" count towards the end, so "<!-->" and "<!--->" are empty.
+     */
+    private void skipComment() throws IOException {
+        int dashes = 2;
+        int ch;
+        while ((ch = read()) != -1) {
+            if (ch == '>' && dashes >= 2) {
+                return;
+            }
+            dashes = (ch == '-') ? dashes + 1 : 0;
+        }
+    }
+
+    private void skipPast(final char end) throws IOException {
+        int ch;
+        do {
+            ch = read();
+        } while (ch != -1 && ch != end);
+    }
+
+    private void write(final String str) throws IOException {
+        original.write(str);
+        stripped.write(str);
+    }
+
+    /*
+     * Writes a tag cut off by the end of input back as text.
+     */
+    private void writeUnterminated(final String start, final CharSequence tag) throws IOException {
+        write((start + tag).replace("<", "&lt;").replace(">", "&gt;"));
+    }
+}
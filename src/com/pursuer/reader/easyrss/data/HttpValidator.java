@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Pursuer (http://pursuer.me).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Pursuer - initial API and implementation
+ ******************************************************************************/
+
+package com.pursuer.reader.easyrss.data;
+
+import com.pursuer.reader.easyrss.Utils;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+/*
+ * The validators (ETag, Last-Modified) of the last response stored for a URL,
+ * sent back with the next request of it to make the request conditional.
+ */
+public class HttpValidator implements Entity {
+    public static final String TABLE_NAME = "httpValidators";
+
+    public static final String _URL = "url";
+    public static final String _ETAG = "eTag";
+    public static final String _LASTMODIFIED = "lastModified";
+    public static final String[] COLUMNS = { _URL, _ETAG, _LASTMODIFIED };
+
+    public static final String SQL_CREATE_TABLE = "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" + _URL
+            + " TEXT PRIMARY KEY," + _ETAG + " TEXT," + _LASTMODIFIED + " TEXT)";
+
+    public static HttpValidator fromCursor(final Cursor cur) {
+        return new HttpValidator(Utils.getStringFromCursor(cur, _URL), Utils.getStringFromCursor(cur, _ETAG),
+                Utils.getStringFromCursor(cur, _LASTMODIFIED));
+    }
+
+    private String url;
+    private String eTag;
+    private String lastModified;
+
+    public HttpValidator() {
+        init(null, null, null);
+    }
+
+    public HttpValidator(final String url, final String eTag, final String lastModified) {
+        init(url, eTag, lastModified);
+    }
+
+    @Override
+    public void clear() {
+        init(null, null, null);
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    private void init(final String url, final String eTag, final String lastModified) {
+        this.url = url;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+    }
+
+    public boolean isEmpty() {
+        return eTag == null && lastModified == null;
+    }
+
+    public void setETag(final String eTag) {
+        this.eTag = eTag;
+    }
+
+    public void setLastModified(final String lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public void setUrl(final String url) {
+        this.url = url;
+    }
+
+    @Override
+    public ContentValues toContentValues() {
+        final ContentValues ret = new ContentValues(3);
+        ret.put(_URL, url);
+        ret.put(_ETAG, eTag);
+        ret.put(_LASTMODIFIED, lastModified);
+        return ret;
+    }
+
+    @Override
+    public ContentValues toUpdateContentValues() {
+        final ContentValues ret = new ContentValues(2);
+        ret.put(_ETAG, eTag);
+        ret.put(_LASTMODIFIED, lastModified);
+        return ret;
+    }
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Pursuer (http://pursuer.me).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Pursuer - initial API and implementation
+ ******************************************************************************/
+
+package com.pursuer.reader.easyrss.data;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+/*
+ * The icons decoded for the whole process, the least recently used dropped
+ * first once they take more than MAX_SIZE bytes. The icon of a subscription
+ * is keyed by its uid and the checksum of its data, so that a new icon is
+ * decoded again and the old one ages out. Dropped icons are not recycled, as
+ * list rows may still show them. The last key failed to be decoded is
+ * remembered per uid, up to MAX_FAILED_COUNT uids, so that the data is not
+ * decoded again for every row.
+ */
+final public class IconCache {
+    final private static int MAX_FAILED_COUNT = 64;
+    final private static int MAX_SIZE = 1024 * 1024;
+
+    /* Maps a uid to its key failed to be decoded, the least recently failed dropped first. */
+    final private static LinkedHashMap<String, String> failedKeys = new LinkedHashMap<String, String>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+            return size() > MAX_FAILED_COUNT;
+        }
+    };
+    final private static LinkedHashMap<String, Bitmap> icons = new LinkedHashMap<String, Bitmap>(64, 0.75f, true);
+    private static int size = 0;
+
+    private static int calcSize(final Bitmap icon) {
+        return icon.getRowBytes() * icon.getHeight();
+    }
+
+    private static synchronized Bitmap get(final String key) {
+        return icons.get(key);
+    }
+
+    /*
+     * Return: the icon decoded from the data, or null if there is none.
+     */
+    public static Bitmap getIcon(final String uid, final byte[] data) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(data);
+        final String key = uid + '#' + data.length + '#' + Long.toHexString(crc.getValue());
+        Bitmap ret = get(key);
+        if (ret == null && !isFailed(uid, key)) {
+            try {
+                ret = BitmapFactory.decodeByteArray(data, 0, data.length);
+            } catch (final OutOfMemoryError error) {
+                error.printStackTrace();
+            }
+            if (ret == null) {
+                setFailed(uid, key);
+            } else {
+                put(key, ret);
+                setFailed(uid, null);
+            }
+        }
+        return ret;
+    }
+
+    public static Bitmap getIcon(final Resources res, final int resId) {
+        final String key = "res#" + resId;
+        Bitmap ret = get(key);
+        if (ret == null) {
+            ret = BitmapFactory.decodeResource(res, resId);
+            put(key, ret);
+        }
+        return ret;
+    }
+
+    private static synchronized boolean isFailed(final String uid, final String key) {
+        return key.equals(failedKeys.get(uid));
+    }
+
+    private static synchronized void put(final String key, final Bitmap icon) {
+        if (icon == null) {
+            return;
+        }
+        final Bitmap old = icons.put(key, icon);
+        if (old != null) {
+            size -= calcSize(old);
+        }
+        size += calcSize(icon);
+        for (final Iterator<Map.Entry<String, Bitmap>> iter = icons.entrySet().iterator(); size > MAX_SIZE
+                && iter.hasNext();) {
+            final Map.Entry<String, Bitmap> entry = iter.next();
+            if (entry.getValue() != icon) {
+                size -= calcSize(entry.getValue());
+                iter.remove();
+            }
+        }
+    }
+
+    /*
+     * Pass a null key to forget the failure of the uid, once a new icon of it
+     * is decoded.
+     */
+    private static synchronized void setFailed(final String uid, final String key) {
+        failedKeys.remove(uid);
+        if (key != null) {
+            failedKeys.put(uid, key);
+        }
+    }
+
+    private IconCache() {
+    }
+}
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Pursuer (http://pursuer.me).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Pursuer - initial API and implementation
+ ******************************************************************************/
+
+package com.pursuer.reader.easyrss.data;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import com.pursuer.reader.easyrss.Utils;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+/*
+ * A reference from an item to an image in the shared image folder, where
+ * images are stored once by the hash of their URL, however many items show
+ * them. An image is deleted with the last item referencing it.
+ */
+public class ImageRef implements Entity {
+    public static final String TABLE_NAME = "imageRefs";
+
+    public static final String _ITEMUID = "itemUid";
+    public static final String _URLHASH = "urlHash";
+    public static final String[] COLUMNS = { _ITEMUID, _URLHASH };
+
+    public static final String SQL_CREATE_TABLE = "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" + _ITEMUID
+            + " TEXT," + _URLHASH + " TEXT, PRIMARY KEY (" + _ITEMUID + "," + _URLHASH + "))";
+
+    public static final String[][] INDEX_COLUMNS = { { _URLHASH } };
+
+    /* Keeps the URL of a stored image in the full content, for the viewer. */
+    public static final String ATTR_ORIGINAL_SRC = "data-easyrss-src";
+
+    /* Stands for the image shown in place of the ones failed to be fetched. */
+    public static final String PLACEHOLDER_HASH = "placeholder";
+
+    final private static String FOLDER_NAME = ".images";
+
+    public static ImageRef fromCursor(final Cursor cur) {
+        return new ImageRef(Utils.getStringFromCursor(cur, _ITEMUID), Utils.getStringFromCursor(cur, _URLHASH));
+    }
+
+    public static String getFolderPath() {
+        return DataUtils.getAppFolderPath() + File.separator + FOLDER_NAME;
+    }
+
+    /*
+     * Return: the src of the image in the full content of an item, relative to
+     * the folder of the item.
+     */
+    public static String getSrcByHash(final String urlHash) {
+        return "../" + FOLDER_NAME + "/" + urlHash + ".erss";
+    }
+
+    public static String getStoragePathByHash(final String urlHash) {
+        return getFolderPath() + File.separator + urlHash + ".erss";
+    }
+
+    /*
+     * Return: the SHA-1 of the URL in hex.
+     */
+    public static String hashUrl(final String url) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes("UTF-8"));
+            final StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (final byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+                builder.append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (final NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        } catch (final UnsupportedEncodingException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private String itemUid;
+    private String urlHash;
+
+    public ImageRef() {
+        init(null, null);
+    }
+
+    public ImageRef(final String itemUid, final String urlHash) {
+        init(itemUid, urlHash);
+    }
+
+    @Override
+    public void clear() {
+        init(null, null);
+    }
+
+    public String getItemUid() {
+        return itemUid;
+    }
+
+    public String getUrlHash() {
+        return urlHash;
+    }
+
+    private void init(final String itemUid, final String urlHash) {
+        this.itemUid = itemUid;
+        this.urlHash = urlHash;
+    }
+
+    public void setItemUid(final String itemUid) {
+        this.itemUid = itemUid;
+    }
+
+    public void setUrlHash(final String urlHash) {
+        this.urlHash = urlHash;
+    }
+
+    @Override
+    public ContentValues toContentValues() {
+        final ContentValues ret = new ContentValues(2);
+        ret.put(_ITEMUID, itemUid);
+        ret.put(_URLHASH, urlHash);
+        return ret;
+    }
+
+    @Override
+    public ContentValues toUpdateContentValues() {
+        return new ContentValues();
+    }
+}
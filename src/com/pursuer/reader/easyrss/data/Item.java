@@ -12,6 +12,7 @@
 package com.pursuer.reader.easyrss.data;
 
 import java.io.File;
+import java.math.BigInteger;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -33,17 +34,29 @@ public class Item implements Entity {
     public static final String _TITLE = "title";
     public static final String _TIMESTAMP = "timestamp";
     public static final String _UPDATETIME = "updateTime";
+    public static final String _ID = "id";
 
     public static final String[] OWN_COLUMNS = { _UID, _AUTHOR, _HREF, _SOURCEURI, _SOURCETITLE, _TITLE, _TIMESTAMP,
-            _UPDATETIME };
+            _UPDATETIME, _ID };
     public static final String[] OWN_COLUMNS_TYPE = { "TEXT PRIMARY KEY", "TEXT", "TEXT", "TEXT", "TEXT", "TEXT",
-            "INTEGER", "INTEGER" };
+            "INTEGER", "INTEGER", "INTEGER" };
     public static final String[] COLUMNS = Utils.arrayMerge(OWN_COLUMNS, ItemState.OWN_COLUMNS);
     public static final String[] COLUMNS_TYPE = Utils.arrayMerge(OWN_COLUMNS_TYPE, ItemState.OWN_COLUMN_TYPE);
 
-    public static final String[][] INDEX_COLUMNS = { { _UID }, { _UPDATETIME }, { _SOURCEURI },
-            { _SOURCEURI, ItemState._ISREAD }, { _SOURCEURI, ItemState._ISSTARRED }, { _TIMESTAMP },
-            { _TIMESTAMP, ItemState._ISREAD }, { _TIMESTAMP, ItemState._ISSTARRED } };
+    public static final String[] INSERT_COLUMNS = { _UID, _AUTHOR, _HREF, _SOURCEURI, _SOURCETITLE, _TITLE,
+            _TIMESTAMP, _UPDATETIME, _ID, ItemState._ISREAD, ItemState._ISSTARRED };
+    public static final String[] UPDATE_COLUMNS = { ItemState._ISREAD, ItemState._ISSTARRED, _UPDATETIME };
+
+    public static final String[][] INDEX_COLUMNS = { { _ID }, { _UPDATETIME, _UID }, { _SOURCEURI, _TIMESTAMP, _UID },
+            { _TIMESTAMP, _UID } };
+    /*
+     * The same keys again, restricted to unread and to starred items. These are
+     * partial indexes where SQLite supports them; otherwise the filter column
+     * is put in front of the key.
+     */
+    public static final String[][] FILTERED_INDEX_COLUMNS = { { _SOURCEURI, _TIMESTAMP, _UID }, { _TIMESTAMP, _UID } };
+    public static final String[] FILTERED_INDEX_KEYS = { ItemState._ISREAD, ItemState._ISSTARRED };
+    public static final String[] FILTERED_INDEX_VALUES = { "0", "1" };
 
     public static final String UID_PREFIX = "tag:google.com,2005:reader/item/";
 
@@ -59,10 +72,33 @@ public class Item implements Entity {
         return UID_PREFIX + uid;
     }
 
+    /*
+     * Return: the 64-bit reader id written in hex by the uid, which has to be
+     * checked by isValidUid() first.
+     */
+    public static long getIdByUid(final String uid) {
+        return new BigInteger(uid, 16).longValue();
+    }
+
     public static String getStoragePathByUid(final String uid) {
         return DataUtils.getAppFolderPath() + File.separator + uid;
     }
 
+    /*
+     * Return: whether the uid is a 64-bit reader id written in hex.
+     */
+    public static boolean isValidUid(final String uid) {
+        if (uid == null || uid.length() == 0 || uid.length() > 16) {
+            return false;
+        }
+        for (int i = 0; i < uid.length(); i++) {
+            if (Character.digit(uid.charAt(i), 16) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private String author;
     private String uid;
     private String content;
@@ -120,10 +156,6 @@ public class Item implements Entity {
         return href;
     }
 
-    public String getImageStoragePath(final int picId) {
-        return getStoragePath() + File.separator + picId + ".erss";
-    }
-
     public String getOriginalContentStoragePath() {
         return getStoragePath() + File.separator + uid + ".original";
     }
@@ -233,6 +265,9 @@ public class Item implements Entity {
         final ContentValues ret = state.toContentValues();
         ret.put(_AUTHOR, author);
         ret.put(_UID, uid);
+        if (isValidUid(uid)) {
+            ret.put(_ID, getIdByUid(uid));
+        }
         ret.put(_HREF, href);
         ret.put(_SOURCEURI, sourceUri);
         ret.put(_SOURCETITLE, sourceTitle);
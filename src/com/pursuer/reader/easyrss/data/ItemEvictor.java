@@ -0,0 +1,330 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Pursuer (http://pursuer.me).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Pursuer - initial API and implementation
+ ******************************************************************************/
+
+package com.pursuer.reader.easyrss.data;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/*
+ * Removes outdated items by an EvictionPolicy. The rows are deleted set-based
+ * in one writer transaction, and the folders of the evicted items are only
+ * moved into a trash folder then. A background thread of the lowest priority
+ * deletes the trashed folders a few at a time, and applies the space limit,
+ * which needs the stored items to be measured. The shared images no longer
+ * referenced by any item are trashed along.
+ */
+final class ItemEvictor {
+    /*
+     * A position in the (updateTime, uid) order of items. Items strictly
+     * behind it are outdated.
+     */
+    final private static class Boundary {
+        final private long updateTime;
+        final private String uid;
+
+        public Boundary(final long updateTime, final String uid) {
+            this.updateTime = updateTime;
+            this.uid = uid;
+        }
+
+        public boolean isBehind(final Boundary boundary) {
+            return updateTime < boundary.updateTime
+                    || (updateTime == boundary.updateTime && uid.compareTo(boundary.uid) < 0);
+        }
+    }
+
+    final private static long RECLAIM_INTERVAL = 100;
+    final private static int RECLAIM_BATCH_SIZE = 16;
+    final private static String TRASH_FOLDER_NAME = ".trash";
+
+    private static List<String> deleteBehind(final SQLiteDatabase database, final Boundary boundary,
+            final EvictionPolicy policy, final List<String> urlHashes) {
+        final UnreadCounter counter = new UnreadCounter(database);
+        try {
+            database.execSQL(SQLConstants.INSERT_STAGED_EVICTABLE_ITEMS, new Object[] { boundary.updateTime,
+                    boundary.updateTime, boundary.uid, policy.isStarredKept() ? 1 : 0, policy.isUnreadKept() ? 1 : 0 });
+            return deleteStaged(database, counter, urlHashes);
+        } finally {
+            counter.close();
+        }
+    }
+
+    /*
+     * Deletes the staged items along with their tags and image references.
+     *
+     * urlHashes: filled with the hashes of the images referenced by the deleted
+     * items only.
+     *
+     * Return: uids of the deleted items.
+     */
+    private static List<String> deleteStaged(final SQLiteDatabase database, final UnreadCounter counter,
+            final List<String> urlHashes) {
+        final List<String> ret = new ArrayList<String>();
+        final Cursor cur = database.rawQuery(SQLConstants.SELECT_STAGED_ITEMS, null);
+        for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
+            ret.add(cur.getString(0));
+        }
+        cur.close();
+        if (!ret.isEmpty()) {
+            final Cursor images = database.rawQuery(SQLConstants.SELECT_STAGED_ORPHAN_IMAGES, null);
+            for (images.moveToFirst(); !images.isAfterLast(); images.moveToNext()) {
+                urlHashes.add(images.getString(0));
+            }
+            images.close();
+            database.execSQL(SQLConstants.DELETE_STAGED_IMAGE_REFS);
+            counter.count();
+            counter.apply(-1);
+            database.execSQL(SQLConstants.DELETE_STAGED_ITEM_TAGS);
+            database.execSQL(SQLConstants.DELETE_STAGED_ITEMS);
+        }
+        return ret;
+    }
+
+    private static Boundary max(final Boundary boundary, final Boundary other) {
+        return (boundary == null || boundary.isBehind(other)) ? other : boundary;
+    }
+
+    final private DBOpenHelper dbOpenHelper;
+    final private File trashFolder;
+    private boolean isTrashed;
+    private EvictionPolicy spacePolicy;
+    private long trashSequence;
+
+    public ItemEvictor(final DBOpenHelper dbOpenHelper) {
+        this.dbOpenHelper = dbOpenHelper;
+        this.trashFolder = new File(DataUtils.getAppFolderPath(), TRASH_FOLDER_NAME);
+        /* Folders may be left in the trash by the last run. */
+        this.isTrashed = true;
+        this.spacePolicy = null;
+        this.trashSequence = System.currentTimeMillis();
+        final Thread thread = new Thread("ItemEvictor") {
+            @Override
+            public void run() {
+                while (true) {
+                    runPending();
+                }
+            }
+        };
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /*
+     * Return: the space of the shared images of the item, each divided among
+     * the items referencing it, so that it is counted in full once all of
+     * them are evicted.
+     */
+    private long calcImageShare(final String uid) {
+        long ret = 0;
+        final Cursor cur = dbOpenHelper.getReadableDatabase().rawQuery(SQLConstants.SELECT_ITEM_IMAGE_SHARES,
+                new String[] { uid });
+        for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
+            ret += new File(ImageRef.getStoragePathByHash(cur.getString(0))).length() / Math.max(1, cur.getInt(1));
+        }
+        cur.close();
+        return ret;
+    }
+
+    /*
+     * Evicts the items outdated by the count and age limits at once. The space
+     * limit is applied later in the background.
+     *
+     * Return: uids of the evicted items.
+     */
+    public List<String> evict(final EvictionPolicy policy) {
+        final List<String> ret = evict(policy, null);
+        if (policy.getMaxSpace() > 0) {
+            synchronized (this) {
+                spacePolicy = policy;
+                notifyAll();
+            }
+        }
+        return ret;
+    }
+
+    private List<String> evict(final EvictionPolicy policy, final Boundary spaceBoundary) {
+        final List<String> urlHashes = new ArrayList<String>();
+        final List<String> ret = dbOpenHelper.getWriter().execute(new DatabaseWriter.Task<List<String>>() {
+            @Override
+            public List<String> run(final SQLiteDatabase database) {
+                /* Left over if a group commit failed and the task is run again. */
+                urlHashes.clear();
+                Boundary boundary = spaceBoundary;
+                if (policy.getMaxItems() > 0) {
+                    final Cursor cur = database.rawQuery(SQLConstants.SELECT_ITEM_RETENTION_BOUNDARY,
+                            new String[] { String.valueOf(policy.getMaxItems() - 1) });
+                    if (cur.moveToFirst()) {
+                        boundary = max(boundary, new Boundary(cur.getLong(0), cur.getString(1)));
+                    }
+                    cur.close();
+                }
+                if (policy.getMaxAge() > 0) {
+                    boundary = max(boundary, new Boundary(System.currentTimeMillis() - policy.getMaxAge(), ""));
+                }
+                return (boundary == null) ? new ArrayList<String>() : deleteBehind(database, boundary, policy,
+                        urlHashes);
+            }
+        });
+        trash(ret, urlHashes);
+        return ret;
+    }
+
+    /*
+     * Evicts the oldest items until the stored ones fit in the space limit.
+     */
+    private void evictBySpace(final EvictionPolicy policy) {
+        long excess = DataUtils.calcFileSpace(new File(DataUtils.getAppFolderPath()))
+                - DataUtils.calcFileSpace(trashFolder) - policy.getMaxSpace();
+        if (excess <= 0) {
+            return;
+        }
+        Boundary boundary = new Boundary(Long.MAX_VALUE, "");
+        final Cursor cur = dbOpenHelper.getReadableDatabase().rawQuery(SQLConstants.SELECT_EVICTABLE_ITEMS,
+                new String[] { policy.isStarredKept() ? "1" : "0", policy.isUnreadKept() ? "1" : "0" });
+        for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
+            if (excess <= 0) {
+                boundary = new Boundary(cur.getLong(0), cur.getString(1));
+                break;
+            }
+            excess -= DataUtils.calcFileSpace(new File(Item.getStoragePathByUid(cur.getString(1))));
+            excess -= calcImageShare(cur.getString(1));
+        }
+        cur.close();
+        evict(new EvictionPolicy(0, 0, 0, policy.isStarredKept(), policy.isUnreadKept()), boundary);
+    }
+
+    private synchronized File newTrashFile(final String uid) {
+        return new File(trashFolder, uid + "." + (trashSequence++));
+    }
+
+    /*
+     * Deletes the trashed folders, RECLAIM_BATCH_SIZE at a time.
+     */
+    private void reclaim() {
+        while (true) {
+            final File[] files = trashFolder.listFiles();
+            if (files == null || files.length == 0) {
+                return;
+            }
+            boolean isDeleted = false;
+            for (int i = 0; i < files.length && i < RECLAIM_BATCH_SIZE; i++) {
+                if (files[i].isDirectory()) {
+                    DataUtils.deleteFile(files[i]);
+                } else {
+                    files[i].delete();
+                }
+                isDeleted |= !files[i].exists();
+            }
+            if (!isDeleted) {
+                return;
+            }
+            try {
+                Thread.sleep(RECLAIM_INTERVAL);
+            } catch (final InterruptedException exception) {
+                exception.printStackTrace();
+            }
+        }
+    }
+
+    /*
+     * Removes the item at once, the same way as the evicted ones: its folder
+     * and the images no longer referenced by other items are trashed.
+     *
+     * Return: the number of items removed.
+     */
+    public int remove(final String uid) {
+        final List<String> urlHashes = new ArrayList<String>();
+        final List<String> ret = dbOpenHelper.getWriter().execute(new DatabaseWriter.Task<List<String>>() {
+            @Override
+            public List<String> run(final SQLiteDatabase database) {
+                urlHashes.clear();
+                final Cursor cur = database.query(Item.TABLE_NAME, new String[] { Item._UID }, Item._UID + "=?",
+                        new String[] { uid }, null, null, null);
+                final boolean isFound = cur.moveToFirst();
+                cur.close();
+                if (!isFound) {
+                    return new ArrayList<String>();
+                }
+                final UnreadCounter counter = new UnreadCounter(database);
+                try {
+                    counter.stage(Collections.singletonList(uid));
+                    return deleteStaged(database, counter, urlHashes);
+                } finally {
+                    counter.close();
+                }
+            }
+        });
+        trash(ret, urlHashes);
+        return ret.size();
+    }
+
+    private void runPending() {
+        final EvictionPolicy policy;
+        synchronized (this) {
+            while (!isTrashed && spacePolicy == null) {
+                try {
+                    wait();
+                } catch (final InterruptedException exception) {
+                    exception.printStackTrace();
+                }
+            }
+            policy = spacePolicy;
+            isTrashed = false;
+            spacePolicy = null;
+        }
+        reclaim();
+        if (policy != null) {
+            try {
+                evictBySpace(policy);
+            } catch (final Exception exception) {
+                exception.printStackTrace();
+            }
+        }
+    }
+
+    /*
+     * Moves the folders of the items and their images into the trash, to be deleted in the
+     * background. A renaming is cheap, and keeps an item synced again later
+     * from finding the old files.
+     */
+    private void trash(final List<String> uids, final List<String> urlHashes) {
+        if (uids.isEmpty()) {
+            return;
+        }
+        trashFolder.mkdirs();
+        for (final String uid : uids) {
+            final File folder = new File(Item.getStoragePathByUid(uid));
+            if (folder.exists() && !folder.renameTo(newTrashFile(uid))) {
+                DataUtils.deleteFile(folder);
+            }
+        }
+        for (final String urlHash : urlHashes) {
+            final File file = new File(ImageRef.getStoragePathByHash(urlHash));
+            if (file.exists() && !file.renameTo(newTrashFile(urlHash))) {
+                file.delete();
+            }
+            /* Left by a fetch broken off. */
+            DataUtils.getPartFile(file).delete();
+            DataUtils.getPartIndexFile(file).delete();
+        }
+        synchronized (this) {
+            isTrashed = true;
+            notifyAll();
+        }
+    }
+}
@@ -22,62 +22,81 @@ public class ItemTag implements Entity {
 
     public static final Uri CONTENT_URI = Uri.parse(DataProvider.ITEMTAG_CONTENT_URI);
 
-    public static final String _ITEMUID = "itemUid";
-    public static final String _TAGUID = "tagUid";
-    public static final String[] COLUMNS = { _ITEMUID, _TAGUID };
+    public static final String _ITEMID = "itemId";
+    public static final String _TAGID = "tagId";
+    /* A copy of items.timestamp, so that a tag page seeks by tag in timestamp order. */
+    public static final String _ITEMTIMESTAMP = "itemTimestamp";
+    public static final String[] COLUMNS = { _ITEMID, _TAGID, _ITEMTIMESTAMP };
 
-    public static final String SQL_CREATE_TABLE = "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" + _ITEMUID
-            + " TEXT, " + _TAGUID + " TEXT, PRIMARY KEY (" + _ITEMUID + "," + _TAGUID + "))";
+    public static final String SQL_CREATE_TABLE = "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" + _ITEMID
+            + " INTEGER," + _TAGID + " INTEGER," + _ITEMTIMESTAMP + " INTEGER, PRIMARY KEY (" + _ITEMID + ","
+            + _TAGID + "))";
 
-    public static final String[][] INDEX_COLUMNS = { { _ITEMUID }, { _TAGUID } };
+    public static final String[][] INDEX_COLUMNS = { { _TAGID, _ITEMTIMESTAMP, _ITEMID } };
+
+    /* Layout before DB version 48, which linked uids instead of ids. */
+    static final String LEGACY_TABLE_NAME = TABLE_NAME + "_old";
+    static final String LEGACY_ITEMUID = "itemUid";
+    static final String LEGACY_TAGUID = "tagUid";
 
     public static ItemTag fromCursor(final Cursor cur) {
-        return new ItemTag(Utils.getStringFromCursor(cur, ItemTag._ITEMUID), Utils.getStringFromCursor(cur,
-                ItemTag._TAGUID));
+        return new ItemTag(Utils.getLongFromCursor(cur, _ITEMID), Utils.getLongFromCursor(cur, _TAGID),
+                Utils.getLongFromCursor(cur, _ITEMTIMESTAMP));
     }
 
-    private String itemUid;
-    private String tagUid;
+    private long itemId;
+    private long itemTimestamp;
+    private long tagId;
 
     public ItemTag() {
-        init(null, null);
+        init(0, 0, 0);
     }
 
-    public ItemTag(final String itemUid, final String tagUid) {
-        init(itemUid, tagUid);
+    public ItemTag(final long itemId, final long tagId, final long itemTimestamp) {
+        init(itemId, tagId, itemTimestamp);
     }
 
     @Override
     public void clear() {
-        init(null, null);
+        init(0, 0, 0);
+    }
+
+    public long getItemId() {
+        return itemId;
+    }
+
+    public long getItemTimestamp() {
+        return itemTimestamp;
     }
 
-    public String getItemUid() {
-        return itemUid;
+    public long getTagId() {
+        return tagId;
     }
 
-    public String getTagUid() {
-        return tagUid;
+    private void init(final long itemId, final long tagId, final long itemTimestamp) {
+        this.itemId = itemId;
+        this.tagId = tagId;
+        this.itemTimestamp = itemTimestamp;
     }
 
-    private void init(final String itemUid, final String tagUid) {
-        this.itemUid = itemUid;
-        this.tagUid = tagUid;
+    public void setItemId(final long itemId) {
+        this.itemId = itemId;
     }
 
-    public void setItemUid(final String itemUid) {
-        this.itemUid = itemUid;
+    public void setItemTimestamp(final long itemTimestamp) {
+        this.itemTimestamp = itemTimestamp;
     }
 
-    public void setTagUid(final String tagUid) {
-        this.tagUid = tagUid;
+    public void setTagId(final long tagId) {
+        this.tagId = tagId;
     }
 
     @Override
     public ContentValues toContentValues() {
-        final ContentValues ret = new ContentValues(2);
-        ret.put(_ITEMUID, itemUid);
-        ret.put(_TAGUID, tagUid);
+        final ContentValues ret = new ContentValues(3);
+        ret.put(_ITEMID, itemId);
+        ret.put(_TAGID, tagId);
+        ret.put(_ITEMTIMESTAMP, itemTimestamp);
         return ret;
     }
 
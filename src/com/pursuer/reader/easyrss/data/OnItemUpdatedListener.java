@@ -11,6 +11,8 @@
 
 package com.pursuer.reader.easyrss.data;
 
+import java.util.Collection;
+
 public interface OnItemUpdatedListener {
-    void onItemUpdated(Item item);
+    void onItemsUpdated(Collection<Item> items);
 }
@@ -11,6 +11,8 @@
 
 package com.pursuer.reader.easyrss.data;
 
+import java.util.Collection;
+
 public interface OnSubscriptionUpdatedListener {
-    void onSubscriptionUpdated(Subscription sub);
+    void onSubscriptionsUpdated(Collection<Subscription> subs);
 }
@@ -11,6 +11,8 @@
 
 package com.pursuer.reader.easyrss.data;
 
+import java.util.Collection;
+
 public interface OnTagUpdatedListener {
-    void onTagUpdated(Tag tag);
+    void onTagsUpdated(Collection<Tag> tags);
 }
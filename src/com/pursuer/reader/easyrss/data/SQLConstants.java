@@ -12,16 +12,46 @@
 package com.pursuer.reader.easyrss.data;
 
 final public class SQLConstants {
+    // Keep well below SQLITE_MAX_VARIABLE_NUMBER (999) for "IN (?,?,...)" queries.
+    final public static int MAX_QUERY_ARGS = 500;
+
+    final public static String APPLY_STAGED_UNREAD_COUNTS;
+    final public static String CLEAR_STAGED_COUNTS;
+    final public static String CLEAR_STAGED_ITEMS;
+    final public static String CREATE_STAGED_COUNTS;
+    final public static String CREATE_STAGED_ITEMS;
     final public static String CREATE_TRIGGER_DELETE_REDUNDENT_TRANSACTION;
-    final public static String CREATE_TRIGGER_MARK_ITEM_AS_READ;
+    final public static String DELETE_STAGED_IMAGE_REFS;
+    final public static String DELETE_STAGED_ITEM_TAGS;
+    final public static String DELETE_STAGED_ITEMS;
     final public static String DROP_TRIGGER_MARK_ITEM_AS_READ;
-    final public static String INCREASE_TAG_UNREAD_COUNT;
-    final public static String INSERT_ITEM_TAG;
+    final public static String FILL_ITEM_TAG_TIMESTAMPS;
+    final public static String INSERT_IMAGE_REF;
     final public static String INSERT_OR_REPLACE_SETTING;
-    final public static String INSERT_SUBSCRIPTION_TAG;
-    final public static String MARK_ITEM_AS_READ;
-    final public static String SELECT_ITEM_TAGS;
-    final public static String SELECT_ITEM_TAGS_UID;
+    final public static String INSERT_OR_REPLACE_UNREAD_COUNT;
+    final public static String INSERT_STAGED_EVICTABLE_ITEMS;
+    final public static String INSERT_STAGED_GLOBAL_COUNT;
+    final public static String INSERT_STAGED_ITEM;
+    final public static String INSERT_STAGED_SUBSCRIPTION_COUNTS;
+    final public static String INSERT_STAGED_TAG_COUNTS;
+    final public static String INSERT_STAGED_TRANSACTIONS;
+    final public static String INSERT_STAGED_UNREAD_COUNTS;
+    final public static String INSERT_UNREAD_COUNTS;
+    final public static String MARK_STAGED_ITEMS;
+    final public static String MIGRATE_ITEM_TAGS;
+    final public static String MIGRATE_SUBSCRIPTION_TAGS;
+    final public static String RETAIN_STAGED_ITEMS;
+    final public static String SELECT_ITEM_IMAGE_SHARES;
+    final public static String SELECT_ITEM_RETENTION_BOUNDARY;
+    final public static String SELECT_EVICTABLE_ITEMS;
+    final public static String SELECT_STAGED_COUNTS;
+    final public static String SELECT_STAGED_ITEMS;
+    final public static String SELECT_STAGED_ORPHAN_IMAGES;
+    final public static String SELECT_UNREAD_COUNT;
+    final public static String UPDATE_STAGED_GLOBAL_COUNT;
+    final public static String UPDATE_STAGED_SUBSCRIPTION_COUNTS;
+    final public static String UPDATE_ITEM_TAG_TIMESTAMP;
+    final public static String UPDATE_STAGED_TAG_COUNTS;
     final public static String UPGRADE_ITEM_TAGS_ITEM_UID;
     final public static String UPGRADE_ITEMS_UID;
 
@@ -47,204 +77,570 @@ final public class SQLConstants {
         CREATE_TRIGGER_DELETE_REDUNDENT_TRANSACTION = buffer.toString();
     }
 
-    // CREATE TRIGGER IF NOT EXISTS mark_item_as_read UPDATE OF isRead ON items
-    // FOR EACH ROW WHEN new.isRead=1 AND old.isRead=0 BEGIN
-    // UPDATE tags SET unreadCount=unreadCount-1 WHERE uid IN (SELECT tagUid
-    // FROM itemTags WHERE itemUid=new.uid) AND unreadCount<1000 AND
-    // unreadCount>0;
-    // UPDATE subscriptions SET unreadCount=unreadCount-1 WHERE
-    // uid=new.sourceUri AND unreadCount<1000 AND unreadCount>0;
-    // UPDATE settings SET value=value-1 WHERE name='globalItemUnreadCount' AND
-    // CAST(value AS INT)>0 AND CAST(value AS INT)<1000;
-    // INSERT INTO transactions (uid,type) VALUES (new.uid,0);
-    // END;
+    static {
+        DROP_TRIGGER_MARK_ITEM_AS_READ = "DROP TRIGGER IF EXISTS mark_item_as_read";
+    }
+
+    static {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("INSERT OR REPLACE INTO ");
+        builder.append(Setting.TABLE_NAME);
+        builder.append('(');
+        builder.append(Setting._NAME);
+        builder.append(',');
+        builder.append(Setting._VALUE);
+        builder.append(") VALUES (?,?)");
+        INSERT_OR_REPLACE_SETTING = builder.toString();
+    }
+
+    // INSERT OR IGNORE INTO imageRefs(itemUid,urlHash)VALUES(?,?)
+    static {
+        final StringBuffer buffer = new StringBuffer();
+        buffer.append("INSERT OR IGNORE INTO ");
+        buffer.append(ImageRef.TABLE_NAME);
+        buffer.append('(');
+        buffer.append(ImageRef._ITEMUID);
+        buffer.append(',');
+        buffer.append(ImageRef._URLHASH);
+        buffer.append(")VALUES(?,?)");
+        INSERT_IMAGE_REF = buffer.toString();
+    }
+
+    /*
+     * Temporary tables used by set-based updates: stagedItems(uid) holds the
+     * items to work on, stagedCounts(uid, unreadCount) the number of unread
+     * ones among them per stream. The uid of the global stream is "".
+     */
+    static {
+        CREATE_STAGED_ITEMS = "CREATE TEMP TABLE IF NOT EXISTS stagedItems(uid TEXT PRIMARY KEY)";
+        CREATE_STAGED_COUNTS = "CREATE TEMP TABLE IF NOT EXISTS stagedCounts(uid TEXT,unreadCount INTEGER)";
+        CLEAR_STAGED_ITEMS = "DELETE FROM stagedItems";
+        CLEAR_STAGED_COUNTS = "DELETE FROM stagedCounts";
+        INSERT_STAGED_ITEM = "INSERT OR IGNORE INTO stagedItems(uid)VALUES(?)";
+        SELECT_STAGED_COUNTS = "SELECT DISTINCT uid FROM stagedCounts";
+        SELECT_STAGED_ITEMS = "SELECT uid FROM stagedItems";
+    }
+
+    // DELETE FROM stagedItems WHERE uid NOT IN(SELECT uid FROM items WHERE
+    // isRead=?)
     static {
         final StringBuffer buffer = new StringBuffer();
-        // Declare the trigger
-        buffer.append("CREATE TRIGGER IF NOT EXISTS mark_item_as_read UPDATE OF ");
+        buffer.append("DELETE FROM stagedItems WHERE uid NOT IN(SELECT ");
+        buffer.append(Item._UID);
+        buffer.append(" FROM ");
+        buffer.append(Item.TABLE_NAME);
+        buffer.append(" WHERE ");
         buffer.append(ItemState._ISREAD);
+        buffer.append("=?)");
+        RETAIN_STAGED_ITEMS = buffer.toString();
+    }
+
+    // INSERT INTO stagedCounts SELECT streamUid,COUNT(*) FROM items INNER JOIN
+    // itemTags ON itemId=id INNER JOIN streams ON streamId=tagId WHERE isRead=0
+    // AND uid IN(SELECT uid FROM stagedItems) GROUP BY tagId
+    static {
+        final StringBuffer buffer = new StringBuffer();
+        buffer.append("INSERT INTO stagedCounts SELECT ");
+        buffer.append(StreamIds._UID);
+        buffer.append(",COUNT(*) FROM ");
+        buffer.append(Item.TABLE_NAME);
+        buffer.append(" INNER JOIN ");
+        buffer.append(ItemTag.TABLE_NAME);
+        buffer.append(" ON ");
+        buffer.append(ItemTag._ITEMID);
+        buffer.append('=');
+        buffer.append(Item._ID);
+        buffer.append(" INNER JOIN ");
+        buffer.append(StreamIds.TABLE_NAME);
         buffer.append(" ON ");
+        buffer.append(StreamIds._ID);
+        buffer.append('=');
+        buffer.append(ItemTag._TAGID);
+        buffer.append(" WHERE ");
+        buffer.append(ItemState._ISREAD);
+        buffer.append("=0 AND ");
+        buffer.append(Item._UID);
+        buffer.append(" IN(SELECT uid FROM stagedItems) GROUP BY ");
+        buffer.append(ItemTag._TAGID);
+        INSERT_STAGED_TAG_COUNTS = buffer.toString();
+    }
+
+    // INSERT INTO stagedCounts SELECT sourceUri,COUNT(*) FROM items WHERE
+    // isRead=0 AND uid IN(SELECT uid FROM stagedItems) GROUP BY sourceUri
+    static {
+        final StringBuffer buffer = new StringBuffer();
+        buffer.append("INSERT INTO stagedCounts SELECT ");
+        buffer.append(Item._SOURCEURI);
+        buffer.append(",COUNT(*) FROM ");
         buffer.append(Item.TABLE_NAME);
-        buffer.append(" FOR EACH ROW WHEN new.");
+        buffer.append(" WHERE ");
         buffer.append(ItemState._ISREAD);
-        buffer.append("=1 AND old.");
+        buffer.append("=0 AND ");
+        buffer.append(Item._UID);
+        buffer.append(" IN(SELECT uid FROM stagedItems) GROUP BY ");
+        buffer.append(Item._SOURCEURI);
+        INSERT_STAGED_SUBSCRIPTION_COUNTS = buffer.toString();
+    }
+
+    // INSERT INTO stagedCounts SELECT '',COUNT(*) FROM items WHERE isRead=0 AND
+    // uid IN(SELECT uid FROM stagedItems)
+    static {
+        final StringBuffer buffer = new StringBuffer();
+        buffer.append("INSERT INTO stagedCounts SELECT '");
+        buffer.append(UnreadCounter.UID_GLOBAL);
+        buffer.append("',COUNT(*) FROM ");
+        buffer.append(Item.TABLE_NAME);
+        buffer.append(" WHERE ");
         buffer.append(ItemState._ISREAD);
-        buffer.append("=0 BEGIN\n");
-        // Update unreadCount of tags
+        buffer.append("=0 AND ");
+        buffer.append(Item._UID);
+        buffer.append(" IN(SELECT uid FROM stagedItems)");
+        INSERT_STAGED_GLOBAL_COUNT = buffer.toString();
+    }
+
+    // INSERT OR IGNORE INTO unreadCounts(uid,unreadCount) SELECT DISTINCT uid,0
+    // FROM stagedCounts
+    static {
+        final StringBuffer buffer = new StringBuffer();
+        buffer.append("INSERT OR IGNORE INTO ");
+        buffer.append(UnreadCounter.TABLE_NAME);
+        buffer.append('(');
+        buffer.append(UnreadCounter._UID);
+        buffer.append(',');
+        buffer.append(UnreadCounter._UNREADCOUNT);
+        buffer.append(")SELECT DISTINCT uid,0 FROM stagedCounts");
+        INSERT_STAGED_UNREAD_COUNTS = buffer.toString();
+    }
+
+    // UPDATE unreadCounts SET unreadCount=unreadCount+?*(SELECT
+    // SUM(unreadCount) FROM stagedCounts WHERE
+    // stagedCounts.uid=unreadCounts.uid) WHERE uid IN(SELECT uid FROM
+    // stagedCounts)
+    static {
+        final StringBuffer buffer = new StringBuffer();
+        buffer.append("UPDATE ");
+        buffer.append(UnreadCounter.TABLE_NAME);
+        buffer.append(" SET ");
+        buffer.append(UnreadCounter._UNREADCOUNT);
+        buffer.append('=');
+        buffer.append(UnreadCounter._UNREADCOUNT);
+        buffer.append("+?*(SELECT SUM(unreadCount) FROM stagedCounts WHERE stagedCounts.uid=");
+        buffer.append(UnreadCounter.TABLE_NAME);
+        buffer.append('.');
+        buffer.append(UnreadCounter._UID);
+        buffer.append(") WHERE ");
+        buffer.append(UnreadCounter._UID);
+        buffer.append(" IN(SELECT uid FROM stagedCounts)");
+        APPLY_STAGED_UNREAD_COUNTS = buffer.toString();
+    }
+
+    // INSERT INTO unreadCounts(uid,unreadCount) SELECT uid,SUM(unreadCount)
+    // FROM stagedCounts GROUP BY uid
+    static {
+        final StringBuffer buffer = new StringBuffer();
+        buffer.append("INSERT INTO ");
+        buffer.append(UnreadCounter.TABLE_NAME);
+        buffer.append('(');
+        buffer.append(UnreadCounter._UID);
+        buffer.append(',');
+        buffer.append(UnreadCounter._UNREADCOUNT);
+        buffer.append(")SELECT uid,SUM(unreadCount) FROM stagedCounts GROUP BY uid");
+        INSERT_UNREAD_COUNTS = buffer.toString();
+    }
+
+    // INSERT OR REPLACE INTO unreadCounts(uid,unreadCount)VALUES(?,?)
+    static {
+        final StringBuffer buffer = new StringBuffer();
+        buffer.append("INSERT OR REPLACE INTO ");
+        buffer.append(UnreadCounter.TABLE_NAME);
+        buffer.append('(');
+        buffer.append(UnreadCounter._UID);
+        buffer.append(',');
+        buffer.append(UnreadCounter._UNREADCOUNT);
+        buffer.append(")VALUES(?,?)");
+        INSERT_OR_REPLACE_UNREAD_COUNT = buffer.toString();
+    }
+
+    // SELECT unreadCount FROM unreadCounts WHERE uid=?
+    static {
+        final StringBuffer buffer = new StringBuffer();
+        buffer.append("SELECT ");
+        buffer.append(UnreadCounter._UNREADCOUNT);
+        buffer.append(" FROM ");
+        buffer.append(UnreadCounter.TABLE_NAME);
+        buffer.append(" WHERE ");
+        buffer.append(UnreadCounter._UID);
+        buffer.append("=?");
+        SELECT_UNREAD_COUNT = buffer.toString();
+    }
+
+    // UPDATE tags SET unreadCount=MAX(0,unreadCount+?*(SELECT SUM(unreadCount)
+    // FROM stagedCounts WHERE stagedCounts.uid=tags.uid)) WHERE uid IN(SELECT
+    // uid FROM stagedCounts) AND unreadCount<1000
+    static {
+        final StringBuffer buffer = new StringBuffer();
         buffer.append("UPDATE ");
         buffer.append(Tag.TABLE_NAME);
         buffer.append(" SET ");
         buffer.append(Tag._UNREADCOUNT);
-        buffer.append("=");
+        buffer.append("=MAX(0,");
         buffer.append(Tag._UNREADCOUNT);
-        buffer.append("-1 WHERE ");
+        buffer.append("+?*(SELECT SUM(unreadCount) FROM stagedCounts WHERE stagedCounts.uid=");
+        buffer.append(Tag.TABLE_NAME);
+        buffer.append('.');
         buffer.append(Tag._UID);
-        buffer.append(" IN (SELECT ");
-        buffer.append(ItemTag._TAGUID);
-        buffer.append(" FROM ");
-        buffer.append(ItemTag.TABLE_NAME);
-        buffer.append(" WHERE ");
-        buffer.append(ItemTag._ITEMUID);
-        buffer.append("=new.");
-        buffer.append(Item._UID);
-        buffer.append(") AND ");
-        buffer.append(Tag._UNREADCOUNT);
-        buffer.append("<1000 AND ");
+        buffer.append(")) WHERE ");
+        buffer.append(Tag._UID);
+        buffer.append(" IN(SELECT uid FROM stagedCounts) AND ");
         buffer.append(Tag._UNREADCOUNT);
-        buffer.append(">0;\n");
-        // Update unreadCount of subscription
+        buffer.append("<1000");
+        UPDATE_STAGED_TAG_COUNTS = buffer.toString();
+    }
+
+    // UPDATE subscriptions SET unreadCount=MAX(0,unreadCount+?*(SELECT
+    // SUM(unreadCount) FROM stagedCounts WHERE
+    // stagedCounts.uid=subscriptions.uid)) WHERE uid IN(SELECT uid FROM
+    // stagedCounts) AND unreadCount<1000
+    static {
+        final StringBuffer buffer = new StringBuffer();
         buffer.append("UPDATE ");
         buffer.append(Subscription.TABLE_NAME);
         buffer.append(" SET ");
         buffer.append(Subscription._UNREADCOUNT);
-        buffer.append("=");
+        buffer.append("=MAX(0,");
         buffer.append(Subscription._UNREADCOUNT);
-        buffer.append("-1 WHERE ");
+        buffer.append("+?*(SELECT SUM(unreadCount) FROM stagedCounts WHERE stagedCounts.uid=");
+        buffer.append(Subscription.TABLE_NAME);
+        buffer.append('.');
         buffer.append(Subscription._UID);
-        buffer.append("=new.");
-        buffer.append(Item._SOURCEURI);
-        buffer.append(" AND ");
-        buffer.append(Subscription._UNREADCOUNT);
-        buffer.append("<1000 AND ");
+        buffer.append(")) WHERE ");
+        buffer.append(Subscription._UID);
+        buffer.append(" IN(SELECT uid FROM stagedCounts) AND ");
         buffer.append(Subscription._UNREADCOUNT);
-        buffer.append(">0;\n");
-        // Update Setting globalItemUnreadCount
+        buffer.append("<1000");
+        UPDATE_STAGED_SUBSCRIPTION_COUNTS = buffer.toString();
+    }
+
+    // UPDATE settings SET value=MAX(0,CAST(value AS INT)+?*(SELECT
+    // SUM(unreadCount) FROM stagedCounts WHERE uid='')) WHERE
+    // name='globalItemUnreadCount' AND CAST(value AS INT)<1000 AND
+    // '' IN(SELECT uid FROM stagedCounts)
+    static {
+        final StringBuffer buffer = new StringBuffer();
         buffer.append("UPDATE ");
         buffer.append(Setting.TABLE_NAME);
         buffer.append(" SET ");
         buffer.append(Setting._VALUE);
-        buffer.append("=");
+        buffer.append("=MAX(0,CAST(");
         buffer.append(Setting._VALUE);
-        buffer.append("-1 WHERE ");
+        buffer.append(" AS INT)+?*(SELECT SUM(unreadCount) FROM stagedCounts WHERE uid='");
+        buffer.append(UnreadCounter.UID_GLOBAL);
+        buffer.append("')) WHERE ");
         buffer.append(Setting._NAME);
         buffer.append("='");
         buffer.append(Setting.SETTING_GLOBAL_ITEM_UNREAD_COUNT);
         buffer.append("' AND CAST(");
         buffer.append(Setting._VALUE);
-        buffer.append(" AS INT)>0 AND CAST(");
-        buffer.append(Setting._VALUE);
-        buffer.append(" AS INT)<1000;\n");
-        // End
-        buffer.append("END;");
-        CREATE_TRIGGER_MARK_ITEM_AS_READ = buffer.toString();
+        buffer.append(" AS INT)<1000 AND '");
+        buffer.append(UnreadCounter.UID_GLOBAL);
+        buffer.append("' IN(SELECT uid FROM stagedCounts)");
+        UPDATE_STAGED_GLOBAL_COUNT = buffer.toString();
     }
 
+    // UPDATE items SET isRead=? WHERE uid IN(SELECT uid FROM stagedItems)
     static {
-        DROP_TRIGGER_MARK_ITEM_AS_READ = "DROP TRIGGER IF EXISTS mark_item_as_read";
+        final StringBuffer buffer = new StringBuffer();
+        buffer.append("UPDATE ");
+        buffer.append(Item.TABLE_NAME);
+        buffer.append(" SET ");
+        buffer.append(ItemState._ISREAD);
+        buffer.append("=? WHERE ");
+        buffer.append(Item._UID);
+        buffer.append(" IN(SELECT uid FROM stagedItems)");
+        MARK_STAGED_ITEMS = buffer.toString();
     }
 
+    // INSERT INTO transactions(uid,type) SELECT
+    // 'tag:google.com,2005:reader/item/'||uid,? FROM stagedItems
     static {
         final StringBuffer buffer = new StringBuffer();
-        buffer.append("UPDATE ");
-        buffer.append(Tag.TABLE_NAME);
-        buffer.append(" SET ");
-        buffer.append(Tag._UNREADCOUNT);
-        buffer.append("=");
-        buffer.append(Tag._UNREADCOUNT);
-        buffer.append("+1 WHERE ");
-        buffer.append(Tag._UID);
+        buffer.append("INSERT INTO ");
+        buffer.append(Transaction.TABLE_NAME);
+        buffer.append('(');
+        buffer.append(Transaction._UID);
+        buffer.append(',');
+        buffer.append(Transaction._TYPE);
+        buffer.append(")SELECT '");
+        buffer.append(Item.UID_PREFIX);
+        buffer.append("'||uid,? FROM stagedItems");
+        INSERT_STAGED_TRANSACTIONS = buffer.toString();
+    }
+
+    // DELETE FROM itemTags WHERE itemId IN(SELECT id FROM items WHERE uid
+    // IN(SELECT uid FROM stagedItems))
+    static {
+        final StringBuffer buffer = new StringBuffer();
+        buffer.append("DELETE FROM ");
+        buffer.append(ItemTag.TABLE_NAME);
+        buffer.append(" WHERE ");
+        buffer.append(ItemTag._ITEMID);
         buffer.append(" IN(SELECT ");
-        buffer.append(ItemTag._TAGUID);
+        buffer.append(Item._ID);
         buffer.append(" FROM ");
-        buffer.append(ItemTag.TABLE_NAME);
+        buffer.append(Item.TABLE_NAME);
         buffer.append(" WHERE ");
-        buffer.append(ItemTag._ITEMUID);
-        buffer.append("=?) AND ");
-        buffer.append(Tag._UNREADCOUNT);
-        buffer.append("<1000");
-        INCREASE_TAG_UNREAD_COUNT = buffer.toString();
+        buffer.append(Item._UID);
+        buffer.append(" IN(SELECT uid FROM stagedItems))");
+        DELETE_STAGED_ITEM_TAGS = buffer.toString();
     }
 
+    // DELETE FROM imageRefs WHERE itemUid IN(SELECT uid FROM stagedItems)
     static {
         final StringBuffer buffer = new StringBuffer();
-        buffer.append("INSERT INTO ");
-        buffer.append(ItemTag.TABLE_NAME);
-        buffer.append("(");
-        buffer.append(ItemTag._ITEMUID);
-        buffer.append(",");
-        buffer.append(ItemTag._TAGUID);
-        buffer.append(")VALUES(?,?)");
-        INSERT_ITEM_TAG = buffer.toString();
+        buffer.append("DELETE FROM ");
+        buffer.append(ImageRef.TABLE_NAME);
+        buffer.append(" WHERE ");
+        buffer.append(ImageRef._ITEMUID);
+        buffer.append(" IN(SELECT uid FROM stagedItems)");
+        DELETE_STAGED_IMAGE_REFS = buffer.toString();
     }
 
+    // SELECT DISTINCT urlHash FROM imageRefs r WHERE itemUid IN(SELECT uid FROM
+    // stagedItems) AND NOT EXISTS(SELECT 1 FROM imageRefs WHERE
+    // urlHash=r.urlHash AND itemUid NOT IN(SELECT uid FROM stagedItems))
     static {
-        final StringBuilder builder = new StringBuilder();
-        builder.append("INSERT OR REPLACE INTO ");
-        builder.append(Setting.TABLE_NAME);
-        builder.append('(');
-        builder.append(Setting._NAME);
-        builder.append(',');
-        builder.append(Setting._VALUE);
-        builder.append(") VALUES (?,?)");
-        INSERT_OR_REPLACE_SETTING = builder.toString();
+        final StringBuffer buffer = new StringBuffer();
+        buffer.append("SELECT DISTINCT ");
+        buffer.append(ImageRef._URLHASH);
+        buffer.append(" FROM ");
+        buffer.append(ImageRef.TABLE_NAME);
+        buffer.append(" r WHERE ");
+        buffer.append(ImageRef._ITEMUID);
+        buffer.append(" IN(SELECT uid FROM stagedItems) AND NOT EXISTS(SELECT 1 FROM ");
+        buffer.append(ImageRef.TABLE_NAME);
+        buffer.append(" WHERE ");
+        buffer.append(ImageRef._URLHASH);
+        buffer.append("=r.");
+        buffer.append(ImageRef._URLHASH);
+        buffer.append(" AND ");
+        buffer.append(ImageRef._ITEMUID);
+        buffer.append(" NOT IN(SELECT uid FROM stagedItems))");
+        SELECT_STAGED_ORPHAN_IMAGES = buffer.toString();
     }
 
+    // SELECT urlHash,(SELECT COUNT(*) FROM imageRefs WHERE urlHash=r.urlHash)
+    // FROM imageRefs r WHERE itemUid=?
     static {
         final StringBuffer buffer = new StringBuffer();
-        buffer.append("INSERT INTO ");
-        buffer.append(SubscriptionTag.TABLE_NAME);
-        buffer.append("(");
-        buffer.append(SubscriptionTag._SUBSCRIPTIONUID);
-        buffer.append(",");
-        buffer.append(SubscriptionTag._TAGUID);
-        buffer.append(")VALUES(?,?)");
-        INSERT_SUBSCRIPTION_TAG = buffer.toString();
+        buffer.append("SELECT ");
+        buffer.append(ImageRef._URLHASH);
+        buffer.append(",(SELECT COUNT(*) FROM ");
+        buffer.append(ImageRef.TABLE_NAME);
+        buffer.append(" WHERE ");
+        buffer.append(ImageRef._URLHASH);
+        buffer.append("=r.");
+        buffer.append(ImageRef._URLHASH);
+        buffer.append(") FROM ");
+        buffer.append(ImageRef.TABLE_NAME);
+        buffer.append(" r WHERE ");
+        buffer.append(ImageRef._ITEMUID);
+        buffer.append("=?");
+        SELECT_ITEM_IMAGE_SHARES = buffer.toString();
     }
 
+    // SELECT updateTime,uid FROM items ORDER BY updateTime DESC,uid DESC LIMIT
+    // 1 OFFSET ?
     static {
         final StringBuffer buffer = new StringBuffer();
-        buffer.append("UPDATE ");
+        buffer.append("SELECT ");
+        buffer.append(Item._UPDATETIME);
+        buffer.append(',');
+        buffer.append(Item._UID);
+        buffer.append(" FROM ");
         buffer.append(Item.TABLE_NAME);
-        buffer.append(" SET ");
+        buffer.append(" ORDER BY ");
+        buffer.append(Item._UPDATETIME);
+        buffer.append(" DESC,");
+        buffer.append(Item._UID);
+        buffer.append(" DESC LIMIT 1 OFFSET ?");
+        SELECT_ITEM_RETENTION_BOUNDARY = buffer.toString();
+    }
+
+    // evictable: (NOT ? OR isStarred=0) AND (NOT ? OR isRead=1)
+    // SELECT updateTime,uid FROM items WHERE evictable ORDER BY updateTime,uid
+    // INSERT OR IGNORE INTO stagedItems SELECT uid FROM items WHERE
+    // (updateTime<? OR (updateTime=? AND uid<?)) AND evictable
+    static {
+        final StringBuffer buffer = new StringBuffer();
+        buffer.append("(NOT ? OR ");
+        buffer.append(ItemState._ISSTARRED);
+        buffer.append("=0) AND (NOT ? OR ");
         buffer.append(ItemState._ISREAD);
-        buffer.append("=1 WHERE ");
+        buffer.append("=1)");
+        final String evictable = buffer.toString();
+
+        buffer.setLength(0);
+        buffer.append("SELECT ");
+        buffer.append(Item._UPDATETIME);
+        buffer.append(',');
         buffer.append(Item._UID);
-        buffer.append("=?");
-        MARK_ITEM_AS_READ = buffer.toString();
+        buffer.append(" FROM ");
+        buffer.append(Item.TABLE_NAME);
+        buffer.append(" WHERE ");
+        buffer.append(evictable);
+        buffer.append(" ORDER BY ");
+        buffer.append(Item._UPDATETIME);
+        buffer.append(',');
+        buffer.append(Item._UID);
+        SELECT_EVICTABLE_ITEMS = buffer.toString();
+
+        buffer.setLength(0);
+        buffer.append("INSERT OR IGNORE INTO stagedItems SELECT ");
+        buffer.append(Item._UID);
+        buffer.append(" FROM ");
+        buffer.append(Item.TABLE_NAME);
+        buffer.append(" WHERE (");
+        buffer.append(Item._UPDATETIME);
+        buffer.append("<? OR (");
+        buffer.append(Item._UPDATETIME);
+        buffer.append("=? AND ");
+        buffer.append(Item._UID);
+        buffer.append("<?)) AND ");
+        buffer.append(evictable);
+        INSERT_STAGED_EVICTABLE_ITEMS = buffer.toString();
     }
 
+    // DELETE FROM items WHERE uid IN(SELECT uid FROM stagedItems)
     static {
         final StringBuffer buffer = new StringBuffer();
-        buffer.append("SELECT * FROM ");
-        buffer.append(Tag.TABLE_NAME);
+        buffer.append("DELETE FROM ");
+        buffer.append(Item.TABLE_NAME);
         buffer.append(" WHERE ");
-        buffer.append(Tag._UID);
-        buffer.append(" IN(SELECT ");
-        buffer.append(ItemTag._TAGUID);
+        buffer.append(Item._UID);
+        buffer.append(" IN(SELECT uid FROM stagedItems)");
+        DELETE_STAGED_ITEMS = buffer.toString();
+    }
+
+    // INSERT OR IGNORE INTO itemTags(itemId,tagId,itemTimestamp) SELECT
+    // id,streamId,timestamp FROM itemTags_old INNER JOIN items ON itemUid=uid
+    // INNER JOIN streams ON streamUid=tagUid
+    static {
+        final StringBuffer buffer = new StringBuffer();
+        buffer.append("INSERT OR IGNORE INTO ");
+        buffer.append(ItemTag.TABLE_NAME);
+        buffer.append('(');
+        buffer.append(ItemTag._ITEMID);
+        buffer.append(',');
+        buffer.append(ItemTag._TAGID);
+        buffer.append(',');
+        buffer.append(ItemTag._ITEMTIMESTAMP);
+        buffer.append(")SELECT ");
+        buffer.append(Item._ID);
+        buffer.append(',');
+        buffer.append(StreamIds._ID);
+        buffer.append(',');
+        buffer.append(Item._TIMESTAMP);
         buffer.append(" FROM ");
+        buffer.append(ItemTag.LEGACY_TABLE_NAME);
+        buffer.append(" INNER JOIN ");
+        buffer.append(Item.TABLE_NAME);
+        buffer.append(" ON ");
+        buffer.append(ItemTag.LEGACY_ITEMUID);
+        buffer.append('=');
+        buffer.append(Item._UID);
+        buffer.append(" INNER JOIN ");
+        buffer.append(StreamIds.TABLE_NAME);
+        buffer.append(" ON ");
+        buffer.append(StreamIds._UID);
+        buffer.append('=');
+        buffer.append(ItemTag.LEGACY_TAGUID);
+        MIGRATE_ITEM_TAGS = buffer.toString();
+    }
+
+    // UPDATE itemTags SET itemTimestamp=(SELECT timestamp FROM items WHERE
+    // id=itemId)
+    static {
+        final StringBuffer buffer = new StringBuffer();
+        buffer.append("UPDATE ");
         buffer.append(ItemTag.TABLE_NAME);
+        buffer.append(" SET ");
+        buffer.append(ItemTag._ITEMTIMESTAMP);
+        buffer.append("=(SELECT ");
+        buffer.append(Item._TIMESTAMP);
+        buffer.append(" FROM ");
+        buffer.append(Item.TABLE_NAME);
         buffer.append(" WHERE ");
-        buffer.append(ItemTag._ITEMUID);
-        buffer.append("=?)");
-        SELECT_ITEM_TAGS = buffer.toString();
+        buffer.append(Item._ID);
+        buffer.append('=');
+        buffer.append(ItemTag._ITEMID);
+        buffer.append(')');
+        FILL_ITEM_TAG_TIMESTAMPS = buffer.toString();
     }
 
+    // UPDATE itemTags SET itemTimestamp=(SELECT timestamp FROM items WHERE
+    // id=?) WHERE itemId=? AND itemTimestamp IS NULL
     static {
         final StringBuffer buffer = new StringBuffer();
-        buffer.append("SELECT ");
-        buffer.append(ItemTag._TAGUID);
-        buffer.append(" FROM ");
+        buffer.append("UPDATE ");
         buffer.append(ItemTag.TABLE_NAME);
+        buffer.append(" SET ");
+        buffer.append(ItemTag._ITEMTIMESTAMP);
+        buffer.append("=(SELECT ");
+        buffer.append(Item._TIMESTAMP);
+        buffer.append(" FROM ");
+        buffer.append(Item.TABLE_NAME);
         buffer.append(" WHERE ");
-        buffer.append(ItemTag._ITEMUID);
-        buffer.append("=?");
-        SELECT_ITEM_TAGS_UID = buffer.toString();
+        buffer.append(Item._ID);
+        buffer.append("=?) WHERE ");
+        buffer.append(ItemTag._ITEMID);
+        buffer.append("=? AND ");
+        buffer.append(ItemTag._ITEMTIMESTAMP);
+        buffer.append(" IS NULL");
+        UPDATE_ITEM_TAG_TIMESTAMP = buffer.toString();
+    }
+
+    // INSERT OR IGNORE INTO subscriptionTags SELECT s.streamId,t.streamId FROM
+    // subscriptionTags_old INNER JOIN streams s ON s.streamUid=subscriptionUid
+    // INNER JOIN streams t ON t.streamUid=tagUid
+    static {
+        final StringBuffer buffer = new StringBuffer();
+        buffer.append("INSERT OR IGNORE INTO ");
+        buffer.append(SubscriptionTag.TABLE_NAME);
+        buffer.append(" SELECT s.");
+        buffer.append(StreamIds._ID);
+        buffer.append(",t.");
+        buffer.append(StreamIds._ID);
+        buffer.append(" FROM ");
+        buffer.append(SubscriptionTag.LEGACY_TABLE_NAME);
+        buffer.append(" INNER JOIN ");
+        buffer.append(StreamIds.TABLE_NAME);
+        buffer.append(" s ON s.");
+        buffer.append(StreamIds._UID);
+        buffer.append('=');
+        buffer.append(SubscriptionTag.LEGACY_SUBSCRIPTIONUID);
+        buffer.append(" INNER JOIN ");
+        buffer.append(StreamIds.TABLE_NAME);
+        buffer.append(" t ON t.");
+        buffer.append(StreamIds._UID);
+        buffer.append('=');
+        buffer.append(SubscriptionTag.LEGACY_TAGUID);
+        MIGRATE_SUBSCRIPTION_TAGS = buffer.toString();
     }
 
     /*
-     * UPDATE itemTags SET itemUid = SUBSTR(itemUid, LENGTH(RTRIM(itemUid,
+     * UPDATE itemTags_old SET itemUid = SUBSTR(itemUid, LENGTH(RTRIM(itemUid,
      * '0123456789abcdef')) + 1);
      */
     static {
         final StringBuffer buffer = new StringBuffer();
         buffer.append("UPDATE ");
-        buffer.append(ItemTag.TABLE_NAME);
+        buffer.append(ItemTag.LEGACY_TABLE_NAME);
         buffer.append(" SET ");
-        buffer.append(ItemTag._ITEMUID);
+        buffer.append(ItemTag.LEGACY_ITEMUID);
         buffer.append("=SUBSTR(");
-        buffer.append(ItemTag._ITEMUID);
+        buffer.append(ItemTag.LEGACY_ITEMUID);
         buffer.append(",LENGTH(RTRIM(");
-        buffer.append(ItemTag._ITEMUID);
+        buffer.append(ItemTag.LEGACY_ITEMUID);
         buffer.append(",'0123456789abcdef'))+1)");
         UPGRADE_ITEM_TAGS_ITEM_UID = buffer.toString();
     }
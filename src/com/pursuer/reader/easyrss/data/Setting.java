@@ -27,7 +27,7 @@ public class Setting implements Entity {
 
     public static final String SQL_CREATE_TABLE = "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" + _NAME
             + " PRIMARY KEY ," + _VALUE + " TEXT NOT NULL)";
-    public static final String[][] INDEX_COLUMNS = { { _NAME } };
+    public static final String[][] INDEX_COLUMNS = {};
 
     public static final String SETTING_AUTH = "auth";
     public static final String SETTING_TOKEN = "token";
@@ -49,6 +49,10 @@ public class Setting implements Entity {
     public static final String SETTING_IMMEDIATE_STATE_SYNCING = "immediateStateSyncing";
     public static final String SETTING_MARK_ALL_AS_READ_CONFIRMATION = "markAllAsReadConfirmation";
     public static final String SETTING_MAX_ITEMS = "maxItems";
+    public static final String SETTING_MAX_ITEM_AGE = "maxItemAge";
+    public static final String SETTING_MAX_ITEM_SPACE = "maxItemSpace";
+    public static final String SETTING_KEEP_STARRED_ITEMS = "keepStarredItems";
+    public static final String SETTING_KEEP_UNREAD_ITEMS = "keepUnreadItems";
     public static final String SETTING_THEME = "theme";
     public static final String SETTING_TAG_LIST_EXPIRE_TIME = "tagListExpireTime";
     public static final String SETTING_GLOBAL_VIEW_TYPE = "globalViewType";
@@ -57,6 +61,7 @@ public class Setting implements Entity {
     public static final String SETTING_GLOBAL_ITEM_UNREAD_COUNT = "globalItemUnreadCount";
     public static final String SETTING_BROWSER_CHOICE = "browserChoice";
     public static final String SETTING_VOLUMN_KEY_SWITCHING = "volumnKeySwitching";
+    public static final String SETTING_UNREAD_COUNTS_VERIFY_TIME = "unreadCountsVerifyTime";
 
     public static Setting fromCursor(final Cursor cur) {
         return new Setting(Utils.getStringFromCursor(cur, Setting._NAME),
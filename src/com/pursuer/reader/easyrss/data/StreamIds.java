@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Pursuer (http://pursuer.me).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Pursuer - initial API and implementation
+ ******************************************************************************/
+
+package com.pursuer.reader.easyrss.data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/*
+ * Interns tag and subscription uids into small integer ids, so that the link
+ * tables (itemTags, subscriptionTags) store and join integer pairs instead of
+ * long strings. Ids are never reused or removed.
+ */
+final class StreamIds {
+    public static final String TABLE_NAME = "streams";
+
+    public static final String _ID = "streamId";
+    public static final String _UID = "streamUid";
+
+    public static final String SQL_CREATE_TABLE = "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" + _ID
+            + " INTEGER PRIMARY KEY," + _UID + " TEXT NOT NULL UNIQUE)";
+
+    /*
+     * Return: the id of the uid, or -1 if it is not interned yet.
+     */
+    public static long lookup(final SQLiteDatabase database, final String uid) {
+        final Cursor cur = database.rawQuery("SELECT " + _ID + " FROM " + TABLE_NAME + " WHERE " + _UID + "=?",
+                new String[] { uid });
+        final long ret = (cur.moveToFirst()) ? cur.getLong(0) : -1;
+        cur.close();
+        return ret;
+    }
+
+    final private Map<String, Long> ids;
+    final private SQLiteStatement insertStatement;
+    final private SQLiteStatement selectStatement;
+
+    public StreamIds(final SQLiteDatabase database) {
+        this.ids = new HashMap<String, Long>();
+        this.insertStatement = database.compileStatement("INSERT OR IGNORE INTO " + TABLE_NAME + "(" + _UID
+                + ")VALUES(?)");
+        this.selectStatement = database.compileStatement("SELECT " + _ID + " FROM " + TABLE_NAME + " WHERE " + _UID
+                + "=?");
+    }
+
+    public void close() {
+        insertStatement.close();
+        selectStatement.close();
+    }
+
+    /*
+     * Return: the id of the uid, which is interned first if needed.
+     */
+    public long intern(final String uid) {
+        Long ret = ids.get(uid);
+        if (ret == null) {
+            insertStatement.bindString(1, uid);
+            insertStatement.execute();
+            selectStatement.bindString(1, uid);
+            ret = selectStatement.simpleQueryForLong();
+            ids.put(uid, ret);
+        }
+        return ret;
+    }
+}
@@ -19,7 +19,6 @@ import com.pursuer.reader.easyrss.Utils;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 
 public class Subscription implements Entity {
@@ -40,7 +39,9 @@ public class Subscription implements Entity {
             _FIRSTITEMMSEC };
     public static final String[] COLUMNS_TYPE = { "TEXT PRIMARY KEY", "TEXT", "TEXT NOT NULL", "BOLB",
             "INTEGER NOT NULL DEFAULT 0", "INTEGER NOT NULL DEFAULT 0", "TEXT", "INTEGER NOT NULL DEFAULT 0" };
-    public static final String[][] INDEX_COLUMNS = { { _UID }, { _UPDATETIME } };
+    public static final String[] INSERT_COLUMNS = { _UID, _URL, _TITLE, _UPDATETIME, _SORTID, _FIRSTITEMMSEC };
+    public static final String[] UPDATE_COLUMNS = { _UPDATETIME, _SORTID, _FIRSTITEMMSEC };
+    public static final String[][] INDEX_COLUMNS = { { _UPDATETIME } };
 
     public static Subscription fromCursor(final Cursor cur) {
         return new Subscription(Utils.getStringFromCursor(cur, _UID), Utils.getStringFromCursor(cur, _URL),
@@ -53,7 +54,7 @@ public class Subscription implements Entity {
     private String title;
     private String url;
     private String sortId;
-    private Bitmap icon;
+    private byte[] icon;
     private List<String> tags;
     private int unreadCount;
     private long updateTime;
@@ -65,13 +66,13 @@ public class Subscription implements Entity {
 
     public Subscription(final String uid, final String url, final String title, final byte[] icon,
             final int unreadCount, final long updateTime, final String sortId, final long firstItemMsec) {
-        initFromByteArray(uid, url, title, icon, null, unreadCount, updateTime, sortId, firstItemMsec);
+        init(uid, url, title, icon, null, unreadCount, updateTime, sortId, firstItemMsec);
     }
 
     public Subscription(final String uid, final String url, final String title, final byte[] icon,
             final List<String> tags, final int unreadCount, final long updateTime, final String sortId,
             final long firstItemMsec) {
-        initFromByteArray(uid, url, title, icon, tags, unreadCount, updateTime, sortId, firstItemMsec);
+        init(uid, url, title, icon, tags, unreadCount, updateTime, sortId, firstItemMsec);
     }
 
     public void addTag(final String tag) {
@@ -87,7 +88,14 @@ public class Subscription implements Entity {
         return firstItemMsec;
     }
 
+    /*
+     * Return: the icon decoded by IconCache, or null if there is none.
+     */
     public Bitmap getIcon() {
+        return IconCache.getIcon(uid, icon);
+    }
+
+    public byte[] getIconData() {
         return icon;
     }
 
@@ -119,7 +127,7 @@ public class Subscription implements Entity {
         return url;
     }
 
-    private void init(final String uid, final String url, final String title, final Bitmap icon,
+    private void init(final String uid, final String url, final String title, final byte[] icon,
             final List<String> tags, final Integer unreadCount, final Long updateTime, final String sortId,
             final Long firstItemMsec) {
         this.uid = uid;
@@ -133,23 +141,12 @@ public class Subscription implements Entity {
         this.firstItemMsec = (firstItemMsec == null) ? 0 : firstItemMsec;
     }
 
-    private void initFromByteArray(final String uid, final String url, final String title, final byte[] icon,
-            final List<String> tags, final Integer unreadCount, final Long updateTime, final String sortId,
-            final Long firstItemMsec) {
-        final Bitmap bitmapIcon = (icon == null) ? null : BitmapFactory.decodeByteArray(icon, 0, icon.length);
-        init(uid, url, title, bitmapIcon, tags, unreadCount, updateTime, sortId, firstItemMsec);
-    }
-
     public void setFirstItemMsec(final long firstItemMsec) {
         this.firstItemMsec = firstItemMsec;
     }
 
-    public void setIcon(final Bitmap icon) {
-        this.icon = icon;
-    }
-
     public void setIcon(final byte[] icon) {
-        this.icon = (icon == null) ? null : BitmapFactory.decodeByteArray(icon, 0, icon.length);
+        this.icon = icon;
     }
 
     public void setSortId(final String sortId) {
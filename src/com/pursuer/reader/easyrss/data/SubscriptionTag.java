@@ -20,68 +20,70 @@ import android.net.Uri;
 public class SubscriptionTag implements Entity {
     public static final String TABLE_NAME = "subscriptionTags";
     public static final Uri CONTENT_URI = Uri.parse(DataProvider.SUBSCRIPTIONTAG_CONTENT_URI);
+    public static final String _SUBSCRIPTIONID = "subscriptionId";
+    public static final String _TAGID = "tagId";
+    public static final String[] COLUMNS = { _SUBSCRIPTIONID, _TAGID };
 
-    public static final String _SUBSCRIPTIONUID = "subscriptionUid";
-    public static final String _TAGUID = "tagUid";
-    public static final String[] COLUMNS = { _SUBSCRIPTIONUID, _TAGUID };
+    public static final String SQL_CREATE_TABLE = "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" + _SUBSCRIPTIONID
+            + " INTEGER," + _TAGID + " INTEGER, PRIMARY KEY (" + _SUBSCRIPTIONID + "," + _TAGID + "))";
+    public static final String[][] INDEX_COLUMNS = { { _TAGID, _SUBSCRIPTIONID } };
 
-    public static final String SQL_CREATE_TABLE = "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" + _SUBSCRIPTIONUID
-            + " TEXT," + _TAGUID + " TEXT, PRIMARY KEY (" + _SUBSCRIPTIONUID + "," + _TAGUID + "))";
-    public static final String[][] INDEX_COLUMNS = { { _SUBSCRIPTIONUID }, { _TAGUID } };
+    /* Layout before DB version 48, which linked uids instead of ids. */
+    static final String LEGACY_TABLE_NAME = TABLE_NAME + "_old";
+    static final String LEGACY_SUBSCRIPTIONUID = "subscriptionUid";
+    static final String LEGACY_TAGUID = "tagUid";
 
     public static SubscriptionTag fromCursor(final Cursor cur) {
-        return new SubscriptionTag(Utils.getStringFromCursor(cur, SubscriptionTag._SUBSCRIPTIONUID),
-                Utils.getStringFromCursor(cur, SubscriptionTag._TAGUID));
+        return new SubscriptionTag(Utils.getLongFromCursor(cur, _SUBSCRIPTIONID), Utils.getLongFromCursor(cur, _TAGID));
     }
 
-    private String subscriptionUid;
-    private String tagUid;
+    private long subscriptionId;
+    private long tagId;
 
     public SubscriptionTag() {
-        init(null, null);
+        init(0, 0);
     }
 
-    public SubscriptionTag(final String subscriptionUid, final String tagUid) {
-        init(subscriptionUid, tagUid);
+    public SubscriptionTag(final long subscriptionId, final long tagId) {
+        init(subscriptionId, tagId);
     }
 
     @Override
     public void clear() {
-        init(null, null);
+        init(0, 0);
     }
 
-    public String getSubscriptionUid() {
-        return subscriptionUid;
+    public long getSubscriptionId() {
+        return subscriptionId;
     }
 
-    public String getTagUid() {
-        return tagUid;
+    public long getTagId() {
+        return tagId;
     }
 
-    private void init(final String subscriptionUid, final String tagUid) {
-        this.subscriptionUid = subscriptionUid;
-        this.tagUid = tagUid;
+    private void init(final long subscriptionId, final long tagId) {
+        this.subscriptionId = subscriptionId;
+        this.tagId = tagId;
     }
 
-    public void setSubscriptionUid(final String subscriptionUid) {
-        this.subscriptionUid = subscriptionUid;
+    public void setSubscriptionId(final long subscriptionId) {
+        this.subscriptionId = subscriptionId;
     }
 
-    public void setTagUid(final String tagUid) {
-        this.tagUid = tagUid;
+    public void setTagId(final long tagId) {
+        this.tagId = tagId;
     }
 
     @Override
     public ContentValues toContentValues() {
         final ContentValues ret = new ContentValues(2);
-        ret.put(_SUBSCRIPTIONUID, subscriptionUid);
-        ret.put(_TAGUID, tagUid);
+        ret.put(_SUBSCRIPTIONID, subscriptionId);
+        ret.put(_TAGID, tagId);
         return ret;
     }
 
     @Override
     public ContentValues toUpdateContentValues() {
-        final ContentValues ret = new ContentValues();
-        return ret;
+        return new ContentValues();
     }
 }
@@ -30,7 +30,9 @@ public class Tag implements Entity {
     public static final String[] COLUMNS = { _UID, _UNREADCOUNT, _UPDATETIME, _SORTID };
     public static final String[] COLUMNS_TYPE = { "TEXT PRIMARY KEY", "INTEGER NOT NULL DEFAULT 0",
             "INTEGER NOT NULL DEFAULT 0", "TEXT", "INTEGER NOT NULL DEFAULT 0" };
-    public static final String[][] INDEX_COLUMNS = { { _UID }, { _UPDATETIME } };
+    public static final String[] INSERT_COLUMNS = { _UID, _UPDATETIME, _SORTID };
+    public static final String[] UPDATE_COLUMNS = { _UPDATETIME, _SORTID };
+    public static final String[][] INDEX_COLUMNS = { { _UPDATETIME } };
 
     public static Tag fromCursor(final Cursor cur) {
         return new Tag(Utils.getStringFromCursor(cur, _UID), Utils.getIntFromCursor(cur, _UNREADCOUNT),
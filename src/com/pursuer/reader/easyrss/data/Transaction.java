@@ -35,7 +35,7 @@ public class Transaction implements Entity {
     public static final String[] COLUMNS = { _ID, _UID, _TYPE, _CONTENT };
     public static final String[] COLUMNS_TYPE = { "INTEGER PRIMARY KEY AUTOINCREMENT", "TEXT NOT NULL",
             "INTEGER NOT NULL", "TEXT" };
-    public static final String[][] INDEX_COLUMNS = { { _UID }, { _UID, _TYPE } };
+    public static final String[][] INDEX_COLUMNS = { { _UID, _TYPE } };
 
     public static Transaction fromCursor(final Cursor cur) {
         return new Transaction(Utils.getLongFromCursor(cur, _ID), Utils.getStringFromCursor(cur, _UID),
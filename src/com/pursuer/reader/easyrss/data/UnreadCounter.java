@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Pursuer (http://pursuer.me).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Pursuer - initial API and implementation
+ ******************************************************************************/
+
+package com.pursuer.reader.easyrss.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/*
+ * Keeps the exact number of local unread items per stream (tag, subscription,
+ * and UID_GLOBAL for all items) in the unreadCounts table.
+ *
+ * Writers stage the items they are going to touch, then call count() and
+ * apply(-1) before the change, and count() and apply(1) after it. The
+ * difference is applied with a few aggregated statements. Must be used inside a
+ * transaction and closed afterwards; only one counter may be open at a time.
+ */
+final class UnreadCounter {
+    public static final String TABLE_NAME = "unreadCounts";
+
+    public static final String _UID = "uid";
+    public static final String _UNREADCOUNT = "unreadCount";
+    public static final String[] COLUMNS = { _UID, _UNREADCOUNT };
+
+    public static final String SQL_CREATE_TABLE = "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" + _UID
+            + " TEXT PRIMARY KEY," + _UNREADCOUNT + " INTEGER NOT NULL DEFAULT 0)";
+
+    public static final String UID_GLOBAL = "";
+
+    public static int getCount(final SQLiteDatabase database, final String uid) {
+        final Cursor cur = database.rawQuery(SQLConstants.SELECT_UNREAD_COUNT, new String[] { uid });
+        final int ret = (cur.moveToFirst()) ? cur.getInt(0) : 0;
+        cur.close();
+        return ret;
+    }
+
+    private static Map<String, Integer> queryCounts(final SQLiteDatabase database, final String sql) {
+        final Map<String, Integer> ret = new HashMap<String, Integer>();
+        final Cursor cur = database.rawQuery(sql, null);
+        for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
+            if (cur.getInt(1) != 0) {
+                ret.put(cur.getString(0), cur.getInt(1));
+            }
+        }
+        cur.close();
+        return ret;
+    }
+
+    /*
+     * Recounts every stream from the items table.
+     */
+    public static void rebuild(final SQLiteDatabase database) {
+        final UnreadCounter counter = new UnreadCounter(database);
+        try {
+            counter.stageWhere(null);
+            counter.count();
+            database.execSQL("DELETE FROM " + TABLE_NAME);
+            database.execSQL(SQLConstants.INSERT_UNREAD_COUNTS);
+        } finally {
+            counter.close();
+        }
+    }
+
+    /*
+     * Return: whether the stored counts were right. The wrong ones are set to
+     * the recounted values.
+     */
+    public static boolean verify(final SQLiteDatabase database) {
+        final UnreadCounter counter = new UnreadCounter(database);
+        boolean ret;
+        try {
+            counter.stageWhere(null);
+            counter.count();
+            final Map<String, Integer> expected = queryCounts(database,
+                    "SELECT uid,SUM(unreadCount) FROM stagedCounts GROUP BY uid");
+            final Map<String, Integer> stored = queryCounts(database, "SELECT " + _UID + "," + _UNREADCOUNT
+                    + " FROM " + TABLE_NAME);
+            ret = expected.equals(stored);
+            if (!ret) {
+                final Set<String> uids = new HashSet<String>(expected.keySet());
+                uids.addAll(stored.keySet());
+                final SQLiteStatement statement = database
+                        .compileStatement(SQLConstants.INSERT_OR_REPLACE_UNREAD_COUNT);
+                try {
+                    for (final String uid : uids) {
+                        final Integer count = expected.get(uid);
+                        if (count == null || !count.equals(stored.get(uid))) {
+                            statement.bindString(1, uid);
+                            statement.bindLong(2, (count == null) ? 0 : count);
+                            statement.execute();
+                        }
+                    }
+                } finally {
+                    statement.close();
+                }
+            }
+        } finally {
+            counter.close();
+        }
+        return ret;
+    }
+
+    final private SQLiteDatabase database;
+
+    public UnreadCounter(final SQLiteDatabase database) {
+        this.database = database;
+        database.execSQL(SQLConstants.CREATE_STAGED_ITEMS);
+        database.execSQL(SQLConstants.CREATE_STAGED_COUNTS);
+        database.execSQL(SQLConstants.CLEAR_STAGED_ITEMS);
+        database.execSQL(SQLConstants.CLEAR_STAGED_COUNTS);
+    }
+
+    /*
+     * Adds the counted deltas to the local counters, with sign 1 or -1.
+     */
+    public void apply(final int sign) {
+        database.execSQL(SQLConstants.INSERT_STAGED_UNREAD_COUNTS);
+        database.execSQL(SQLConstants.APPLY_STAGED_UNREAD_COUNTS, new Object[] { sign });
+    }
+
+    /*
+     * Adds the counted deltas to the unread counts reported by the server
+     * (tags, subscriptions and the global setting), with sign 1 or -1.
+     */
+    public void applyToServerCounts(final int sign) {
+        final Object[] args = new Object[] { sign };
+        database.execSQL(SQLConstants.UPDATE_STAGED_TAG_COUNTS, args);
+        database.execSQL(SQLConstants.UPDATE_STAGED_SUBSCRIPTION_COUNTS, args);
+        database.execSQL(SQLConstants.UPDATE_STAGED_GLOBAL_COUNT, args);
+    }
+
+    public void close() {
+        database.execSQL(SQLConstants.CLEAR_STAGED_ITEMS);
+        database.execSQL(SQLConstants.CLEAR_STAGED_COUNTS);
+    }
+
+    /*
+     * Counts the unread items among the staged ones, per stream.
+     */
+    public void count() {
+        database.execSQL(SQLConstants.CLEAR_STAGED_COUNTS);
+        database.execSQL(SQLConstants.INSERT_STAGED_TAG_COUNTS);
+        database.execSQL(SQLConstants.INSERT_STAGED_SUBSCRIPTION_COUNTS);
+        database.execSQL(SQLConstants.INSERT_STAGED_GLOBAL_COUNT);
+    }
+
+    /*
+     * Return: uids of the streams having staged unread items, UID_GLOBAL
+     * excluded.
+     */
+    public List<String> getCountedUids() {
+        final List<String> ret = new ArrayList<String>();
+        final Cursor cur = database.rawQuery(SQLConstants.SELECT_STAGED_COUNTS, null);
+        for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
+            final String uid = cur.getString(0);
+            if (!UID_GLOBAL.equals(uid)) {
+                ret.add(uid);
+            }
+        }
+        cur.close();
+        return ret;
+    }
+
+    /*
+     * Drops the staged items whose isRead differs from the given one.
+     */
+    public void retain(final boolean isRead) {
+        database.execSQL(SQLConstants.RETAIN_STAGED_ITEMS, new Object[] { isRead ? 1 : 0 });
+    }
+
+    public void stage(final Collection<String> uids) {
+        final SQLiteStatement statement = database.compileStatement(SQLConstants.INSERT_STAGED_ITEM);
+        try {
+            for (final String uid : uids) {
+                statement.bindString(1, uid);
+                statement.execute();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    /*
+     * Stages the unread items matching the selection, or all unread items if
+     * it is null.
+     */
+    public void stageWhere(final String selection) {
+        final StringBuilder builder = new StringBuilder(128);
+        builder.append("INSERT OR IGNORE INTO stagedItems SELECT ");
+        builder.append(Item._UID);
+        builder.append(" FROM ");
+        builder.append(Item.TABLE_NAME);
+        builder.append(" WHERE ");
+        builder.append(ItemState._ISREAD);
+        builder.append("=0");
+        if (selection != null) {
+            builder.append(" AND (");
+            builder.append(selection);
+            builder.append(')');
+        }
+        database.execSQL(builder.toString());
+    }
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Pursuer (http://pursuer.me).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Pursuer - initial API and implementation
+ ******************************************************************************/
+
+package com.pursuer.reader.easyrss.data;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Collects what a write changed, keyed by uid, so that listeners get one
+ * deduplicated notification per batch instead of one message per row.
+ */
+final class UpdateBatch {
+    final private Map<String, Item> items;
+    final private Set<String> settings;
+    final private Map<String, Subscription> subscriptions;
+    final private Set<String> subscriptionUids;
+    final private Map<String, Tag> tags;
+    final private Set<String> tagUids;
+    private int depth;
+
+    public UpdateBatch() {
+        this.items = new LinkedHashMap<String, Item>();
+        this.settings = new LinkedHashSet<String>();
+        this.subscriptions = new LinkedHashMap<String, Subscription>();
+        this.subscriptionUids = new LinkedHashSet<String>();
+        this.tags = new LinkedHashMap<String, Tag>();
+        this.tagUids = new LinkedHashSet<String>();
+        this.depth = 0;
+    }
+
+    public void addItem(final Item item) {
+        items.put(item.getUid(), item);
+    }
+
+    public void addSetting(final String name) {
+        settings.add(name);
+    }
+
+    public void addSubscription(final Subscription sub) {
+        subscriptions.put(sub.getUid(), sub);
+        subscriptionUids.remove(sub.getUid());
+    }
+
+    /*
+     * The subscription will be loaded from database when the batch is flushed.
+     */
+    public void addSubscriptionUid(final String uid) {
+        if (!subscriptions.containsKey(uid)) {
+            subscriptionUids.add(uid);
+        }
+    }
+
+    public void addTag(final Tag tag) {
+        tags.put(tag.getUid(), tag);
+        tagUids.remove(tag.getUid());
+    }
+
+    /*
+     * The tag will be loaded from database when the batch is flushed.
+     */
+    public void addTagUid(final String uid) {
+        if (!tags.containsKey(uid)) {
+            tagUids.add(uid);
+        }
+    }
+
+    public void enter() {
+        depth++;
+    }
+
+    public Collection<Item> getItems() {
+        return Collections.unmodifiableCollection(items.values());
+    }
+
+    public Collection<String> getSettings() {
+        return Collections.unmodifiableCollection(settings);
+    }
+
+    public Collection<Subscription> getSubscriptions() {
+        return Collections.unmodifiableCollection(subscriptions.values());
+    }
+
+    public Collection<String> getSubscriptionUids() {
+        return subscriptionUids;
+    }
+
+    public Collection<Tag> getTags() {
+        return Collections.unmodifiableCollection(tags.values());
+    }
+
+    public Collection<String> getTagUids() {
+        return tagUids;
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty() && settings.isEmpty() && subscriptions.isEmpty() && tags.isEmpty();
+    }
+
+    /*
+     * Return: whether the outermost level of the batch is left.
+     */
+    public boolean leave() {
+        depth--;
+        return (depth == 0);
+    }
+}
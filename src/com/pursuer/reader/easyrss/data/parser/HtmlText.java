@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Pursuer (http://pursuer.me).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Pursuer - initial API and implementation
+ ******************************************************************************/
+
+package com.pursuer.reader.easyrss.data.parser;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Turns the HTML of titles and names into plain text, as Html.fromHtml() does
+ * for them, without building a Spanned: tags are dropped, entities decoded and
+ * white spaces collapsed.
+ */
+final class HtmlText {
+    /* The HTML 4 Latin-1 entities, for the chars from U+00A0 on. */
+    final private static String[] LATIN1_ENTITY_NAMES = { "nbsp", "iexcl", "cent", "pound", "curren", "yen", "brvbar",
+            "sect", "uml", "copy", "ordf", "laquo", "not", "shy", "reg", "macr", "deg", "plusmn", "sup2", "sup3",
+            "acute", "micro", "para", "middot", "cedil", "sup1", "ordm", "raquo", "frac14", "frac12", "frac34",
+            "iquest", "Agrave", "Aacute", "Acirc", "Atilde", "Auml", "Aring", "AElig", "Ccedil", "Egrave", "Eacute",
+            "Ecirc", "Euml", "Igrave", "Iacute", "Icirc", "Iuml", "ETH", "Ntilde", "Ograve", "Oacute", "Ocirc",
+            "Otilde", "Ouml", "times", "Oslash", "Ugrave", "Uacute", "Ucirc", "Uuml", "Yacute", "THORN", "szlig",
+            "agrave", "aacute", "acirc", "atilde", "auml", "aring", "aelig", "ccedil", "egrave", "eacute", "ecirc",
+            "euml", "igrave", "iacute", "icirc", "iuml", "eth", "ntilde", "ograve", "oacute", "ocirc", "otilde", "ouml",
+            "divide", "oslash", "ugrave", "uacute", "ucirc", "uuml", "yacute", "thorn", "yuml" };
+    /* The other entities looked up. */
+    final private static String[] ENTITY_NAMES = { "amp", "lt", "gt", "quot", "apos", "OElig", "oelig", "Scaron",
+            "scaron", "Yuml", "circ", "tilde", "ensp", "emsp", "thinsp", "zwnj", "zwj", "lrm", "rlm", "ndash", "mdash",
+            "lsquo", "rsquo", "sbquo", "ldquo", "rdquo", "bdquo", "dagger", "Dagger", "bull", "hellip", "permil",
+            "lsaquo", "rsaquo", "euro", "trade" };
+    final private static char[] ENTITY_CHARS = { '&', '<', '>', '"', '\'', '\u0152', '\u0153', '\u0160', '\u0161',
+            '\u0178', '\u02C6', '\u02DC', '\u2002', '\u2003', '\u2009', '\u200C', '\u200D', '\u200E', '\u200F',
+            '\u2013', '\u2014', '\u2018', '\u2019', '\u201A', '\u201C', '\u201D', '\u201E', '\u2020', '\u2021',
+            '\u2022', '\u2026', '\u2030', '\u2039', '\u203A', '\u20AC', '\u2122' };
+    final private static Map<String, Character> ENTITIES = new HashMap<String, Character>();
+    /* Longer references are not looked up. */
+    final private static int MAX_ENTITY_LENGTH = 10;
+
+    static {
+        for (int i = 0; i < LATIN1_ENTITY_NAMES.length; i++) {
+            ENTITIES.put(LATIN1_ENTITY_NAMES[i], (char) (0xA0 + i));
+        }
+        for (int i = 0; i < ENTITY_NAMES.length; i++) {
+            ENTITIES.put(ENTITY_NAMES[i], ENTITY_CHARS[i]);
+        }
+    }
+
+    /*
+     * Return: the index past the entity starting at start (at the '&'), or
+     * start if there is no entity known there. The char is appended.
+     */
+    private static int appendEntity(final String html, final int start, final StringBuilder builder) {
+        final int end = html.indexOf(';', start + 1);
+        if (end == -1 || end - start - 1 > MAX_ENTITY_LENGTH || end == start + 1) {
+            return start;
+        }
+        if (html.charAt(start + 1) == '#') {
+            final boolean isHex = (end > start + 2 && (html.charAt(start + 2) == 'x' || html.charAt(start + 2) == 'X'));
+            final int radix = isHex ? 16 : 10;
+            int code = 0;
+            for (int i = start + (isHex ? 3 : 2); i < end; i++) {
+                final int digit = Character.digit(html.charAt(i), radix);
+                if (digit == -1 || code > 0x10FFFF) {
+                    return start;
+                }
+                code = code * radix + digit;
+            }
+            if (end == start + (isHex ? 3 : 2) || code > 0x10FFFF) {
+                return start;
+            }
+            if (code >= 0x10000) {
+                builder.append(Character.toChars(code));
+            } else {
+                builder.append((char) code);
+            }
+            return end + 1;
+        }
+        final Character entity = ENTITIES.get(html.substring(start + 1, end));
+        if (entity == null) {
+            return start;
+        }
+        builder.append(entity.charValue());
+        return end + 1;
+    }
+
+    /*
+     * Return: the index of the '>' closing the tag starting at start (at the
+     * '<'), or -1 if the '<' is a char of the text, as in "a < b" or "x<y".
+     */
+    private static int findTagEnd(final String html, final int start) {
+        if (start + 1 >= html.length()) {
+            return -1;
+        }
+        final char next = html.charAt(start + 1);
+        if (!Character.isLetter(next) && next != '/' && next != '!' && next != '?') {
+            return -1;
+        }
+        return html.indexOf('>', start + 2);
+    }
+
+    /*
+     * Return: whether the text has neither markup, entities nor white spaces to
+     * collapse, so that it is returned as is.
+     */
+    public static boolean isPlain(final String html) {
+        for (int i = 0; i < html.length(); i++) {
+            final char ch = html.charAt(i);
+            if (ch == '&' || ch == '<' || ch == '\n' || ch == '\r' || ch == '\t'
+                    || (ch == ' ' && i > 0 && html.charAt(i - 1) == ' ')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static String toPlainText(final String html) {
+        if (html == null || isPlain(html)) {
+            return html;
+        }
+        final StringBuilder builder = new StringBuilder(html.length());
+        boolean isSpace = false;
+        int pos = 0;
+        while (pos < html.length()) {
+            final char ch = html.charAt(pos);
+            final int tagEnd = (ch == '<') ? findTagEnd(html, pos) : -1;
+            if (tagEnd != -1) {
+                pos = tagEnd + 1;
+            } else if (Character.isWhitespace(ch)) {
+                if (!isSpace) {
+                    builder.append(' ');
+                    isSpace = true;
+                }
+                pos++;
+            } else {
+                isSpace = false;
+                final int next = (ch == '&') ? appendEntity(html, pos, builder) : pos;
+                if (next == pos) {
+                    builder.append(ch);
+                    pos++;
+                } else {
+                    pos = next;
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    private HtmlText() {
+    }
+}
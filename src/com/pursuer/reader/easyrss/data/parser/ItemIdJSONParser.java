@@ -13,24 +13,27 @@ package com.pursuer.reader.easyrss.data.parser;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Map;
 
-import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.pursuer.reader.easyrss.data.ItemId;
 
 public class ItemIdJSONParser {
+    final private static int FIELD_ID = 0;
+    final private static int FIELD_TIMESTAMPUSEC = 1;
+    final private static Map<String, Integer> FIELDS = JSONParserUtils.createFieldMap("id", "timestampUsec");
+
     final private JsonParser parser;
     private OnItemIdRetrievedListener listener;
 
     public ItemIdJSONParser(final byte[] input) throws JsonParseException, IOException {
-        final JsonFactory factory = new JsonFactory();
-        this.parser = factory.createJsonParser(input);
+        this.parser = JSONParserUtils.createParser(input);
     }
 
     public ItemIdJSONParser(final InputStream input) throws JsonParseException, IOException {
-        final JsonFactory factory = new JsonFactory();
-        this.parser = factory.createJsonParser(input);
+        this.parser = JSONParserUtils.createParser(input);
     }
 
     public OnItemIdRetrievedListener getListener() {
@@ -40,35 +43,44 @@ public class ItemIdJSONParser {
     public void parse() throws JsonParseException, IOException {
         ItemId itemId = new ItemId();
         int level = 0;
-        while (parser.nextToken() != null) {
-            final String name = parser.getCurrentName();
-            switch (parser.getCurrentToken()) {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            switch (token) {
             case START_OBJECT:
             case START_ARRAY:
-                level++;
+                if (level == 3) {
+                    parser.skipChildren();
+                } else {
+                    level++;
+                }
                 break;
             case END_OBJECT:
             case END_ARRAY:
                 level--;
+                if (level == 2 && itemId.getUid() != null) {
+                    if (listener != null) {
+                        listener.onItemIdRetrieved(itemId);
+                    }
+                    /* Not reused, the listener may keep it. */
+                    itemId = new ItemId();
+                }
                 break;
             case VALUE_STRING:
                 if (level == 3) {
-                    if ("id".equals(name)) {
+                    switch (JSONParserUtils.getField(FIELDS, parser.getCurrentName())) {
+                    case FIELD_ID:
                         itemId.setUid(Long.toHexString(Long.valueOf(parser.getText())));
-                    } else if ("timestampUsec".equals(name)) {
+                        break;
+                    case FIELD_TIMESTAMPUSEC:
                         itemId.setTimestamp(Long.valueOf(parser.getText()));
+                        break;
+                    default:
                     }
                 }
                 break;
             default:
                 break;
             }
-            if (level == 2) {
-                if (itemId.getUid() != null && listener != null) {
-                    listener.onItemIdRetrieved(itemId);
-                }
-                itemId = new ItemId();
-            }
         }
         parser.close();
     }
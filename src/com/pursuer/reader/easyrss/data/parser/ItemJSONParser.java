@@ -11,30 +11,71 @@
 
 package com.pursuer.reader.easyrss.data.parser;
 
+import java.io.CharArrayReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Map;
 
-import android.text.Html;
-
-import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
 import com.pursuer.reader.easyrss.data.DataUtils;
 import com.pursuer.reader.easyrss.data.Item;
 
+/*
+ * With a content listener set, the content of each item is handed to it as it
+ * is parsed (straight from the buffer of the parser), instead of being kept by
+ * the item as a string.
+ */
 public class ItemJSONParser {
+    final private static int FIELD_ALTERNATE = 0;
+    final private static int FIELD_AUTHOR = 1;
+    final private static int FIELD_CATEGORIES = 2;
+    final private static int FIELD_CONTENT = 3;
+    final private static int FIELD_CONTINUATION = 4;
+    final private static int FIELD_HREF = 5;
+    final private static int FIELD_ID = 6;
+    final private static int FIELD_ITEMS = 7;
+    final private static int FIELD_ORIGIN = 8;
+    final private static int FIELD_STREAMID = 9;
+    final private static int FIELD_SUMMARY = 10;
+    final private static int FIELD_TIMESTAMPUSEC = 11;
+    final private static int FIELD_TITLE = 12;
+    final private static Map<String, Integer> FIELDS = JSONParserUtils.createFieldMap("alternate", "author",
+            "categories", "content", "continuation", "href", "id", "items", "origin", "streamId", "summary",
+            "timestampUsec", "title");
+
+    /*
+     * Return: whether the object or array of the field of an item is parsed,
+     * or skipped as a whole.
+     */
+    private static boolean isParsedInItem(final int field) {
+        switch (field) {
+        case FIELD_ALTERNATE:
+        case FIELD_CONTENT:
+        case FIELD_ORIGIN:
+        case FIELD_SUMMARY:
+            return true;
+        default:
+            return false;
+        }
+    }
+
     final private JsonParser parser;
+    private OnItemContentRetrievedListener contentListener;
     private OnItemRetrievedListener listener;
 
     public ItemJSONParser(final byte[] input) throws JsonParseException, IOException {
-        final JsonFactory factory = new JsonFactory();
-        this.parser = factory.createJsonParser(input);
+        this.parser = JSONParserUtils.createParser(input);
     }
 
     public ItemJSONParser(final InputStream input) throws JsonParseException, IOException {
-        final JsonFactory factory = new JsonFactory();
-        this.parser = factory.createJsonParser(input);
+        this.parser = JSONParserUtils.createParser(input);
+    }
+
+    public OnItemContentRetrievedListener getContentListener() {
+        return contentListener;
     }
 
     public OnItemRetrievedListener getListener() {
@@ -43,51 +84,93 @@ public class ItemJSONParser {
 
     public void parse() throws JsonParseException, IOException {
         Item item = new Item();
+        boolean isContentRetrieved = false;
         int level = 0;
         boolean found = false;
-        while (parser.nextToken() != null) {
-            final String name = parser.getCurrentName();
-            switch (parser.getCurrentToken()) {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            final int field = JSONParserUtils.getField(FIELDS, parser.getCurrentName());
+            switch (token) {
             case START_OBJECT:
             case START_ARRAY:
-                level++;
+                if (level == 3 && !isParsedInItem(field)) {
+                    parser.skipChildren();
+                } else {
+                    level++;
+                }
                 break;
             case END_OBJECT:
             case END_ARRAY:
                 level--;
+                if (level == 2) {
+                    if (item.getUid() == null) {
+                        item.clear();
+                        break;
+                    }
+                    if (contentListener != null && !isContentRetrieved) {
+                        /* The content came before the id, or there is none. */
+                        final String content = item.getContent();
+                        contentListener.onItemContentRetrieved(item, new StringReader((content == null) ? ""
+                                : content));
+                        item.setContent(null);
+                    }
+                    if (listener != null) {
+                        listener.onItemRetrieved(item);
+                    }
+                    /* Not reused, the listener may keep it. */
+                    item = new Item();
+                    isContentRetrieved = false;
+                }
                 break;
             case VALUE_STRING:
-                if (level == 1 && "continuation".equals(name)) {
-                    if (listener != null) {
+                if (level == 1) {
+                    if (field == FIELD_CONTINUATION && listener != null) {
                         listener.onListContinuationRetrieved(parser.getText());
                     }
                 } else if (level == 3) {
-                    if ("id".equals(name)) {
+                    switch (field) {
+                    case FIELD_ID:
                         final String text = parser.getText();
                         item.setUid(text.substring(text.lastIndexOf('/') + 1));
-                    } else if ("title".equals(name)) {
-                        item.setTitle(Html.fromHtml(parser.getText()).toString());
-                    } else if ("timestampUsec".equals(name)) {
+                        break;
+                    case FIELD_TITLE:
+                        item.setTitle(HtmlText.toPlainText(parser.getText()));
+                        break;
+                    case FIELD_TIMESTAMPUSEC:
                         item.setTimestamp(Long.valueOf(parser.getText()));
-                    } else if ("author".equals(name)) {
-                        item.setAuthor(Html.fromHtml(parser.getText()).toString());
+                        break;
+                    case FIELD_AUTHOR:
+                        item.setAuthor(HtmlText.toPlainText(parser.getText()));
+                        break;
+                    default:
                     }
                 } else if (level == 4) {
-                    if ("content".equals(name)) {
-                        item.setContent(parser.getText());
-                    } else if ("streamId".equals(name)) {
+                    switch (field) {
+                    case FIELD_CONTENT:
+                        if (contentListener != null && item.getUid() != null) {
+                            contentListener.onItemContentRetrieved(item, new CharArrayReader(
+                                    parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength()));
+                            isContentRetrieved = true;
+                        } else {
+                            item.setContent(parser.getText());
+                        }
+                        break;
+                    case FIELD_STREAMID:
                         item.setSourceUri(parser.getText());
-                    } else if ("title".equals(name)) {
-                        item.setSourceTitle(Html.fromHtml(parser.getText()).toString());
+                        break;
+                    case FIELD_TITLE:
+                        item.setSourceTitle(HtmlText.toPlainText(parser.getText()));
+                        break;
+                    default:
                     }
-                } else if (level == 5 && "href".equals(name)) {
+                } else if (level == 5 && field == FIELD_HREF) {
                     item.setHref(parser.getText());
                 }
                 break;
             case FIELD_NAME:
-                if (level == 1 && "items".equals(name)) {
+                if (level == 1 && field == FIELD_ITEMS) {
                     found = true;
-                } else if (level == 3 && "categories".equals(name)) {
+                } else if (level == 3 && field == FIELD_CATEGORIES) {
                     parser.nextToken();
                     if (parser.getCurrentToken() == JsonToken.START_ARRAY) {
                         while (parser.nextToken() != JsonToken.END_ARRAY) {
@@ -102,23 +185,14 @@ public class ItemJSONParser {
                                 }
                             }
                         }
-                    }
-                } else if (level == 3 && "enclosure".equals(name)) {
-                    parser.nextToken();
-                    if (parser.getCurrentToken() == JsonToken.START_ARRAY) {
-                        while (parser.nextToken() != JsonToken.END_ARRAY) {
-                        }
+                    } else {
+                        parser.skipChildren();
                     }
                 }
+                break;
             default:
                 break;
             }
-            if (level == 2) {
-                if (item.getUid() != null && listener != null) {
-                    listener.onItemRetrieved(item);
-                }
-                item = new Item();
-            }
         }
         parser.close();
         if (!found) {
@@ -131,6 +205,10 @@ public class ItemJSONParser {
         parse();
     }
 
+    public void setContentListener(final OnItemContentRetrievedListener contentListener) {
+        this.contentListener = contentListener;
+    }
+
     public void setListener(final OnItemRetrievedListener listener) {
         this.listener = listener;
     }
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Pursuer (http://pursuer.me).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Pursuer - initial API and implementation
+ ******************************************************************************/
+
+package com.pursuer.reader.easyrss.data.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+
+/*
+ * The parsers share a single JsonFactory, which is thread-safe once configured
+ * and keeps the symbol table of the field names across them. Field names come
+ * out of it interned, so that they are looked up by identity.
+ */
+final class JSONParserUtils {
+    final public static int FIELD_UNKNOWN = -1;
+
+    final private static JsonFactory FACTORY = new JsonFactory().enable(JsonFactory.Feature.CANONICALIZE_FIELD_NAMES)
+            .enable(JsonFactory.Feature.INTERN_FIELD_NAMES);
+
+    public static JsonParser createParser(final byte[] input) throws JsonParseException, IOException {
+        return FACTORY.createJsonParser(input);
+    }
+
+    public static JsonParser createParser(final InputStream input) throws JsonParseException, IOException {
+        return FACTORY.createJsonParser(input);
+    }
+
+    /*
+     * names: literals, which are interned. Each one is mapped to its index.
+     */
+    public static Map<String, Integer> createFieldMap(final String... names) {
+        final Map<String, Integer> ret = new IdentityHashMap<String, Integer>(names.length * 2);
+        for (int i = 0; i < names.length; i++) {
+            ret.put(names[i], i);
+        }
+        return ret;
+    }
+
+    /*
+     * Return: the index of the field name, or FIELD_UNKNOWN.
+     */
+    public static int getField(final Map<String, Integer> fields, final String name) {
+        final Integer ret = fields.get(name);
+        return (ret == null) ? FIELD_UNKNOWN : ret;
+    }
+
+    private JSONParserUtils() {
+    }
+}
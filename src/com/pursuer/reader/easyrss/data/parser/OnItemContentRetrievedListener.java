@@ -0,0 +1,24 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Pursuer (http://pursuer.me).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Pursuer - initial API and implementation
+ ******************************************************************************/
+
+package com.pursuer.reader.easyrss.data.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import com.pursuer.reader.easyrss.data.Item;
+
+public interface OnItemContentRetrievedListener {
+    /*
+     * content: valid only until the method returns.
+     */
+    void onItemContentRetrieved(Item item, Reader content) throws IOException;
+}
@@ -13,15 +13,24 @@ package com.pursuer.reader.easyrss.data.parser;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Map;
 
-import android.text.Html;
-
-import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.pursuer.reader.easyrss.data.Subscription;
 
 public class SubscriptionJSONParser {
+    final private static int FIELD_CATEGORIES = 0;
+    final private static int FIELD_FIRSTITEMMSEC = 1;
+    final private static int FIELD_HTMLURL = 2;
+    final private static int FIELD_ID = 3;
+    final private static int FIELD_SORTID = 4;
+    final private static int FIELD_SUBSCRIPTIONS = 5;
+    final private static int FIELD_TITLE = 6;
+    final private static Map<String, Integer> FIELDS = JSONParserUtils.createFieldMap("categories",
+            "firstitemmsec", "htmlUrl", "id", "sortid", "subscriptions", "title");
+
     final private InputStream input;
     private OnSubscriptionRetrievedListener listener;
 
@@ -38,52 +47,64 @@ public class SubscriptionJSONParser {
     }
 
     public void parse() throws JsonParseException, IOException, IllegalStateException {
-        final JsonFactory factory = new JsonFactory();
-        final JsonParser parser = factory.createJsonParser(input);
+        final JsonParser parser = JSONParserUtils.createParser(input);
         Subscription sub = new Subscription();
         int level = 0;
         boolean found = false;
-        while (parser.nextToken() != null) {
-            final String name = parser.getCurrentName();
-            switch (parser.getCurrentToken()) {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            final int field = JSONParserUtils.getField(FIELDS, parser.getCurrentName());
+            switch (token) {
             case START_OBJECT:
             case START_ARRAY:
-                level++;
+                if (level == 3 && field != FIELD_CATEGORIES) {
+                    parser.skipChildren();
+                } else {
+                    level++;
+                }
                 break;
             case END_OBJECT:
             case END_ARRAY:
                 level--;
+                if (level == 2 && sub.getUid() != null) {
+                    if (listener != null) {
+                        listener.onSubscriptionRetrieved(sub);
+                    }
+                    /* Not reused, the listener may keep it. */
+                    sub = new Subscription();
+                }
                 break;
             case VALUE_STRING:
                 if (level == 3) {
-                    if ("id".equals(name)) {
+                    switch (field) {
+                    case FIELD_ID:
                         sub.setUid(parser.getText());
-                    } else if ("htmlUrl".equals(name)) {
+                        break;
+                    case FIELD_HTMLURL:
                         sub.setUrl(parser.getText());
-                    } else if ("title".equals(name)) {
-                        sub.setTitle(Html.fromHtml(parser.getText()).toString());
-                    } else if ("sortid".equals(name)) {
+                        break;
+                    case FIELD_TITLE:
+                        sub.setTitle(HtmlText.toPlainText(parser.getText()));
+                        break;
+                    case FIELD_SORTID:
                         sub.setSortId(parser.getText());
-                    } else if ("firstitemmsec".equals(name)) {
+                        break;
+                    case FIELD_FIRSTITEMMSEC:
                         sub.setFirstItemMsec(Long.valueOf(parser.getText()));
+                        break;
+                    default:
                     }
-                } else if (level == 5 && "id".equals(name)) {
+                } else if (level == 5 && field == FIELD_ID) {
                     sub.addTag(parser.getText());
                 }
                 break;
             case FIELD_NAME:
-                if (level == 1 && "subscriptions".equals(name)) {
+                if (level == 1 && field == FIELD_SUBSCRIPTIONS) {
                     found = true;
                 }
                 break;
             default:
             }
-            if (level == 2) {
-                if (sub.getUid() != null && listener != null) {
-                    listener.onSubscriptionRetrieved(sub);
-                }
-                sub = new Subscription();
-            }
         }
         parser.close();
         if (!found) {
@@ -13,13 +13,19 @@ package com.pursuer.reader.easyrss.data.parser;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Map;
 
-import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.pursuer.reader.easyrss.data.Tag;
 
 public class TagJSONParser {
+    final private static int FIELD_ID = 0;
+    final private static int FIELD_SORTID = 1;
+    final private static int FIELD_TAGS = 2;
+    final private static Map<String, Integer> FIELDS = JSONParserUtils.createFieldMap("id", "sortid", "tags");
+
     final private InputStream input;
     private OnTagRetrievedListener listener;
 
@@ -36,42 +42,53 @@ public class TagJSONParser {
     }
 
     public void parse() throws JsonParseException, IOException, IllegalStateException {
-        final JsonFactory factory = new JsonFactory();
-        final JsonParser parser = factory.createJsonParser(input);
+        final JsonParser parser = JSONParserUtils.createParser(input);
         Tag tag = new Tag();
         int level = 0;
         boolean found = false;
-        while (parser.nextToken() != null) {
-            final String name = parser.getCurrentName();
-            switch (parser.getCurrentToken()) {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            final int field = JSONParserUtils.getField(FIELDS, parser.getCurrentName());
+            switch (token) {
             case START_OBJECT:
             case START_ARRAY:
-                level++;
+                if (level == 3) {
+                    parser.skipChildren();
+                } else {
+                    level++;
+                }
                 break;
             case END_OBJECT:
             case END_ARRAY:
                 level--;
+                if (level == 2 && tag.getUid() != null) {
+                    if (listener != null) {
+                        listener.onTagRetrieved(tag);
+                    }
+                    /* Not reused, the listener may keep it. */
+                    tag = new Tag();
+                }
                 break;
             case VALUE_STRING:
                 if (level == 3) {
-                    if ("id".equals(name)) {
+                    switch (field) {
+                    case FIELD_ID:
                         tag.setUid(parser.getText());
-                    } else if ("sortid".equals(name)) {
+                        break;
+                    case FIELD_SORTID:
                         tag.setSortId(parser.getText());
+                        break;
+                    default:
                     }
                 }
+                break;
             case FIELD_NAME:
-                if (level == 1 && "tags".equals(name)) {
+                if (level == 1 && field == FIELD_TAGS) {
                     found = true;
                 }
+                break;
             default:
             }
-            if (level == 2) {
-                if (tag.getUid() != null && listener != null) {
-                    listener.onTagRetrieved(tag);
-                }
-                tag = new Tag();
-            }
         }
         parser.close();
         if (!found) {
@@ -13,24 +13,30 @@ package com.pursuer.reader.easyrss.data.parser;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Map;
 
-import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.pursuer.reader.easyrss.data.UnreadCount;
 
 public class UnreadCountJSONParser {
+    final private static int FIELD_COUNT = 0;
+    final private static int FIELD_ID = 1;
+    final private static int FIELD_NEWESTITEMTIMESTAMPUSEC = 2;
+    final private static int FIELD_UNREADCOUNTS = 3;
+    final private static Map<String, Integer> FIELDS = JSONParserUtils.createFieldMap("count", "id",
+            "newestItemTimestampUsec", "unreadcounts");
+
     final private JsonParser parser;
     private OnUnreadCountRetrievedListener listener;
 
     public UnreadCountJSONParser(final byte[] content) throws JsonParseException, IOException {
-        final JsonFactory factory = new JsonFactory();
-        this.parser = factory.createJsonParser(content);
+        this.parser = JSONParserUtils.createParser(content);
     }
 
     public UnreadCountJSONParser(final InputStream input) throws JsonParseException, IOException {
-        final JsonFactory factory = new JsonFactory();
-        this.parser = factory.createJsonParser(input);
+        this.parser = JSONParserUtils.createParser(input);
     }
 
     public void setListener(final OnUnreadCountRetrievedListener listener) {
@@ -41,39 +47,54 @@ public class UnreadCountJSONParser {
         UnreadCount count = new UnreadCount();
         int level = 0;
         boolean found = false;
-        while (parser.nextToken() != null) {
-            final String name = parser.getCurrentName();
-            switch (parser.getCurrentToken()) {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            final int field = JSONParserUtils.getField(FIELDS, parser.getCurrentName());
+            switch (token) {
             case START_OBJECT:
             case START_ARRAY:
-                level++;
+                if (level == 3) {
+                    parser.skipChildren();
+                } else {
+                    level++;
+                }
                 break;
             case END_OBJECT:
             case END_ARRAY:
                 level--;
+                if (level == 2 && count.getUid() != null) {
+                    if (listener != null) {
+                        listener.onUnreadCountRetrieved(count);
+                    }
+                    /* Not reused, the listener may keep it. */
+                    count = new UnreadCount();
+                }
                 break;
             case VALUE_NUMBER_INT:
-                if (level == 3 && "count".equals(name)) {
+                if (level == 3 && field == FIELD_COUNT) {
                     count.setCount(parser.getIntValue());
                 }
+                break;
             case VALUE_STRING:
-                if (level == 3 && "id".equals(name)) {
-                    count.setUid(parser.getText());
-                } else if (level == 3 && "newestItemTimestampUsec".equals(name)) {
-                    count.setNewestItemTime(Long.valueOf(parser.getText()));
+                if (level == 3) {
+                    switch (field) {
+                    case FIELD_ID:
+                        count.setUid(parser.getText());
+                        break;
+                    case FIELD_NEWESTITEMTIMESTAMPUSEC:
+                        count.setNewestItemTime(Long.valueOf(parser.getText()));
+                        break;
+                    default:
+                    }
                 }
+                break;
             case FIELD_NAME:
-                if (level == 1 && "unreadcounts".equals(name)) {
+                if (level == 1 && field == FIELD_UNREADCOUNTS) {
                     found = true;
                 }
+                break;
             default:
             }
-            if (level == 2) {
-                if (count.getUid() != null && listener != null) {
-                    listener.onUnreadCountRetrieved(count);
-                }
-                count = new UnreadCount();
-            }
         }
         parser.close();
         if (!found) {
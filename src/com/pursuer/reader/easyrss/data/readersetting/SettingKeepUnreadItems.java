@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Pursuer (http://pursuer.me).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Pursuer - initial API and implementation
+ ******************************************************************************/
+
+package com.pursuer.reader.easyrss.data.readersetting;
+
+import com.pursuer.reader.easyrss.data.DataMgr;
+import com.pursuer.reader.easyrss.data.Setting;
+
+public class SettingKeepUnreadItems extends AbsSetting<Boolean> {
+    private static Boolean value;
+
+    public SettingKeepUnreadItems(final DataMgr dataMgr) {
+        super(dataMgr);
+    }
+
+    @Override
+    protected Boolean getDefault() {
+        return false;
+    }
+
+    @Override
+    protected String getName() {
+        return Setting.SETTING_KEEP_UNREAD_ITEMS;
+    }
+
+    @Override
+    protected Boolean getStaticValue() {
+        return value;
+    }
+
+    @Override
+    protected void setStaticValue(final Boolean value) {
+        SettingKeepUnreadItems.value = value;
+    }
+
+    @Override
+    protected void setStaticValue(final String value) {
+        SettingKeepUnreadItems.value = Boolean.valueOf(value);
+    }
+}
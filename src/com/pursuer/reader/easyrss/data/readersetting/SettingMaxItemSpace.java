@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Pursuer (http://pursuer.me).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Pursuer - initial API and implementation
+ ******************************************************************************/
+
+package com.pursuer.reader.easyrss.data.readersetting;
+
+import com.pursuer.reader.easyrss.data.DataMgr;
+import com.pursuer.reader.easyrss.data.Setting;
+
+public class SettingMaxItemSpace extends AbsSetting<Integer> {
+    private static Integer value;
+
+    public SettingMaxItemSpace(final DataMgr dataMgr) {
+        super(dataMgr);
+    }
+
+    /* In megabytes; 0 for no limit. */
+    @Override
+    protected Integer getDefault() {
+        return 0;
+    }
+
+    @Override
+    protected String getName() {
+        return Setting.SETTING_MAX_ITEM_SPACE;
+    }
+
+    @Override
+    protected Integer getStaticValue() {
+        return value;
+    }
+
+    @Override
+    protected void setStaticValue(final Integer value) {
+        SettingMaxItemSpace.value = value;
+    }
+
+    @Override
+    protected void setStaticValue(final String value) {
+        SettingMaxItemSpace.value = Integer.valueOf(value);
+    }
+}
@@ -31,6 +31,7 @@ public class ListAdapter extends BaseAdapter {
     final private Map<String, Integer> mItems;
     private OnItemTouchListener listener;
     private int fontSize;
+    private boolean notifyOnChange;
 
     public ListAdapter(final Context context, final int fontSize) {
         super();
@@ -39,6 +40,7 @@ public class ListAdapter extends BaseAdapter {
         this.items = new ArrayList<AbsListItem>();
         this.mItems = new HashMap<String, Integer>();
         this.fontSize = fontSize;
+        this.notifyOnChange = true;
         this.onTouchListener = new OnTouchListener() {
             @Override
             public boolean onTouch(final View view, final MotionEvent event) {
@@ -126,6 +128,14 @@ public class ListAdapter extends BaseAdapter {
         this.listener = listener;
     }
 
+    /*
+     * Turn this off while applying a batch of updates, and call
+     * notifyDataSetChanged() once when done.
+     */
+    public void setNotifyOnChange(final boolean notifyOnChange) {
+        this.notifyOnChange = notifyOnChange;
+    }
+
     /*
      * Return: whether item exists.
      */
@@ -146,7 +156,9 @@ public class ListAdapter extends BaseAdapter {
         } else {
             items.set(loc, item);
         }
-        notifyDataSetChanged();
+        if (notifyOnChange) {
+            notifyDataSetChanged();
+        }
         return (loc != null);
     }
 }
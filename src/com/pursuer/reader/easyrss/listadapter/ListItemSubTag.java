@@ -12,10 +12,10 @@
 package com.pursuer.reader.easyrss.listadapter;
 
 import com.pursuer.reader.easyrss.R;
+import com.pursuer.reader.easyrss.data.IconCache;
 
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.util.TypedValue;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -40,7 +40,7 @@ public class ListItemSubTag extends AbsListItem {
         super(id);
 
         this.title = title;
-        this.icon = BitmapFactory.decodeResource(res, iconResId);
+        this.icon = IconCache.getIcon(res, iconResId);
         this.number = number;
     }
 
@@ -22,6 +22,7 @@ import org.apache.http.protocol.HTTP;
 
 import com.pursuer.reader.easyrss.account.ReaderAccountMgr;
 import com.pursuer.reader.easyrss.data.DataMgr;
+import com.pursuer.reader.easyrss.data.HttpValidator;
 import com.pursuer.reader.easyrss.data.readersetting.SettingHttpsConnection;
 import com.pursuer.reader.easyrss.network.NetworkClient.NetworkException;
 import com.pursuer.reader.easyrss.network.url.AbsURL;
@@ -55,16 +56,25 @@ public abstract class AbsDataSyncer {
 
     public static final long TOKEN_EXPIRE_TIME = 2 * 60 * 1000;
 
+    /* The priority classes NetworkMgr runs syncers by, the higher the sooner. */
+    public static final int PRIORITY_BACKGROUND = 0;
+    public static final int PRIORITY_STATE = 1;
+    public static final int PRIORITY_INTERACTIVE = 2;
+    public static final int PRIORITY_COUNT = 3;
+
     final protected DataMgr dataMgr;
     final protected boolean isHttpsConnection;
     final protected int networkConfig;
     private DataSyncerListener listener;
     private Boolean isPending;
     private Boolean isRunning;
+    /* Notified when a run finishes, see syncAfterRunning(). */
+    final private Object runningLock;
 
     public AbsDataSyncer(final DataMgr dataMgr, final int networkConfig) {
         this.isPending = false;
         this.isRunning = false;
+        this.runningLock = new Object();
         this.dataMgr = dataMgr;
         this.networkConfig = networkConfig;
         this.isHttpsConnection = new SettingHttpsConnection(dataMgr).getData();
@@ -80,6 +90,10 @@ public abstract class AbsDataSyncer {
         return networkConfig;
     }
 
+    public int getPriority() {
+        return PRIORITY_BACKGROUND;
+    }
+
     protected byte[] httpGetQueryByte(final AbsURL url) throws DataSyncerException {
         final NetworkClient client = NetworkClient.getInstance();
         if (url.isAuthNeeded()) {
@@ -124,7 +138,11 @@ public abstract class AbsDataSyncer {
         }
     }
 
-    protected byte[] httpPostQueryByte(final AbsURL url) throws DataSyncerException {
+    /*
+     * Return: null if the resource is not modified since its validators are
+     * stored by updateHttpValidator().
+     */
+    protected MeteredInputStream httpGetQueryStreamIfModified(final AbsURL url) throws DataSyncerException {
         final NetworkClient client = NetworkClient.getInstance();
         if (url.isAuthNeeded()) {
             final String auth = ReaderAccountMgr.getInstance().blockingGetAuth();
@@ -136,7 +154,20 @@ public abstract class AbsDataSyncer {
             if (param.length() > 0) {
                 rUrl += "?" + param;
             }
-            return client.doPostByte(rUrl, param);
+            return client.doGetStreamIfModified(rUrl, dataMgr.getHttpValidatorByUrl(url.getCacheKey()));
+        } catch (final Exception exception) {
+            throw new DataSyncerException(exception);
+        }
+    }
+
+    protected byte[] httpPostQueryByte(final AbsURL url) throws DataSyncerException {
+        final NetworkClient client = NetworkClient.getInstance();
+        if (url.isAuthNeeded()) {
+            final String auth = ReaderAccountMgr.getInstance().blockingGetAuth();
+            client.setAuth(auth);
+        }
+        try {
+            return client.doPostByte(url.getURL(), url.getParamsString());
         } catch (final Exception exception) {
             throw new DataSyncerException(exception);
         }
@@ -204,6 +235,33 @@ public abstract class AbsDataSyncer {
         }
     }
 
+    /*
+     * Runs the syncer once it is entered as running by setEnterRunning(). The
+     * listener is set for this run only, so that no other caller can replace
+     * or clear it while it runs.
+     */
+    void runEntered(final DataSyncerListener listener) throws DataSyncerException {
+        this.listener = listener;
+        DataSyncerException except = null;
+        try {
+            startSyncing();
+        } catch (final DataSyncerException exception) {
+            except = exception;
+        } catch (final RuntimeException exception) {
+            /* A failed database write, which leaves nothing half stored. */
+            except = new DataSyncerException(exception);
+        }
+        finishSyncing();
+        synchronized (runningLock) {
+            this.listener = null;
+            setRunning(false);
+            runningLock.notifyAll();
+        }
+        if (except != null) {
+            throw except;
+        }
+    }
+
     public boolean setEnterPending() {
         synchronized (this.isPending) {
             if (isPending) {
@@ -215,7 +273,11 @@ public abstract class AbsDataSyncer {
         }
     }
 
-    private boolean setEnterRunning() {
+    /*
+     * Return: whether the syncer was idle and is entered as running now, in
+     * which case runEntered() has to follow.
+     */
+    boolean setEnterRunning() {
         synchronized (this.isRunning) {
             if (isRunning) {
                 return false;
@@ -226,10 +288,6 @@ public abstract class AbsDataSyncer {
         }
     }
 
-    public void setListener(final DataSyncerListener listener) {
-        this.listener = listener;
-    }
-
     public void setPending(final boolean isPending) {
         synchronized (this.isPending) {
             this.isPending = isPending;
@@ -244,20 +302,65 @@ public abstract class AbsDataSyncer {
 
     protected abstract void startSyncing() throws DataSyncerException;
 
+    /*
+     * Returns at once if the syncer is running on another thread.
+     */
     public void sync() throws DataSyncerException {
+        sync(null);
+    }
+
+    /*
+     * Like sync(), with the listener set for this run only. The listener is
+     * left alone if the syncer is running on another thread.
+     *
+     * Return: whether the syncer has run.
+     */
+    public boolean sync(final DataSyncerListener listener) throws DataSyncerException {
         if (!setEnterRunning()) {
-            return;
+            return false;
         }
-        DataSyncerException except = null;
-        try {
-            startSyncing();
-        } catch (final DataSyncerException exception) {
-            except = exception;
+        runEntered(listener);
+        return true;
+    }
+
+    /*
+     * Unlike sync(), waits for a run going on in another thread and then runs
+     * once more, so that all the work queued before the call is done when it
+     * returns. The listener is set for this run only.
+     */
+    public void syncAfterRunning(final DataSyncerListener listener) throws DataSyncerException {
+        synchronized (runningLock) {
+            while (!setEnterRunning()) {
+                try {
+                    runningLock.wait();
+                } catch (final InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    throw new DataSyncerException(exception);
+                }
+            }
         }
-        finishSyncing();
-        setRunning(false);
-        if (except != null) {
-            throw except;
+        runEntered(listener);
+    }
+
+    /*
+     * Call it only after the content of the response is stored.
+     */
+    protected void updateHttpValidator(final AbsURL url, final MeteredInputStream stream) {
+        final HttpValidator validator = new HttpValidator(url.getCacheKey(), stream.getResponseHeader("ETag"),
+                stream.getResponseHeader("Last-Modified"));
+        if (!validator.isEmpty()) {
+            dataMgr.updateHttpValidator(validator);
+        }
+    }
+
+    /*
+     * A preemption point: runs the syncers of higher priorities queued in the
+     * meantime before going on. Call it only between the stages of a syncing.
+     */
+    protected void yieldToUrgentSyncers() {
+        final NetworkMgr networkMgr = NetworkMgr.getInstance();
+        if (networkMgr != null) {
+            networkMgr.runUrgentSyncers(getPriority());
         }
     }
 }
@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Pursuer (http://pursuer.me).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Pursuer - initial API and implementation
+ ******************************************************************************/
+
+package com.pursuer.reader.easyrss.network;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+
+import org.apache.http.HttpStatus;
+
+import com.pursuer.reader.easyrss.data.DataUtils;
+import com.pursuer.reader.easyrss.network.NetworkClient.NetworkException;
+
+/*
+ * Downloads URLs into files, resuming the downloads broken off before. The
+ * data is written into the part file of the target, and the part index beside
+ * it records the length expected, the length written and synced, the CRC32 of
+ * what is written and the validator of the response. A later download checks
+ * the part file against the index and asks only for the rest by a Range
+ * request. Once complete, the part file is synced and renamed onto the target,
+ * so that the target is never seen truncated. A part found complete is renamed
+ * at once, and one the server refuses the range of is dropped.
+ */
+final class FileDownloader {
+    final private static class PartIndex {
+        /*
+         * Return: the index in the file, or null if there is none readable.
+         */
+        public static PartIndex read(final File file) {
+            if (!file.exists()) {
+                return null;
+            }
+            try {
+                final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                try {
+                    if (input.readInt() != INDEX_VERSION) {
+                        return null;
+                    }
+                    final PartIndex ret = new PartIndex(input.readLong(), input.readUTF());
+                    ret.length = input.readLong();
+                    ret.checksum = input.readLong();
+                    return ret;
+                } finally {
+                    input.close();
+                }
+            } catch (final IOException exception) {
+                exception.printStackTrace();
+                return null;
+            }
+        }
+
+        final private long expectedLength;
+        final private String validator;
+        private long checksum;
+        private long length;
+
+        /*
+         * expectedLength: -1 if unknown.
+         * validator: "" if there is none.
+         */
+        public PartIndex(final long expectedLength, final String validator) {
+            this.expectedLength = expectedLength;
+            this.validator = validator;
+            this.checksum = 0;
+            this.length = 0;
+        }
+
+        public void write(final File file) throws IOException {
+            final FileOutputStream output = new FileOutputStream(file);
+            try {
+                final DataOutputStream data = new DataOutputStream(output);
+                data.writeInt(INDEX_VERSION);
+                data.writeLong(expectedLength);
+                data.writeUTF(validator);
+                data.writeLong(length);
+                data.writeLong(checksum);
+                data.flush();
+                output.getFD().sync();
+            } finally {
+                output.close();
+            }
+        }
+    }
+
+    final private static int BUFFER_SIZE = 8192;
+    /* The part file is synced and the index written every this many bytes. */
+    final private static long CHECKPOINT_SIZE = 256 * 1024;
+    final private static int INDEX_VERSION = 1;
+
+    /*
+     * Renames the part file onto the target, and drops the index.
+     */
+    private static void commit(final File partFile, final File target, final File indexFile) throws IOException {
+        if (!partFile.renameTo(target)) {
+            throw new IOException("Failed to store: " + target.getPath());
+        }
+        indexFile.delete();
+    }
+
+    /*
+     * Downloads the URL into the target, resuming the part got before if the
+     * resource is still the same. The part got is kept if the download fails.
+     *
+     * deadline: the time by which the download is given up, in milliseconds.
+     */
+    public static void download(final String url, final File target, final long deadline) throws IOException,
+            NetworkException {
+        final File partFile = DataUtils.getPartFile(target);
+        final File indexFile = DataUtils.getPartIndexFile(target);
+        final CRC32 crc = new CRC32();
+        PartIndex index = PartIndex.read(indexFile);
+        if (index != null
+                && (index.validator.length() == 0 || !isIntact(partFile, index.length, index.checksum, crc))) {
+            index = null;
+            crc.reset();
+        }
+        if (index != null && index.length == index.expectedLength) {
+            /* Broken off after the last checkpoint, before the renaming. */
+            final RandomAccessFile output = new RandomAccessFile(partFile, "rw");
+            try {
+                output.setLength(index.length);
+                output.getFD().sync();
+            } finally {
+                output.close();
+            }
+            commit(partFile, target, indexFile);
+            return;
+        }
+        MeteredInputStream input = NetworkClient.getInstance().doGetStreamFrom(url,
+                (index == null) ? 0 : index.length, (index == null) ? null : index.validator);
+        if (input.getResponseStatus() == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+            /* The part does not fit the resource any more, so it is started over. */
+            input.close();
+            partFile.delete();
+            indexFile.delete();
+            index = null;
+            crc.reset();
+            input = NetworkClient.getInstance().doGetStreamFrom(url, 0, null);
+        }
+        try {
+            if (index == null || input.getResponseStatus() != HttpStatus.SC_PARTIAL_CONTENT) {
+                index = new PartIndex(getResourceLength(input), getValidator(input));
+                crc.reset();
+            } else if (getRangeStart(input) != index.length) {
+                indexFile.delete();
+                throw new IOException("Unexpected range: " + input.getResponseHeader("Content-Range"));
+            }
+            final RandomAccessFile output = new RandomAccessFile(partFile, "rw");
+            try {
+                output.setLength(index.length);
+                output.seek(index.length);
+                final byte[] buff = new byte[BUFFER_SIZE];
+                long length = index.length;
+                int len;
+                try {
+                    while ((len = input.read(buff)) != -1) {
+                        output.write(buff, 0, len);
+                        crc.update(buff, 0, len);
+                        length += len;
+                        if (length - index.length >= CHECKPOINT_SIZE) {
+                            saveCheckpoint(output, index, length, crc, indexFile);
+                        }
+                        if (System.currentTimeMillis() > deadline) {
+                            throw new IOException("Timed out: " + url);
+                        }
+                    }
+                    if (index.expectedLength >= 0 && length != index.expectedLength) {
+                        throw new IOException("Truncated: " + url);
+                    }
+                } catch (final IOException exception) {
+                    /* Keeps what is got so far for the next try. */
+                    saveCheckpoint(output, index, length, crc, indexFile);
+                    throw exception;
+                }
+                output.getFD().sync();
+            } finally {
+                output.close();
+            }
+            commit(partFile, target, indexFile);
+        } finally {
+            input.close();
+        }
+    }
+
+    /*
+     * Return: the offset the range of the response starts at, or -1 if it is
+     * not told.
+     */
+    private static long getRangeStart(final MeteredInputStream input) {
+        final String range = input.getResponseHeader("Content-Range");
+        if (range == null || !range.startsWith("bytes ")) {
+            return -1;
+        }
+        final int end = range.indexOf('-');
+        try {
+            return (end < 0) ? -1 : Long.parseLong(range.substring(6, end).trim());
+        } catch (final NumberFormatException exception) {
+            return -1;
+        }
+    }
+
+    /*
+     * Return: the length of the whole resource, or -1 if it is not told.
+     */
+    private static long getResourceLength(final MeteredInputStream input) {
+        final String value;
+        if (input.getResponseStatus() == HttpStatus.SC_PARTIAL_CONTENT) {
+            final String range = input.getResponseHeader("Content-Range");
+            final int start = (range == null) ? -1 : range.lastIndexOf('/');
+            value = (start < 0) ? null : range.substring(start + 1).trim();
+        } else {
+            value = input.getResponseHeader("Content-Length");
+        }
+        try {
+            return (value == null) ? -1 : Long.parseLong(value);
+        } catch (final NumberFormatException exception) {
+            return -1;
+        }
+    }
+
+    /*
+     * Return: the validator to resume the download by, or "" if the response
+     * has none strong enough.
+     */
+    private static String getValidator(final MeteredInputStream input) {
+        final String eTag = input.getResponseHeader("ETag");
+        if (eTag != null && !eTag.startsWith("W/")) {
+            return eTag;
+        }
+        final String lastModified = input.getResponseHeader("Last-Modified");
+        return (lastModified == null) ? "" : lastModified;
+    }
+
+    /*
+     * Return: whether the first length bytes of the file match the checksum,
+     * which are added to crc.
+     */
+    private static boolean isIntact(final File file, final long length, final long checksum, final CRC32 crc) {
+        if (file.length() < length) {
+            return false;
+        }
+        try {
+            final InputStream input = new FileInputStream(file);
+            try {
+                final byte[] buff = new byte[BUFFER_SIZE];
+                long left = length;
+                int len;
+                while (left > 0 && (len = input.read(buff, 0, (int) Math.min(buff.length, left))) != -1) {
+                    crc.update(buff, 0, len);
+                    left -= len;
+                }
+                return (left == 0 && crc.getValue() == checksum);
+            } finally {
+                input.close();
+            }
+        } catch (final IOException exception) {
+            exception.printStackTrace();
+            return false;
+        }
+    }
+
+    private static void saveCheckpoint(final RandomAccessFile output, final PartIndex index, final long length,
+            final CRC32 crc, final File indexFile) throws IOException {
+        output.getFD().sync();
+        index.length = length;
+        index.checksum = crc.getValue();
+        index.write(indexFile);
+    }
+
+    private FileDownloader() {
+    }
+}
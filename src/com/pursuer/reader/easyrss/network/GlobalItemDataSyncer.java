@@ -13,6 +13,7 @@ package com.pursuer.reader.easyrss.network;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
@@ -29,9 +30,9 @@ import com.pursuer.reader.easyrss.data.ItemId;
 import com.pursuer.reader.easyrss.data.Setting;
 import com.pursuer.reader.easyrss.data.parser.ItemIdJSONParser;
 import com.pursuer.reader.easyrss.data.parser.ItemJSONParser;
+import com.pursuer.reader.easyrss.data.parser.OnItemContentRetrievedListener;
 import com.pursuer.reader.easyrss.data.parser.OnItemIdRetrievedListener;
 import com.pursuer.reader.easyrss.data.parser.OnItemRetrievedListener;
-import com.pursuer.reader.easyrss.data.readersetting.SettingMaxItems;
 import com.pursuer.reader.easyrss.data.readersetting.SettingNotificationOn;
 import com.pursuer.reader.easyrss.data.readersetting.SettingSyncInterval;
 import com.pursuer.reader.easyrss.data.readersetting.SettingSyncMethod;
@@ -39,7 +40,7 @@ import com.pursuer.reader.easyrss.network.url.StreamContentsURL;
 import com.pursuer.reader.easyrss.network.url.StreamIdsURL;
 
 public class GlobalItemDataSyncer extends AbsDataSyncer implements DataSyncerListener {
-    private class SyncAllItemsItemListener implements OnItemRetrievedListener {
+    private class SyncAllItemsItemListener implements OnItemRetrievedListener, OnItemContentRetrievedListener {
         final private List<Item> items;
         private String continuation;
         private long oldestTimestamp;
@@ -67,9 +68,13 @@ public class GlobalItemDataSyncer extends AbsDataSyncer implements DataSyncerLis
             return oldestTimestamp;
         }
 
+        @Override
+        public void onItemContentRetrieved(final Item item, final Reader content) throws IOException {
+            DataUtils.writeItemToFile(item, content);
+        }
+
         @Override
         public void onItemRetrieved(final Item item) throws IOException {
-            DataUtils.writeItemToFile(item);
             items.add(item);
             newestTimestamp = Math.max(item.getTimestamp(), newestTimestamp);
             oldestTimestamp = Math.min(item.getTimestamp(), oldestTimestamp);
@@ -132,8 +137,11 @@ public class GlobalItemDataSyncer extends AbsDataSyncer implements DataSyncerLis
         }
 
         syncReadStatus();
+        yieldToUrgentSyncers();
         syncAllItems();
+        yieldToUrgentSyncers();
         syncUnreadCount();
+        yieldToUrgentSyncers();
         syncUnreadItems();
         NetworkMgr.getInstance().startSyncItemContent();
 
@@ -162,64 +170,78 @@ public class GlobalItemDataSyncer extends AbsDataSyncer implements DataSyncerLis
         long newOldestTimestamp = (1L << 62L);
         long lastTimestamp = (1L << 62L);
         String continuation = null;
-        do {
-            notifyProgressChanged(context.getString(R.string.TxtSyncingAllItems), count, GLOBAL_ITEMS_LIMIT);
-            final int limit = (count == 0) ? 5 : ITEM_LIST_QUERY_LIMIT;
-            final InputStream stream = httpGetQueryStream(new StreamContentsURL(isHttpsConnection, "", continuation, 0,
-                    limit, false));
-            try {
-                final ItemJSONParser parser = new ItemJSONParser(stream);
-                final SyncAllItemsItemListener listener = new SyncAllItemsItemListener();
-                parser.parse(listener);
-                newOldestTimestamp = Math.min(newOldestTimestamp, listener.getOldestTimestamp());
-                newNewestTimestamp = Math.max(newNewestTimestamp, listener.getNewestTimestamp());
-                lastTimestamp = Math.min(lastTimestamp, listener.getOldestTimestamp());
-                continuation = listener.getContinuation();
-                final List<Item> items = listener.getItems();
-                dataMgr.addItems(items);
-                count += items.size();
-                if (newOldestTimestamp <= newestTimestamp || items.size() < limit) {
-                    break;
-                }
-            } catch (final JsonParseException exception) {
-                exception.printStackTrace();
-                throw new DataSyncerException(exception);
-            } catch (final IllegalStateException exception) {
-                exception.printStackTrace();
-                throw new DataSyncerException(exception);
-            } catch (final IOException exception) {
-                exception.printStackTrace();
-                throw new DataSyncerException(exception);
-            } finally {
+        /* Page N+1 is fetched, and its files written, while page N is added to the database. */
+        final ItemPipeline pipeline = new ItemPipeline(dataMgr);
+        boolean isFinished = false;
+        try {
+            do {
+                /* Between pages, an item the user opened need not wait for the rest. */
+                yieldToUrgentSyncers();
+                notifyProgressChanged(context.getString(R.string.TxtSyncingAllItems), count, GLOBAL_ITEMS_LIMIT);
+                final int limit = (count == 0) ? 5 : ITEM_LIST_QUERY_LIMIT;
+                final InputStream stream = httpGetQueryStream(new StreamContentsURL(isHttpsConnection, "",
+                        continuation, 0, limit, false));
                 try {
-                    stream.close();
+                    final ItemJSONParser parser = new ItemJSONParser(stream);
+                    final SyncAllItemsItemListener listener = new SyncAllItemsItemListener();
+                    parser.setContentListener(listener);
+                    parser.parse(listener);
+                    newOldestTimestamp = Math.min(newOldestTimestamp, listener.getOldestTimestamp());
+                    newNewestTimestamp = Math.max(newNewestTimestamp, listener.getNewestTimestamp());
+                    lastTimestamp = Math.min(lastTimestamp, listener.getOldestTimestamp());
+                    continuation = listener.getContinuation();
+                    final List<Item> items = listener.getItems();
+                    pipeline.add(items);
+                    count += items.size();
+                    if (newOldestTimestamp <= newestTimestamp || items.size() < limit) {
+                        break;
+                    }
+                } catch (final JsonParseException exception) {
+                    exception.printStackTrace();
+                    throw new DataSyncerException(exception);
+                } catch (final IllegalStateException exception) {
+                    exception.printStackTrace();
+                    throw new DataSyncerException(exception);
                 } catch (final IOException exception) {
                     exception.printStackTrace();
+                    throw new DataSyncerException(exception);
+                } finally {
+                    try {
+                        stream.close();
+                    } catch (final IOException exception) {
+                        exception.printStackTrace();
+                    }
                 }
+            } while (count < GLOBAL_ITEMS_LIMIT);
+            pipeline.finish();
+            isFinished = true;
+        } catch (final IOException exception) {
+            exception.printStackTrace();
+            throw new DataSyncerException(exception);
+        } finally {
+            if (!isFinished) {
+                pipeline.cancel();
             }
-        } while (count < GLOBAL_ITEMS_LIMIT);
+        }
         notifyProgressChanged(context.getString(R.string.TxtSyncingAllItems), -1, -1);
         if (newOldestTimestamp <= newestTimestamp) {
             oldestTimestamp = Math.min(oldestTimestamp, newOldestTimestamp);
         }
         newestTimestamp = newNewestTimestamp;
 
-        dataMgr.removeOutdatedItemsWithLimit(new SettingMaxItems(dataMgr).getData());
+        dataMgr.removeOutdatedItems();
         dataMgr.updateSetting(new Setting(Setting.SETTING_GLOBAL_NEWEST_ITEM_TIMESTAMP, String.valueOf(newestTimestamp)));
     }
 
     private void syncReadStatus() throws DataSyncerException {
         final TransactionDataSyncer syncer = TransactionDataSyncer.getInstance(dataMgr, networkConfig);
-        syncer.setListener(this);
-        syncer.sync();
-        syncer.setListener(null);
+        /* A push running on another worker is waited for, or the items synced next would undo its changes. */
+        syncer.syncAfterRunning(this);
     }
 
     private void syncUnreadCount() throws DataSyncerException {
         final UnreadCountDataSyncer syncer = new UnreadCountDataSyncer(dataMgr, networkConfig);
-        syncer.setListener(this);
-        syncer.sync();
-        syncer.setListener(null);
+        syncer.sync(this);
     }
 
     private void syncUnreadItems() throws DataSyncerException {
@@ -235,6 +257,10 @@ public class GlobalItemDataSyncer extends AbsDataSyncer implements DataSyncerLis
         } else if (dataMgr.calcGlobalUnreadItemCount() == unreadCount) {
             return;
         }
+        /* About to reconcile with the server, make sure the local counts are exact. */
+        if (!dataMgr.verifyUnreadCounts() && dataMgr.calcGlobalUnreadItemCount() == unreadCount) {
+            return;
+        }
 
         notifyProgressChanged(context.getString(R.string.TxtSyncingUnreadItems), -1, -1);
         final InputStream stream = httpGetQueryStream(new StreamIdsURL(isHttpsConnection,
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Pursuer (http://pursuer.me).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Pursuer - initial API and implementation
+ ******************************************************************************/
+
+package com.pursuer.reader.easyrss.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/*
+ * Sends the HTTP requests of NetworkClient. A transport may keep connections
+ * alive between requests, so the body of every response must be closed, which
+ * hands its connection back for reuse.
+ */
+public interface HttpTransport {
+    final public class Response {
+        final private InputStream body;
+        final private Map<String, String> headers;
+        final private int status;
+
+        /*
+         * headers: keyed by the names of the headers in lower case.
+         */
+        public Response(final int status, final Map<String, String> headers, final InputStream body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        /*
+         * Return: the body as sent, not decoded by the content encoding.
+         */
+        public InputStream getBody() {
+            return body;
+        }
+
+        public String getHeader(final String name) {
+            return headers.get(name.toLowerCase());
+        }
+
+        public int getStatus() {
+            return status;
+        }
+    }
+
+    /*
+     * body: the content to POST, or null to GET.
+     */
+    Response execute(String url, Map<String, String> headers, byte[] body) throws IOException;
+}
@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Pursuer (http://pursuer.me).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Pursuer - initial API and implementation
+ ******************************************************************************/
+
+package com.pursuer.reader.easyrss.network;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+/*
+ * Decodes images no larger than they are shown, and shrinks the prefetched
+ * ones to that size. The bounds of an image are decoded first, so that it is
+ * decoded subsampled by a power of two instead of in full.
+ */
+final public class ImageTranscoder {
+    final private static int ENCODING_QUALITY = 85;
+
+    /*
+     * Return: the smallest power of two dividing the size down to no more
+     * than maxSize.
+     */
+    private static int calcSampleSize(final int size, final int maxSize) {
+        int ret = 1;
+        while (size / ret > maxSize) {
+            ret *= 2;
+        }
+        return ret;
+    }
+
+    /*
+     * Return: the image with neither side over maxSize, or null if it cannot
+     * be decoded.
+     */
+    public static Bitmap decodeByteArray(final byte[] data, final int maxSize) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calcSampleSize(Math.max(options.outWidth, options.outHeight), maxSize);
+        try {
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (final OutOfMemoryError error) {
+            error.printStackTrace();
+            return null;
+        }
+    }
+
+    /*
+     * Return: the image with neither side over maxSize, or null if it cannot
+     * be decoded.
+     */
+    public static Bitmap decodeFile(final String path, final int maxSize) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calcSampleSize(Math.max(options.outWidth, options.outHeight), maxSize);
+        try {
+            return BitmapFactory.decodeFile(path, options);
+        } catch (final OutOfMemoryError error) {
+            error.printStackTrace();
+            return null;
+        }
+    }
+
+    /*
+     * Return: the image shrunk to neither side over maxSize and encoded as PNG,
+     * or null if it cannot be decoded.
+     */
+    public static byte[] shrinkByteArray(final byte[] data, final int maxSize) {
+        Bitmap bitmap = decodeByteArray(data, maxSize * 2);
+        if (bitmap == null) {
+            return null;
+        }
+        try {
+            final int size = Math.max(bitmap.getWidth(), bitmap.getHeight());
+            if (size > maxSize) {
+                final int width = Math.max(1, (int) ((long) bitmap.getWidth() * maxSize / size));
+                final int height = Math.max(1, (int) ((long) bitmap.getHeight() * maxSize / size));
+                final Bitmap scaled = Bitmap.createScaledBitmap(bitmap, width, height, true);
+                if (scaled != bitmap) {
+                    bitmap.recycle();
+                }
+                bitmap = scaled;
+            }
+        } catch (final OutOfMemoryError error) {
+            error.printStackTrace();
+            bitmap.recycle();
+            return null;
+        }
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            return bitmap.compress(Bitmap.CompressFormat.PNG, ENCODING_QUALITY, output) ? output.toByteArray()
+                    : null;
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /*
+     * Shrinks the image in the file to maxWidth wide, encoded again as PNG if
+     * it has transparency, or else as WebP where the WebView shows it and as
+     * JPEG before. Images no wider than maxWidth and GIFs, which may be
+     * animated, are kept as they are, and so is any image not made smaller.
+     *
+     * Return: whether the file is replaced.
+     */
+    public static boolean shrinkFile(final File file, final int maxWidth) {
+        final String path = file.getPath();
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= maxWidth || options.outHeight <= 0 || "image/gif".equals(options.outMimeType)) {
+            return false;
+        }
+        options.inJustDecodeBounds = false;
+        /* Decoded no narrower than maxWidth, and scaled down from there. */
+        options.inSampleSize = Math.max(1, calcSampleSize(options.outWidth, maxWidth) / 2);
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeFile(path, options);
+            if (bitmap == null) {
+                return false;
+            }
+            if (bitmap.getWidth() > maxWidth) {
+                final int height = Math.max(1, (int) ((long) bitmap.getHeight() * maxWidth / bitmap.getWidth()));
+                final Bitmap scaled = Bitmap.createScaledBitmap(bitmap, maxWidth, height, true);
+                if (scaled != bitmap) {
+                    bitmap.recycle();
+                }
+                bitmap = scaled;
+            }
+        } catch (final OutOfMemoryError error) {
+            error.printStackTrace();
+            return false;
+        }
+        final Bitmap.CompressFormat format;
+        if (bitmap.hasAlpha()) {
+            format = Bitmap.CompressFormat.PNG;
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            format = Bitmap.CompressFormat.WEBP;
+        } else {
+            format = Bitmap.CompressFormat.JPEG;
+        }
+        final File tmpFile = new File(path + ".tmp");
+        try {
+            final OutputStream output = new BufferedOutputStream(new FileOutputStream(tmpFile), 8192);
+            try {
+                if (!bitmap.compress(format, ENCODING_QUALITY, output)) {
+                    throw new IOException("Failed to encode: " + path);
+                }
+            } finally {
+                output.close();
+            }
+            if (tmpFile.length() > 0 && tmpFile.length() < file.length() && tmpFile.renameTo(file)) {
+                return true;
+            }
+        } catch (final IOException exception) {
+            exception.printStackTrace();
+        } finally {
+            bitmap.recycle();
+        }
+        tmpFile.delete();
+        return false;
+    }
+
+    private ImageTranscoder() {
+    }
+}
@@ -18,12 +18,17 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.URL;
-import java.net.URLConnection;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -41,156 +46,232 @@ import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Environment;
-import android.util.Pair;
+import android.util.DisplayMetrics;
 
 import com.pursuer.reader.easyrss.R;
 import com.pursuer.reader.easyrss.data.DataMgr;
 import com.pursuer.reader.easyrss.data.DataUtils;
+import com.pursuer.reader.easyrss.data.ImageRef;
 import com.pursuer.reader.easyrss.data.Item;
 import com.pursuer.reader.easyrss.data.ItemState;
 import com.pursuer.reader.easyrss.data.readersetting.SettingImagePrefetching;
 
 // Remember that in this class, the meaning networkConfig is different from other syncers!
 public class ItemContentDataSyncer extends AbsDataSyncer {
-    private class FetchingHelper {
-        final private ExecutorService execService;
-        final private List<ItemWrapper> wrappers;
-        private int totalItems;
-        private int finishedItems;
-
-        public FetchingHelper() {
-            this.execService = Executors.newFixedThreadPool(FETCHING_THREAD_COUNT, new ThreadFactory() {
-                @Override
-                public Thread newThread(final Runnable runnable) {
-                    final Thread thread = new Thread(runnable);
-                    thread.setPriority(Thread.MIN_PRIORITY);
-                    return thread;
+    private class FetchingProcess implements Runnable {
+        @Override
+        public void run() {
+            while (true) {
+                final ImageTask task;
+                try {
+                    task = scheduler.take();
+                } catch (final InterruptedException exception) {
+                    exception.printStackTrace();
+                    return;
+                }
+                if (task == null) {
+                    return;
+                }
+                try {
+                    fetchImage(task);
+                } finally {
+                    scheduler.onTaskDone(task);
                 }
-            });
-            this.wrappers = new ArrayList<ItemWrapper>();
-            this.totalItems = 0;
-            this.finishedItems = 0;
-        }
-
-        public void fetch() {
-            final Context context = dataMgr.getContext();
-            final ContentResolver resolver = context.getContentResolver();
-            final Cursor cur = resolver.query(Item.CONTENT_URI, new String[] { "count(*)" },
-                    ItemState._ISCACHED + "=0", null, null);
-            if (cur.moveToFirst()) {
-                totalItems = cur.getInt(0);
-            } else {
-                totalItems = 0;
             }
-            notifyProgressChanged(context.getString(R.string.TxtSyncingItemContent), finishedItems, totalItems);
-            for (int i = 0; i < FETCHING_THREAD_COUNT; i++) {
-                execService.execute(new FetchingProcess(this));
+        }
+    }
+
+    private class ImageTask {
+        final private String host;
+        final private String src;
+        final private String urlHash;
+        final private ItemWrapper wrapper;
+
+        public ImageTask(final ItemWrapper wrapper, final String src) {
+            final String host = Uri.parse(src).getHost();
+            this.host = (host == null) ? "" : host;
+            this.src = src;
+            this.urlHash = ImageRef.hashUrl(src);
+            this.wrapper = wrapper;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public String getSrc() {
+            return src;
+        }
+
+        public String getUrlHash() {
+            return urlHash;
+        }
+
+        public ItemWrapper getWrapper() {
+            return wrapper;
+        }
+    }
+
+    /*
+     * The images of all the items being fetched, in a queue for each priority.
+     * Any idle thread takes the first image of the highest priority whose host
+     * has less than MAX_IMAGES_PER_HOST images being fetched, so that a slow
+     * host or a large item holds back no other. An image shown by several
+     * items is fetched by one thread at a time, the others find it stored.
+     */
+    private class ImageScheduler {
+        final private Map<String, Integer> activeImagesByHost;
+        final private Set<String> activeUrlHashes;
+        final private List<LinkedList<ImageTask>> queues;
+        private boolean isClosed;
+        private boolean isFinishing;
+        private boolean isPriorityChanged;
+        private int queuedCount;
+
+        public ImageScheduler() {
+            this.activeImagesByHost = new HashMap<String, Integer>();
+            this.activeUrlHashes = new HashSet<String>();
+            this.queues = new ArrayList<LinkedList<ImageTask>>(PRIORITY_COUNT);
+            for (int i = 0; i < PRIORITY_COUNT; i++) {
+                queues.add(new LinkedList<ImageTask>());
             }
-            execService.shutdown();
-            try {
-                execService.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
-            } catch (final InterruptedException exception) {
-                exception.printStackTrace();
+            this.isClosed = false;
+            this.isFinishing = false;
+            this.isPriorityChanged = false;
+            this.queuedCount = 0;
+        }
+
+        public synchronized void add(final ItemWrapper wrapper, final int priority) {
+            final Collection<String> sources = wrapper.getImageSources();
+            for (final String src : sources) {
+                queues.get(priority).add(new ImageTask(wrapper, src));
             }
-            wrappers.clear();
+            queuedCount += sources.size();
+            notifyAll();
         }
 
-        public ItemWrapper getNextItemWrapper() {
-            synchronized (wrappers) {
-                final Context context = dataMgr.getContext();
-                if (!NetworkUtils.checkImageFetchingNetworkStatus(context, networkConfig)) {
-                    return null;
-                }
-                while (!wrappers.isEmpty() && wrappers.get(0).isFinished()) {
-                    finishedItems++;
-                    notifyProgressChanged(context.getString(R.string.TxtSyncingItemContent), finishedItems, totalItems);
-                    wrappers.remove(0);
-                }
-                if (!wrappers.isEmpty()) {
-                    return wrappers.get(0);
-                }
-                final ContentResolver resolver = context.getContentResolver();
-                final Cursor cur;
-                cur = resolver.query(Uri.withAppendedPath(Item.CONTENT_URI, "limit/10"), ITEM_PROJECTION,
-                        ItemState._ISCACHED + "=0", null, null);
-                for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
-                    wrappers.add(new ItemWrapper(Item.fromCursor(cur)));
-                }
-                cur.close();
-                return wrappers.isEmpty() ? null : wrappers.get(0);
+        /*
+         * Waits until an image is taken, the priorities change or the timeout
+         * expires.
+         */
+        public synchronized void await(final long timeout) throws InterruptedException {
+            if (!isClosed && !isPriorityChanged) {
+                wait(timeout);
             }
         }
-    }
 
-    private class FetchingProcess implements Runnable {
-        final private FetchingHelper helper;
+        /*
+         * Drops the images not taken yet; take() returns null from now on.
+         */
+        public synchronized void close() {
+            isClosed = true;
+            for (final LinkedList<ImageTask> queue : queues) {
+                queue.clear();
+            }
+            queuedCount = 0;
+            notifyAll();
+        }
 
-        public FetchingProcess(final FetchingHelper helper) {
-            super();
+        /*
+         * No images are added from now on; take() returns null once all are
+         * taken.
+         */
+        public synchronized void finish() {
+            isFinishing = true;
+            notifyAll();
+        }
 
-            this.helper = helper;
+        public synchronized int getQueuedCount() {
+            return queuedCount;
         }
 
-        @Override
-        public void run() {
-            while (true) {
-                final ItemWrapper wrapper = helper.getNextItemWrapper();
-                if (wrapper == null) {
-                    break;
+        public synchronized boolean isClosed() {
+            return isClosed;
+        }
+
+        public synchronized void onTaskDone(final ImageTask task) {
+            activeUrlHashes.remove(task.getUrlHash());
+            final Integer count = activeImagesByHost.get(task.getHost());
+            if (count == null || count <= 1) {
+                activeImagesByHost.remove(task.getHost());
+            } else {
+                activeImagesByHost.put(task.getHost(), count - 1);
+            }
+            notifyAll();
+        }
+
+        private ImageTask pollTask() {
+            for (int i = PRIORITY_COUNT - 1; i >= 0; i--) {
+                for (final Iterator<ImageTask> iter = queues.get(i).iterator(); iter.hasNext();) {
+                    final ImageTask task = iter.next();
+                    final Integer count = activeImagesByHost.get(task.getHost());
+                    if ((count == null || count < MAX_IMAGES_PER_HOST)
+                            && !activeUrlHashes.contains(task.getUrlHash())) {
+                        iter.remove();
+                        queuedCount--;
+                        activeImagesByHost.put(task.getHost(), (count == null) ? 1 : count + 1);
+                        activeUrlHashes.add(task.getUrlHash());
+                        return task;
+                    }
                 }
-                final Pair<Integer, String> psi = wrapper.downloadNextImage();
-                if (psi != null) {
-                    final int picId = psi.first;
-                    final String src = psi.second;
-                    final String sDStateString = Environment.getExternalStorageState();
-                    if (!sDStateString.equals(android.os.Environment.MEDIA_MOUNTED)) {
-                        wrapper.onFinishImageFetching(picId, DOWNLOADING_STATUS_FILE_ERROR);
-                        break;
-                    } else {
-                        final File file = new File(wrapper.getItem().getImageStoragePath(picId));
-                        if (file.isDirectory()) {
-                            DataUtils.deleteFile(file);
-                        }
-                        try {
-                            if (!file.exists()) {
-                                final URLConnection connection = new URL(src).openConnection();
-                                connection.setConnectTimeout(30 * 1000);
-                                connection.setReadTimeout(20 * 1000);
-                                final InputStream input = connection.getInputStream();
-                                final OutputStream out = new FileOutputStream(file);
-                                final byte buff[] = new byte[CONTENT_IO_BUFFER_SIZE];
-                                int len;
-                                while ((len = input.read(buff)) != -1) {
-                                    out.write(buff, 0, len);
-                                }
-                                out.close();
-                                try {
-                                    input.close();
-                                } catch (final IOException exception) {
-                                    exception.printStackTrace();
-                                }
-                            }
-                            wrapper.onFinishImageFetching(picId, DOWNLOADING_STATUS_SUCCEEDED);
-                        } catch (final Exception exception) {
-                            wrapper.onFinishImageFetching(picId, DOWNLOADING_STATUS_NETWORK_ERROR);
-                            exception.printStackTrace();
-                        }
+            }
+            return null;
+        }
+
+        /*
+         * Moves the queued images of the items up to PRIORITY_OPENED.
+         */
+        public synchronized void prioritize(final Set<String> uids) {
+            final LinkedList<ImageTask> target = queues.get(PRIORITY_OPENED);
+            for (int i = 0; i < PRIORITY_OPENED; i++) {
+                for (final Iterator<ImageTask> iter = queues.get(i).iterator(); iter.hasNext();) {
+                    final ImageTask task = iter.next();
+                    if (uids.contains(task.getWrapper().getItem().getUid())) {
+                        iter.remove();
+                        target.add(task);
                     }
                 }
             }
+            isPriorityChanged = true;
+            notifyAll();
+        }
+
+        /*
+         * Return: whether the priorities changed since the last call.
+         */
+        public synchronized boolean resetPriorityChanged() {
+            final boolean ret = isPriorityChanged;
+            isPriorityChanged = false;
+            return ret;
+        }
+
+        /*
+         * Return: the next image to fetch, or null if there is none left.
+         */
+        public synchronized ImageTask take() throws InterruptedException {
+            while (!isClosed) {
+                final ImageTask ret = pollTask();
+                if (ret != null) {
+                    return ret;
+                } else if (isFinishing && queuedCount == 0) {
+                    return null;
+                }
+                wait();
+            }
+            return null;
         }
     }
 
     private class ItemWrapper {
         final private Item item;
-        final private List<TagNode> imgList;
+        final private Map<String, List<TagNode>> imagesBySrc;
         final private TagNode root;
         private boolean hasFileError;
-        private int downloadedImageCount;
+        private int pendingImageCount;
 
         public ItemWrapper(final Item item) {
             this.item = item;
-            this.imgList = new ArrayList<TagNode>();
+            this.imagesBySrc = new LinkedHashMap<String, List<TagNode>>();
             this.root = new HtmlCleaner().clean(DataUtils.readFromFile(new File(item.getOriginalContentStoragePath())));
             final Queue<TagNode> nodes = new LinkedList<TagNode>();
             nodes.add(root);
@@ -200,7 +281,12 @@ public class ItemContentDataSyncer extends AbsDataSyncer {
                 if ("img".equals(tagName)) {
                     final String src = tag.getAttributeByName("src");
                     if (src != null && (src.startsWith("http://") || src.startsWith("https://"))) {
-                        imgList.add(tag);
+                        List<TagNode> tags = imagesBySrc.get(src);
+                        if (tags == null) {
+                            tags = new ArrayList<TagNode>(1);
+                            imagesBySrc.put(src, tags);
+                        }
+                        tags.add(tag);
                     } else {
                         tag.removeFromTree();
                     }
@@ -209,33 +295,30 @@ public class ItemContentDataSyncer extends AbsDataSyncer {
                 }
             }
             this.hasFileError = false;
-            this.downloadedImageCount = 0;
+            this.pendingImageCount = imagesBySrc.size();
 
-            if (isSucceeded()) {
+            if (isFinished()) {
                 markAsCached();
+            } else {
+                /* Referenced before they are fetched, so that they are never evicted in between. */
+                final List<String> urlHashes = new ArrayList<String>(imagesBySrc.size());
+                for (final String src : imagesBySrc.keySet()) {
+                    urlHashes.add(ImageRef.hashUrl(src));
+                }
+                dataMgr.addImageRefs(item.getUid(), urlHashes);
             }
         }
 
-        public synchronized Pair<Integer, String> downloadNextImage() {
-            if (downloadedImageCount < imgList.size()) {
-                final TagNode ret = imgList.get(downloadedImageCount);
-                downloadedImageCount++;
-                return Pair.create(downloadedImageCount, ret.getAttributeByName("src"));
-            } else {
-                return null;
-            }
+        public Collection<String> getImageSources() {
+            return imagesBySrc.keySet();
         }
 
         public Item getItem() {
             return item;
         }
 
-        public boolean isFinished() {
-            return (downloadedImageCount >= imgList.size());
-        }
-
-        public boolean isSucceeded() {
-            return (isFinished() && !hasFileError);
+        public synchronized boolean isFinished() {
+            return (pendingImageCount == 0);
         }
 
         private void markAsCached() {
@@ -257,36 +340,57 @@ public class ItemContentDataSyncer extends AbsDataSyncer {
             }
         }
 
-        public synchronized void onFinishImageFetching(final int id, final int status) {
-            final TagNode ele = imgList.get(id - 1);
+        /*
+         * The item is marked as cached once all its images are done, even if
+         * some failed to download; they are replaced by a placeholder.
+         */
+        public synchronized void onFinishImageFetching(final ImageTask task, final int status) {
+            pendingImageCount--;
             if (status == DOWNLOADING_STATUS_FILE_ERROR) {
                 hasFileError = true;
-                downloadedImageCount = imgList.size();
-                return;
-            }
-            ele.setAttribute("src", id + ".erss");
-            if (status != DOWNLOADING_STATUS_SUCCEEDED) {
-                final InputStream input = dataMgr.getContext().getResources().openRawResource(R.raw.no_such_picture);
-                try {
-                    final FileOutputStream output = new FileOutputStream(item.getImageStoragePath(id));
-                    DataUtils.streamTransfer(input, output);
-                } catch (final FileNotFoundException exception) {
-                    exception.printStackTrace();
+            } else {
+                final String src;
+                if (status == DOWNLOADING_STATUS_SUCCEEDED) {
+                    src = ImageRef.getSrcByHash(task.getUrlHash());
+                } else {
+                    storePlaceholder();
+                    src = ImageRef.getSrcByHash(ImageRef.PLACEHOLDER_HASH);
+                }
+                for (final TagNode tag : imagesBySrc.get(task.getSrc())) {
+                    tag.setAttribute("src", src);
+                    if (status == DOWNLOADING_STATUS_SUCCEEDED) {
+                        tag.setAttribute(ImageRef.ATTR_ORIGINAL_SRC, task.getSrc());
+                    }
                 }
             }
-            if (isSucceeded()) {
-                markAsCached();
+            if (isFinished()) {
+                if (!hasFileError) {
+                    markAsCached();
+                }
+                onItemFinished();
             }
         }
     }
 
-    private final static String[] ITEM_PROJECTION = { Item._UID };
+    private final static String[] ITEM_PROJECTION = { Item._UID, ItemState._ISREAD };
     final private static int DOWNLOADING_STATUS_SUCCEEDED = 0;
     final private static int DOWNLOADING_STATUS_NETWORK_ERROR = 1;
     final private static int DOWNLOADING_STATUS_FILE_ERROR = 2;
     final private static int FETCHING_THREAD_COUNT = 5;
+    /* A slower image is given up, so that its item still gets cached. */
+    final private static long IMAGE_FETCH_TIMEOUT = 60 * 1000;
+    final private static int ITEM_BATCH_SIZE = 10;
+    final private static int MAX_IMAGES_PER_HOST = 2;
+    /* More items are loaded when fewer images than this are queued. */
+    final private static int MIN_QUEUED_IMAGES = FETCHING_THREAD_COUNT * 2;
+    final private static long NETWORK_CHECK_INTERVAL = 5 * 1000;
+    final private static int PRIORITY_READ = 0;
+    final private static int PRIORITY_UNREAD = 1;
+    final private static int PRIORITY_OPENED = 2;
+    final private static int PRIORITY_COUNT = 3;
 
     private static ItemContentDataSyncer instance;
+    private static Set<String> prioritizedUids = new HashSet<String>();
 
     private static synchronized void clearInstance() {
         instance = null;
@@ -299,6 +403,33 @@ public class ItemContentDataSyncer extends AbsDataSyncer {
         return instance;
     }
 
+    private static synchronized Set<String> getPrioritizedUids() {
+        return prioritizedUids;
+    }
+
+    /*
+     * uids: the items the user is reading or about to open, whose images are
+     * fetched before the others.
+     */
+    public static void prioritizeItems(final Collection<String> uids) {
+        final Set<String> set = new HashSet<String>(uids);
+        final ItemContentDataSyncer syncer;
+        synchronized (ItemContentDataSyncer.class) {
+            prioritizedUids = set;
+            syncer = instance;
+        }
+        final ImageScheduler curScheduler = (syncer == null) ? null : syncer.scheduler;
+        if (curScheduler != null) {
+            curScheduler.prioritize(set);
+        }
+    }
+
+    private int finishedItems;
+    /* Images are shrunk to the longer side of the display, beyond which they are never shown. */
+    private int maxImageWidth;
+    private volatile ImageScheduler scheduler;
+    private int totalItems;
+
     private ItemContentDataSyncer(final DataMgr dataMgr, final int networkConfig) {
         super(dataMgr, networkConfig);
     }
@@ -312,17 +443,184 @@ public class ItemContentDataSyncer extends AbsDataSyncer {
         }
     }
 
+    private void fetchImage(final ImageTask task) {
+        final ItemWrapper wrapper = task.getWrapper();
+        final String sDStateString = Environment.getExternalStorageState();
+        if (!sDStateString.equals(android.os.Environment.MEDIA_MOUNTED)) {
+            wrapper.onFinishImageFetching(task, DOWNLOADING_STATUS_FILE_ERROR);
+            scheduler.close();
+            return;
+        }
+        final File file = new File(ImageRef.getStoragePathByHash(task.getUrlHash()));
+        if (file.isDirectory()) {
+            DataUtils.deleteFile(file);
+        }
+        try {
+            if (!file.exists()) {
+                file.getParentFile().mkdirs();
+                FileDownloader.download(task.getSrc(), file, System.currentTimeMillis() + IMAGE_FETCH_TIMEOUT);
+                ImageTranscoder.shrinkFile(file, maxImageWidth);
+            }
+            wrapper.onFinishImageFetching(task, DOWNLOADING_STATUS_SUCCEEDED);
+        } catch (final Exception exception) {
+            wrapper.onFinishImageFetching(task, DOWNLOADING_STATUS_NETWORK_ERROR);
+            exception.printStackTrace();
+        }
+    }
+
+    private void fetchImages() {
+        final Context context = dataMgr.getContext();
+        final ContentResolver resolver = context.getContentResolver();
+        final Cursor cur = resolver.query(Item.CONTENT_URI, new String[] { "count(*)" }, ItemState._ISCACHED + "=0",
+                null, null);
+        totalItems = cur.moveToFirst() ? cur.getInt(0) : 0;
+        cur.close();
+        final DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        maxImageWidth = Math.max(metrics.widthPixels, metrics.heightPixels);
+        finishedItems = 0;
+        notifyProgressChanged(context.getString(R.string.TxtSyncingItemContent), finishedItems, totalItems);
+
+        scheduler = new ImageScheduler();
+        final ExecutorService execService = Executors.newFixedThreadPool(FETCHING_THREAD_COUNT, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        for (int i = 0; i < FETCHING_THREAD_COUNT; i++) {
+            execService.execute(new FetchingProcess());
+        }
+        try {
+            /* The items are loaded here, so that the fetching threads never wait for the database. */
+            final Set<String> loadedUids = new HashSet<String>();
+            while (!scheduler.isClosed()) {
+                if (!NetworkUtils.checkImageFetchingNetworkStatus(context, networkConfig)) {
+                    scheduler.close();
+                    break;
+                }
+                if (!scheduler.resetPriorityChanged() && scheduler.getQueuedCount() >= MIN_QUEUED_IMAGES) {
+                    scheduler.await(NETWORK_CHECK_INTERVAL);
+                    continue;
+                }
+                final List<Item> items = loadItems(loadedUids);
+                if (items.isEmpty()) {
+                    if (scheduler.getQueuedCount() == 0) {
+                        break;
+                    }
+                    scheduler.await(NETWORK_CHECK_INTERVAL);
+                    continue;
+                }
+                final Set<String> uids = getPrioritizedUids();
+                for (final Item item : items) {
+                    loadedUids.add(item.getUid());
+                    final ItemWrapper wrapper = new ItemWrapper(item);
+                    if (wrapper.isFinished()) {
+                        onItemFinished();
+                    } else if (uids.contains(item.getUid())) {
+                        scheduler.add(wrapper, PRIORITY_OPENED);
+                    } else {
+                        scheduler.add(wrapper, item.getState().isRead() ? PRIORITY_READ : PRIORITY_UNREAD);
+                    }
+                }
+            }
+            scheduler.finish();
+            execService.shutdown();
+            while (!execService.awaitTermination(NETWORK_CHECK_INTERVAL, TimeUnit.MILLISECONDS)) {
+                if (!NetworkUtils.checkImageFetchingNetworkStatus(context, networkConfig)) {
+                    scheduler.close();
+                }
+            }
+        } catch (final InterruptedException exception) {
+            exception.printStackTrace();
+            scheduler.close();
+            execService.shutdown();
+        }
+        scheduler = null;
+    }
+
     @Override
     protected void finishSyncing() {
         clearInstance();
     }
 
+    /*
+     * Return: the next items to fetch the images of, the prioritized ones first,
+     * then the unread ones.
+     */
+    private List<Item> loadItems(final Set<String> loadedUids) {
+        final List<Item> ret = new ArrayList<Item>();
+        final ContentResolver resolver = dataMgr.getContext().getContentResolver();
+        final List<String> uids = new ArrayList<String>();
+        for (final String uid : getPrioritizedUids()) {
+            if (!loadedUids.contains(uid)) {
+                uids.add(uid);
+            }
+        }
+        for (final String[] args : DataUtils.splitQueryArgs(uids)) {
+            final Cursor cur = resolver.query(Item.CONTENT_URI, ITEM_PROJECTION, ItemState._ISCACHED + "=0 AND "
+                    + Item._UID + " IN(" + DataUtils.buildPlaceholders(args.length) + ")", args, null);
+            for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
+                ret.add(Item.fromCursor(cur));
+            }
+            cur.close();
+        }
+        final Cursor cur = resolver.query(
+                Uri.withAppendedPath(Item.CONTENT_URI, "limit/" + (ITEM_BATCH_SIZE + loadedUids.size() + ret.size())),
+                ITEM_PROJECTION, ItemState._ISCACHED + "=0", null, ItemState._ISREAD + "," + Item._TIMESTAMP
+                        + " DESC");
+        for (cur.moveToFirst(); !cur.isAfterLast() && ret.size() < ITEM_BATCH_SIZE; cur.moveToNext()) {
+            final Item item = Item.fromCursor(cur);
+            if (!loadedUids.contains(item.getUid()) && !uids.contains(item.getUid())) {
+                ret.add(item);
+            }
+        }
+        cur.close();
+        return ret;
+    }
+
+    private synchronized void onItemFinished() {
+        finishedItems++;
+        notifyProgressChanged(dataMgr.getContext().getString(R.string.TxtSyncingItemContent), finishedItems,
+                totalItems);
+    }
+
     @Override
     public void startSyncing() throws DataSyncerException {
         final SettingImagePrefetching sImgPrefetch = new SettingImagePrefetching(dataMgr);
         if (sImgPrefetch.getData()) {
-            final FetchingHelper helper = new FetchingHelper();
-            helper.fetch();
+            fetchImages();
+        }
+    }
+
+    /*
+     * Stores the image shown in place of the ones failed to be fetched, once
+     * for all the items.
+     */
+    private synchronized void storePlaceholder() {
+        final File file = new File(ImageRef.getStoragePathByHash(ImageRef.PLACEHOLDER_HASH));
+        if (file.exists()) {
+            return;
+        }
+        file.getParentFile().mkdirs();
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        final InputStream input = dataMgr.getContext().getResources().openRawResource(R.raw.no_such_picture);
+        try {
+            final FileOutputStream output = new FileOutputStream(tmpFile);
+            DataUtils.streamTransfer(input, output);
+            output.close();
+            tmpFile.renameTo(file);
+        } catch (final FileNotFoundException exception) {
+            exception.printStackTrace();
+        } catch (final IOException exception) {
+            exception.printStackTrace();
+        } finally {
+            try {
+                input.close();
+            } catch (final IOException exception) {
+                exception.printStackTrace();
+            }
         }
     }
 }
@@ -13,6 +13,7 @@ package com.pursuer.reader.easyrss.network;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -27,12 +28,12 @@ import com.pursuer.reader.easyrss.data.DataMgr;
 import com.pursuer.reader.easyrss.data.DataUtils;
 import com.pursuer.reader.easyrss.data.Item;
 import com.pursuer.reader.easyrss.data.parser.ItemJSONParser;
+import com.pursuer.reader.easyrss.data.parser.OnItemContentRetrievedListener;
 import com.pursuer.reader.easyrss.data.parser.OnItemRetrievedListener;
-import com.pursuer.reader.easyrss.data.readersetting.SettingMaxItems;
 import com.pursuer.reader.easyrss.network.url.StreamContentsURL;
 
 public class ItemDataSyncer extends AbsDataSyncer implements DataSyncerListener {
-    private class ItemListener implements OnItemRetrievedListener {
+    private class ItemListener implements OnItemRetrievedListener, OnItemContentRetrievedListener {
         final private List<Item> items;
         private String continuation;
 
@@ -48,9 +49,13 @@ public class ItemDataSyncer extends AbsDataSyncer implements DataSyncerListener
             return items;
         }
 
+        @Override
+        public void onItemContentRetrieved(final Item item, final Reader content) throws IOException {
+            DataUtils.writeItemToFile(item, content);
+        }
+
         @Override
         public void onItemRetrieved(final Item item) throws IOException {
-            DataUtils.writeItemToFile(item);
             items.add(item);
         }
 
@@ -120,6 +125,14 @@ public class ItemDataSyncer extends AbsDataSyncer implements DataSyncerListener
         return newestItemTime;
     }
 
+    /*
+     * Items are loaded by the user waiting for them.
+     */
+    @Override
+    public int getPriority() {
+        return PRIORITY_INTERACTIVE;
+    }
+
     public String getUid() {
         return uid;
     }
@@ -169,6 +182,7 @@ public class ItemDataSyncer extends AbsDataSyncer implements DataSyncerListener
         try {
             final ItemJSONParser parser = new ItemJSONParser(stream);
             final ItemListener listener = new ItemListener();
+            parser.setContentListener(listener);
             parser.parse(listener);
             continuation = listener.getContinuation();
             final List<Item> items = listener.getItems();
@@ -189,13 +203,12 @@ public class ItemDataSyncer extends AbsDataSyncer implements DataSyncerListener
                 exception.printStackTrace();
             }
         }
-        dataMgr.removeOutdatedItemsWithLimit(new SettingMaxItems(dataMgr).getData());
+        dataMgr.removeOutdatedItems();
     }
 
     private void syncReadStatus() throws DataSyncerException {
         final TransactionDataSyncer syncer = TransactionDataSyncer.getInstance(dataMgr, networkConfig);
-        syncer.setListener(this);
-        syncer.sync();
-        syncer.setListener(null);
+        /* A push running on another worker is waited for, or the items synced next would undo its changes. */
+        syncer.syncAfterRunning(this);
     }
 }
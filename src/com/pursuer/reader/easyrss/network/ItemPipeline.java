@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Pursuer (http://pursuer.me).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Pursuer - initial API and implementation
+ ******************************************************************************/
+
+package com.pursuer.reader.easyrss.network;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.pursuer.reader.easyrss.data.DataMgr;
+import com.pursuer.reader.easyrss.data.Item;
+
+/*
+ * Adds the pages of items fetched by a syncer to the database in the
+ * background, page after page, so that the next page is fetched meanwhile (the
+ * files of its items are written as it is parsed). At most MAX_PENDING_PAGES
+ * pages are in flight; add() blocks until the oldest one is added when there
+ * are more.
+ */
+final class ItemPipeline {
+    final private static int MAX_PENDING_PAGES = 2;
+
+    /*
+     * Rethrows the failure of the page, if any, as it was thrown.
+     */
+    private static void waitFor(final Future<?> page) throws IOException {
+        try {
+            page.get();
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (final ExecutionException exception) {
+            final Throwable cause = exception.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            final IOException ret = new IOException(String.valueOf(cause));
+            ret.initCause(cause);
+            throw ret;
+        }
+    }
+
+    final private DataMgr dataMgr;
+    final private ExecutorService dbExecutor;
+    final private LinkedList<Future<?>> pendingPages;
+
+    public ItemPipeline(final DataMgr dataMgr) {
+        this.dataMgr = dataMgr;
+        this.dbExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(runnable, "ItemPipeline");
+            }
+        });
+        this.pendingPages = new LinkedList<Future<?>>();
+    }
+
+    /*
+     * Throws the failure of an earlier page, found while waiting for it.
+     */
+    public void add(final List<Item> items) throws IOException {
+        pendingPages.add(dbExecutor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                dataMgr.addItems(items);
+                return null;
+            }
+        }));
+        while (pendingPages.size() > MAX_PENDING_PAGES) {
+            waitFor(pendingPages.removeFirst());
+        }
+    }
+
+    /*
+     * Stops the inserts, dropping the pages not added yet.
+     */
+    public void cancel() {
+        for (final Future<?> page : pendingPages) {
+            page.cancel(true);
+        }
+        pendingPages.clear();
+        dbExecutor.shutdownNow();
+    }
+
+    /*
+     * Waits for all the pages to be added.
+     */
+    public void finish() throws IOException {
+        try {
+            while (!pendingPages.isEmpty()) {
+                waitFor(pendingPages.removeFirst());
+            }
+        } finally {
+            dbExecutor.shutdown();
+        }
+    }
+}
@@ -11,6 +11,8 @@
 
 package com.pursuer.reader.easyrss.network;
 
+import java.util.List;
+
 import com.pursuer.reader.easyrss.data.DataMgr;
 import com.pursuer.reader.easyrss.network.url.EditItemTagURL;
 
@@ -24,6 +26,13 @@ public class ItemTagDataSyncer extends AbsDataSyncer {
         this.url = new EditItemTagURL(isHttpsConnection, itemUid, tagUid, isAdd);
     }
 
+    public ItemTagDataSyncer(final DataMgr dataMgr, final int networkConfig, final List<String> itemUids,
+            final String tagUid, final boolean isAdd) {
+        super(dataMgr, networkConfig);
+
+        this.url = new EditItemTagURL(isHttpsConnection, itemUids, tagUid, isAdd);
+    }
+
     @Override
     public boolean equals(final Object obj) {
         if (this == obj) {
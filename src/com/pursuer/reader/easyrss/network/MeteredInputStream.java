@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Pursuer (http://pursuer.me).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Pursuer - initial API and implementation
+ ******************************************************************************/
+
+package com.pursuer.reader.easyrss.network;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/*
+ * The body of a response, decoded by its Content-Encoding (gzip or deflate) as
+ * it is read. Counts the bytes taken off the wire and the bytes decoded from
+ * them; both are added to the totals of NetworkClient when it is closed. The
+ * headers of the response are kept along.
+ */
+final public class MeteredInputStream extends FilterInputStream {
+    final private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        public CountingInputStream(final InputStream input) {
+            super(input);
+            this.count = 0;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int ret = in.read();
+            if (ret != -1) {
+                count++;
+            }
+            return ret;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            final int ret = in.read(buffer, offset, length);
+            if (ret > 0) {
+                count += ret;
+            }
+            return ret;
+        }
+
+        @Override
+        public long skip(final long length) throws IOException {
+            final long ret = in.skip(length);
+            count += ret;
+            return ret;
+        }
+    }
+
+    final private static int BUFFER_SIZE = 8192;
+
+    static MeteredInputStream create(final HttpTransport.Response response, final NetworkClient client)
+            throws IOException {
+        final CountingInputStream wire = new CountingInputStream(response.getBody());
+        final String encoding = response.getHeader("Content-Encoding");
+        if ("gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding)) {
+            return new MeteredInputStream(new GZIPInputStream(wire, BUFFER_SIZE), wire, null, response, client);
+        } else if ("deflate".equalsIgnoreCase(encoding)) {
+            /* Some servers send raw deflate data instead of the zlib format. */
+            final PushbackInputStream input = new PushbackInputStream(wire, 2);
+            final byte[] header = new byte[2];
+            int len = 0;
+            int count;
+            while (len < header.length && (count = input.read(header, len, header.length - len)) != -1) {
+                len += count;
+            }
+            if (len > 0) {
+                input.unread(header, 0, len);
+            }
+            final int cmf = header[0] & 0xFF;
+            final boolean isZlib = (len == 2 && (cmf & 0x0F) == 8 && ((cmf << 8) | (header[1] & 0xFF)) % 31 == 0);
+            final Inflater inflater = new Inflater(!isZlib);
+            return new MeteredInputStream(new InflaterInputStream(input, inflater, BUFFER_SIZE), wire, inflater,
+                    response, client);
+        } else {
+            return new MeteredInputStream(wire, wire, null, response, client);
+        }
+    }
+
+    final private NetworkClient client;
+    final private Inflater inflater;
+    final private HttpTransport.Response response;
+    final private CountingInputStream wire;
+    private long decodedByteCount;
+    private boolean isClosed;
+
+    private MeteredInputStream(final InputStream decoded, final CountingInputStream wire, final Inflater inflater,
+            final HttpTransport.Response response, final NetworkClient client) {
+        super(decoded);
+        this.client = client;
+        this.inflater = inflater;
+        this.response = response;
+        this.wire = wire;
+        this.decodedByteCount = 0;
+        this.isClosed = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        try {
+            in.close();
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+            client.addByteCounts(wire.getCount(), decodedByteCount);
+        }
+    }
+
+    public long getDecodedByteCount() {
+        return decodedByteCount;
+    }
+
+    public String getResponseHeader(final String name) {
+        return response.getHeader(name);
+    }
+
+    public int getResponseStatus() {
+        return response.getStatus();
+    }
+
+    public long getWireByteCount() {
+        return wire.getCount();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int ret = in.read();
+        if (ret != -1) {
+            decodedByteCount++;
+        }
+        return ret;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+        final int ret = in.read(buffer, offset, length);
+        if (ret > 0) {
+            decodedByteCount += ret;
+        }
+        return ret;
+    }
+
+    @Override
+    public long skip(final long length) throws IOException {
+        final long ret = in.skip(length);
+        decodedByteCount += ret;
+        return ret;
+    }
+}
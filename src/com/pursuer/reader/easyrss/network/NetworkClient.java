@@ -14,13 +14,13 @@ package com.pursuer.reader.easyrss.network;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.http.HttpStatus;
 
 import com.pursuer.reader.easyrss.account.ReaderAccountMgr;
+import com.pursuer.reader.easyrss.data.HttpValidator;
 
 public class NetworkClient {
     public class NetworkException extends Exception {
@@ -48,102 +48,181 @@ public class NetworkClient {
         return instance;
     }
 
+    private static byte[] readFully(final InputStream stream) throws IOException {
+        try {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            final byte[] data = new byte[8192];
+            int len;
+            while ((len = stream.read(data, 0, 8192)) != -1) {
+                output.write(data, 0, len);
+            }
+            final byte[] ret = output.toByteArray();
+            output.close();
+            return ret;
+        } finally {
+            stream.close();
+        }
+    }
+
     private String auth;
+    private long decodedByteCount;
+    private HttpTransport transport;
+    private long wireByteCount;
 
     private NetworkClient() {
-        // TODO empty method
+        this.transport = new UrlConnectionTransport();
+        this.decodedByteCount = 0;
+        this.wireByteCount = 0;
+    }
+
+    synchronized void addByteCounts(final long wireByteCount, final long decodedByteCount) {
+        this.wireByteCount += wireByteCount;
+        this.decodedByteCount += decodedByteCount;
+    }
+
+    public byte[] doGetByte(final String url) throws IOException, NetworkException {
+        return doGetByte(url, true);
+    }
+
+    /*
+     * isAuthSent: false for URLs out of the reader service, such as images.
+     */
+    public byte[] doGetByte(final String url, final boolean isAuthSent) throws IOException, NetworkException {
+        return readFully(doGetStream(url, isAuthSent));
+    }
+
+    public MeteredInputStream doGetStream(final String url) throws IOException, NetworkException {
+        return doGetStream(url, true);
+    }
+
+    /*
+     * Remember: the stream must be closed, which frees its connection.
+     */
+    public MeteredInputStream doGetStream(final String url, final boolean isAuthSent) throws IOException,
+            NetworkException {
+        return execute(url, null, isAuthSent, null, null);
+    }
+
+    /*
+     * Gets the URL from the offset on by a Range request, made conditional on
+     * the validator (ETag or Last-Modified) of the part already got by
+     * If-Range. The content is not encoded, so that the offsets are those of
+     * the resource. No authorization is sent.
+     *
+     * Return: a stream of status 206 if the range is served, of status 416 if
+     * it is refused, or of status 200 with the whole resource otherwise.
+     */
+    public MeteredInputStream doGetStreamFrom(final String url, final long offset, final String validator)
+            throws IOException, NetworkException {
+        final Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Accept-Encoding", "identity");
+        if (offset > 0 && validator != null) {
+            headers.put("Range", "bytes=" + offset + "-");
+            headers.put("If-Range", validator);
+        }
+        return execute(url, null, false, null, headers);
+    }
+
+    /*
+     * Makes the request conditional on the validators of the stored response.
+     *
+     * Return: null if the resource is not modified since (HTTP 304).
+     */
+    public MeteredInputStream doGetStreamIfModified(final String url, final HttpValidator validator)
+            throws IOException, NetworkException {
+        return execute(url, null, true, validator, null);
+    }
+
+    public byte[] doPostByte(final String url, final String params) throws IOException, NetworkException {
+        return readFully(doPostStream(url, params));
+    }
+
+    public MeteredInputStream doPostStream(final String url, final String params) throws IOException,
+            NetworkException {
+        return execute(url, params.getBytes(), true, null, null);
     }
 
-    public byte[] doGetByte(final String url) throws Exception {
-        final InputStream stream = doGetStream(url);
-        final ByteArrayOutputStream output = new ByteArrayOutputStream();
-        final byte[] data = new byte[8192];
-        int len;
-        while ((len = stream.read(data, 0, 8192)) != -1) {
-            output.write(data, 0, len);
+    /*
+     * extraHeaders: added to the request over the default ones, or null.
+     */
+    private MeteredInputStream execute(final String url, final byte[] body, final boolean isAuthSent,
+            final HttpValidator validator, final Map<String, String> extraHeaders) throws IOException,
+            NetworkException {
+        final Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Accept-Encoding", "gzip, deflate");
+        if (body != null) {
+            headers.put("Content-Type", "application/x-www-form-urlencoded");
         }
-        final byte[] ret = output.toByteArray();
-        output.close();
-        return ret;
-    }
-
-    public InputStream doGetStream(final String url) throws Exception {
-        final HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
-        conn.setConnectTimeout(40 * 1000);
-        conn.setReadTimeout(30 * 1000);
-        conn.setRequestMethod("GET");
-        if (auth != null) {
-            conn.setRequestProperty("Authorization", "GoogleLogin auth=" + auth);
+        if (isAuthSent && auth != null) {
+            headers.put("Authorization", "GoogleLogin auth=" + auth);
         }
+        if (validator != null && validator.getETag() != null) {
+            headers.put("If-None-Match", validator.getETag());
+        }
+        if (validator != null && validator.getLastModified() != null) {
+            headers.put("If-Modified-Since", validator.getLastModified());
+        }
+        if (extraHeaders != null) {
+            headers.putAll(extraHeaders);
+        }
+        final HttpTransport.Response response;
         try {
-            final int resStatus = conn.getResponseCode();
-            if (resStatus == HttpStatus.SC_UNAUTHORIZED) {
-                ReaderAccountMgr.getInstance().invalidateAuth();
-            }
-            if (resStatus != HttpStatus.SC_OK) {
-                throw new NetworkException("Invalid HTTP status " + resStatus + ": " + url + ".");
-            }
-        } catch (final Exception exception) {
-            if (exception.getMessage() != null && exception.getMessage().contains("authentication")) {
+            response = transport.execute(url, headers, body);
+        } catch (final IOException exception) {
+            if (isAuthSent && exception.getMessage() != null && exception.getMessage().contains("authentication")) {
                 ReaderAccountMgr.getInstance().invalidateAuth();
             }
             throw exception;
         }
-        return conn.getInputStream();
-    }
-
-    public byte[] doPostByte(final String url, final String params) throws Exception {
-        final InputStream stream = doPostStream(url, params);
-        final ByteArrayOutputStream output = new ByteArrayOutputStream();
-        final byte[] data = new byte[8192];
-        int len;
-        while ((len = stream.read(data, 0, 8192)) != -1) {
-            output.write(data, 0, len);
-        }
-        final byte[] ret = output.toByteArray();
-        output.close();
-        return ret;
-    }
-
-    public InputStream doPostStream(final String url, final String params) throws IOException, NetworkException {
-        final HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
-        conn.setConnectTimeout(40 * 1000);
-        conn.setReadTimeout(30 * 1000);
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-        if (auth != null) {
-            conn.setRequestProperty("Authorization", "GoogleLogin auth=" + auth);
+        final int resStatus = response.getStatus();
+        if (validator != null && resStatus == HttpStatus.SC_NOT_MODIFIED) {
+            response.getBody().close();
+            return null;
         }
-        conn.setDoInput(true);
-        conn.setDoOutput(true);
-        final OutputStream output = conn.getOutputStream();
-        output.write(params.getBytes());
-        output.flush();
-        output.close();
-
-        conn.connect();
-        try {
-            final int resStatus = conn.getResponseCode();
-            if (resStatus == HttpStatus.SC_UNAUTHORIZED) {
+        /* The answers to a Range request are left to the caller. */
+        if (resStatus != HttpStatus.SC_OK && !((resStatus == HttpStatus.SC_PARTIAL_CONTENT
+                || resStatus == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE) && headers.containsKey("Range"))) {
+            response.getBody().close();
+            if (isAuthSent && resStatus == HttpStatus.SC_UNAUTHORIZED) {
                 ReaderAccountMgr.getInstance().invalidateAuth();
             }
-            if (resStatus != HttpStatus.SC_OK) {
-                throw new NetworkException("Invalid HTTP status " + resStatus + ": " + url + ".");
-            }
+            throw new NetworkException("Invalid HTTP status " + resStatus + ": " + url + ".");
+        }
+        try {
+            return MeteredInputStream.create(response, this);
         } catch (final IOException exception) {
-            if (exception.getMessage() != null && exception.getMessage().contains("authentication")) {
-                ReaderAccountMgr.getInstance().invalidateAuth();
-            }
+            response.getBody().close();
             throw exception;
         }
-        return conn.getInputStream();
     }
 
     public String getAuth() {
         return auth;
     }
 
+    /*
+     * Return: the number of bytes decoded from all the closed responses.
+     */
+    public synchronized long getDecodedByteCount() {
+        return decodedByteCount;
+    }
+
+    public HttpTransport getTransport() {
+        return transport;
+    }
+
+    /*
+     * Return: the number of bytes received for all the closed responses.
+     */
+    public synchronized long getWireByteCount() {
+        return wireByteCount;
+    }
+
     public void setAuth(final String auth) {
         this.auth = auth;
     }
+
+    public void setTransport(final HttpTransport transport) {
+        this.transport = transport;
+    }
 }
@@ -11,10 +11,12 @@
 
 package com.pursuer.reader.easyrss.network;
 
+import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
+import java.util.Set;
 
 import android.content.Context;
 import android.os.Bundle;
@@ -50,17 +52,18 @@ final public class NetworkMgr implements DataSyncerListener {
                     exception.printStackTrace();
                 }
                 final ItemContentDataSyncer syncer = ItemContentDataSyncer.getInstance(dataMgr, getNetworkConfig());
+                if (!syncer.setEnterRunning()) {
+                    continue;
+                }
                 NetworkMgr.this.notifySyncStarted(syncer);
-                syncer.setListener(NetworkMgr.this);
                 boolean succeeded;
                 try {
-                    syncer.sync();
+                    syncer.runEntered(NetworkMgr.this);
                     succeeded = true;
                 } catch (final DataSyncerException exception) {
                     exception.printStackTrace();
                     succeeded = false;
                 }
-                syncer.setListener(null);
                 notifySyncFinished(syncer, succeeded);
             }
         }
@@ -74,34 +77,32 @@ final public class NetworkMgr implements DataSyncerListener {
         }
     }
     private class SyncThread extends Thread {
+        final private int index;
+
+        public SyncThread(final int index) {
+            this.index = index;
+        }
+
         @Override
         public void run() {
             while (true) {
                 final AbsDataSyncer syncer;
-                synchronized (syncers) {
-                    while (syncers.isEmpty()) {
-                        try {
-                            syncers.wait();
-                        } catch (final InterruptedException exception) {
-                            exception.printStackTrace();
-                        }
-                    }
-                    syncer = syncers.remove();
+                try {
+                    syncer = takeSyncer(index);
+                } catch (final InterruptedException exception) {
+                    exception.printStackTrace();
+                    continue;
                 }
-                notifySyncStarted(syncer);
-                syncer.setListener(NetworkMgr.this);
-                boolean succeeded;
                 try {
-                    syncer.sync();
-                    succeeded = true;
-                } catch (final Exception exception) {
-                    notifyOnDataSyncerProgressChanged(
-                            context.getString(R.string.TxtSyncFailed) + ": " + exception.getMessage() + ".", -1, -1);
-                    succeeded = false;
+                    runSyncer(syncer);
+                } finally {
+                    synchronized (queues) {
+                        if (syncer.getPriority() == AbsDataSyncer.PRIORITY_BACKGROUND) {
+                            runningBackgroundCount--;
+                        }
+                        queues.notifyAll();
+                    }
                 }
-                syncer.setPending(false);
-                syncer.setListener(null);
-                notifySyncFinished(syncer, succeeded);
             }
         }
     }
@@ -138,6 +139,7 @@ final public class NetworkMgr implements DataSyncerListener {
                 case MSG_SYNC_FINISHED: {
                     final String syncerType = bundle.getString(KEY_SYNCER_TYPE);
                     final boolean succeeded = bundle.getBoolean(KEY_SUCCEEDED);
+                    instance.runningSyncCount--;
                     try {
                         for (final NetworkListener listener : instance.listeners) {
                             listener.onSyncFinished(syncerType, succeeded);
@@ -149,6 +151,7 @@ final public class NetworkMgr implements DataSyncerListener {
                     break;
                 case MSG_SYNC_STARTED: {
                     final String syncerType = bundle.getString(KEY_SYNCER_TYPE);
+                    instance.runningSyncCount++;
                     try {
                         for (final NetworkListener listener : instance.listeners) {
                             listener.onSyncStarted(syncerType);
@@ -176,6 +179,8 @@ final public class NetworkMgr implements DataSyncerListener {
     final static private int MSG_SYNC_FINISHED = 2;
     final static private int MSG_SYNC_STARTED = 3;
 
+    final static private int DEFAULT_WORKER_COUNT = 2;
+
     public static NetworkMgr getInstance() {
         return instance;
     }
@@ -189,18 +194,35 @@ final public class NetworkMgr implements DataSyncerListener {
     final private ItemContentSyncThread itemContentSyncThread;
     final private List<NetworkListener> listeners;
     private Thread loginThread;
-    final private Queue<AbsDataSyncer> syncers;
-    final private SyncThread syncThread;
+    /*
+     * The syncers waiting to run, a FIFO queue for each priority. Only
+     * workerCount - 1 of the threads run background syncers, so that an
+     * interactive syncer never waits for them to finish.
+     */
+    final private List<LinkedList<AbsDataSyncer>> queues;
+    /* The syncers asked for again while running, which run once more then. */
+    final private Set<AbsDataSyncer> rerunSyncers;
+    private int runningBackgroundCount;
+    /* The syncs started and not finished yet, as told to the listeners. */
+    private int runningSyncCount;
+    final private List<SyncThread> syncThreads;
+    private int workerCount;
 
     private NetworkMgr(final Context context) {
         this.context = context;
-        this.syncers = new LinkedList<AbsDataSyncer>();
+        this.queues = new ArrayList<LinkedList<AbsDataSyncer>>(AbsDataSyncer.PRIORITY_COUNT);
+        for (int i = 0; i < AbsDataSyncer.PRIORITY_COUNT; i++) {
+            queues.add(new LinkedList<AbsDataSyncer>());
+        }
+        this.rerunSyncers = new HashSet<AbsDataSyncer>();
+        this.runningBackgroundCount = 0;
+        this.runningSyncCount = 0;
         this.listeners = new LinkedList<NetworkListener>();
-        this.syncThread = new SyncThread();
+        this.syncThreads = new ArrayList<SyncThread>();
+        this.workerCount = 0;
         this.itemContentSyncThread = new ItemContentSyncThread();
-        
-        syncThread.setPriority(Thread.MIN_PRIORITY);
-        syncThread.start();
+
+        setWorkerCount(DEFAULT_WORKER_COUNT);
         itemContentSyncThread.setPriority(Thread.MIN_PRIORITY);
         itemContentSyncThread.start();
     }
@@ -212,6 +234,23 @@ final public class NetworkMgr implements DataSyncerListener {
         listeners.add(listener);
     }
 
+    public int getWorkerCount() {
+        synchronized (queues) {
+            return workerCount;
+        }
+    }
+
+    /*
+     * This method need to be called in MAIN thread.
+     *
+     * Return: whether any sync is running, counting the ones run nested in
+     * another by runUrgentSyncers() and the ones on other workers. Listeners
+     * should check it on a finished sync rather than assume none is left.
+     */
+    public boolean isSyncing() {
+        return runningSyncCount > 0;
+    }
+
     public void login(final String user, final String pass) {
         if (loginThread != null && loginThread.isAlive()) {
             return;
@@ -272,6 +311,19 @@ final public class NetworkMgr implements DataSyncerListener {
         notifyOnDataSyncerProgressChanged(text, progress, maxProgress);
     }
 
+    /*
+     * Return: the first syncer of a priority over minPriority queued, or null if
+     * there is none.
+     */
+    private AbsDataSyncer pollSyncer(final int minPriority) {
+        for (int i = AbsDataSyncer.PRIORITY_COUNT - 1; i > minPriority; i--) {
+            if (!queues.get(i).isEmpty()) {
+                return queues.get(i).remove();
+            }
+        }
+        return null;
+    }
+
     /*
      * This method need to be called in MAIN thread.
      */
@@ -279,6 +331,76 @@ final public class NetworkMgr implements DataSyncerListener {
         listeners.remove(listener);
     }
 
+    private void runSyncer(final AbsDataSyncer syncer) {
+        if (!syncer.setEnterRunning()) {
+            /* Run by another thread, see syncAfterRunning(): dropped as sync() does. */
+            synchronized (queues) {
+                syncer.setPending(false);
+                rerunSyncers.remove(syncer);
+            }
+            return;
+        }
+        notifySyncStarted(syncer);
+        boolean succeeded = false;
+        final boolean isRerun;
+        try {
+            syncer.runEntered(NetworkMgr.this);
+            succeeded = true;
+        } catch (final Exception exception) {
+            notifyOnDataSyncerProgressChanged(
+                    context.getString(R.string.TxtSyncFailed) + ": " + exception.getMessage() + ".", -1, -1);
+        } finally {
+            synchronized (queues) {
+                syncer.setPending(false);
+                isRerun = rerunSyncers.remove(syncer);
+            }
+            /* Always paired with the start, so that the count of running syncs stays right. */
+            notifySyncFinished(syncer, succeeded);
+        }
+        if (isRerun) {
+            startSync(syncer);
+        }
+    }
+
+    /*
+     * Runs the syncers of priorities over the given one queued, on the thread
+     * of the syncer calling it at a preemption point. Syncers not run by
+     * NetworkMgr are not preempted. Each one is notified as started and
+     * finished on its own, nested in the pair of the syncer preempted.
+     */
+    void runUrgentSyncers(final int priority) {
+        if (!(Thread.currentThread() instanceof SyncThread)) {
+            return;
+        }
+        while (true) {
+            final AbsDataSyncer syncer;
+            synchronized (queues) {
+                syncer = pollSyncer(priority);
+            }
+            if (syncer == null) {
+                return;
+            }
+            runSyncer(syncer);
+        }
+    }
+
+    /*
+     * Threads are started up to the count at once; the ones over it stop
+     * taking syncers.
+     */
+    public void setWorkerCount(final int workerCount) {
+        synchronized (queues) {
+            this.workerCount = Math.max(1, workerCount);
+            while (syncThreads.size() < this.workerCount) {
+                final SyncThread thread = new SyncThread(syncThreads.size());
+                thread.setPriority(Thread.MIN_PRIORITY);
+                thread.start();
+                syncThreads.add(thread);
+            }
+            queues.notifyAll();
+        }
+    }
+
     public void startImmediateItemStateSyncing() {
         final SettingImmediateStateSyncing sStateSyncing = new SettingImmediateStateSyncing(DataMgr.getInstance());
         if (sStateSyncing.getData()) {
@@ -286,13 +408,26 @@ final public class NetworkMgr implements DataSyncerListener {
         }
     }
 
+    /*
+     * A syncer already queued, or equal to one queued, is not queued again. A
+     * state syncer asked for while running is run once more after, to push the
+     * changes made in the meantime.
+     */
     public void startSync(final AbsDataSyncer syncer) {
-        if (!syncer.setEnterPending()) {
-            return;
-        }
-        synchronized (syncers) {
-            syncers.add(syncer);
-            syncers.notify();
+        synchronized (queues) {
+            if (!syncer.setEnterPending()) {
+                if (syncer.isRunning() && syncer.getPriority() == AbsDataSyncer.PRIORITY_STATE) {
+                    rerunSyncers.add(syncer);
+                }
+                return;
+            }
+            final LinkedList<AbsDataSyncer> queue = queues.get(syncer.getPriority());
+            if (queue.contains(syncer)) {
+                syncer.setPending(false);
+                return;
+            }
+            queue.add(syncer);
+            queues.notifyAll();
         }
     }
 
@@ -301,4 +436,28 @@ final public class NetworkMgr implements DataSyncerListener {
         itemContentSyncThread.setNetworkConfig(sImageFetch.getData());
         itemContentSyncThread.notifySyncStarted();
     }
+
+    /*
+     * Return: the next syncer for the thread to run, the ones of higher
+     * priorities first.
+     */
+    private AbsDataSyncer takeSyncer(final int index) throws InterruptedException {
+        synchronized (queues) {
+            while (true) {
+                if (index < workerCount) {
+                    AbsDataSyncer ret = pollSyncer(AbsDataSyncer.PRIORITY_BACKGROUND);
+                    if (ret == null && runningBackgroundCount < Math.max(1, workerCount - 1)) {
+                        ret = queues.get(AbsDataSyncer.PRIORITY_BACKGROUND).poll();
+                        if (ret != null) {
+                            runningBackgroundCount++;
+                        }
+                    }
+                    if (ret != null) {
+                        return ret;
+                    }
+                }
+                queues.wait();
+            }
+        }
+    }
 }
@@ -11,16 +11,19 @@
 
 package com.pursuer.reader.easyrss.network;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import android.content.ContentResolver;
 import android.content.Context;
 import android.database.Cursor;
-import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 
 import com.fasterxml.jackson.core.JsonParseException;
@@ -37,6 +40,64 @@ import com.pursuer.reader.easyrss.network.url.SubscriptionIconUrl;
 import com.pursuer.reader.easyrss.network.url.SubscriptionListURL;
 
 public class SubscriptionDataSyncer extends AbsDataSyncer {
+    /*
+     * Fetches an icon for the subscriptions sharing it.
+     */
+    private class IconRequest implements Runnable {
+        final private SubscriptionIconUrl url;
+        final private List<String> uids;
+        private volatile byte[] data;
+
+        public IconRequest(final SubscriptionIconUrl url) {
+            this.url = url;
+            this.uids = new LinkedList<String>();
+            this.data = null;
+        }
+
+        public void addUid(final String uid) {
+            uids.add(uid);
+        }
+
+        /*
+         * Return: the icon fetched, or null if it failed.
+         */
+        public byte[] getData() {
+            return data;
+        }
+
+        public List<String> getUids() {
+            return uids;
+        }
+
+        @Override
+        public void run() {
+            try {
+                final byte[] ret = httpGetQueryByte(url);
+                /* Only the bounds are decoded to tell an image; the data is stored as it is. */
+                final BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inJustDecodeBounds = true;
+                BitmapFactory.decodeByteArray(ret, 0, ret.length, options);
+                if (options.outWidth <= 0 || options.outHeight <= 0) {
+                    throw new DataSyncerException("Not an image: " + url.getCacheKey());
+                }
+                if (ret.length <= MAX_ICON_DATA_SIZE && options.outWidth <= MAX_ICON_SIZE
+                        && options.outHeight <= MAX_ICON_SIZE) {
+                    data = ret;
+                    return;
+                }
+                /* Oversized icons are shrunk before they are stored, or left out. */
+                final byte[] shrunk = ImageTranscoder.shrinkByteArray(ret, MAX_ICON_SIZE);
+                if (shrunk == null || shrunk.length > MAX_ICON_DATA_SIZE) {
+                    throw new DataSyncerException("Oversized icon: " + url.getCacheKey());
+                }
+                data = shrunk;
+            } catch (final DataSyncerException exception) {
+                exception.printStackTrace();
+                setIconFailed(url.getCacheKey());
+            }
+        }
+    }
+
     private class SyncerSubscriptionListener implements OnSubscriptionRetrievedListener {
         final private List<Subscription> subscriptions;
 
@@ -53,6 +114,14 @@ public class SubscriptionDataSyncer extends AbsDataSyncer {
         }
     }
 
+    final private static long FAILED_ICON_RETRY_INTERVAL = 24 * 60 * 60 * 1000;
+    final private static int ICON_FETCHING_THREAD_COUNT = 4;
+    final private static int MAX_ICON_DATA_SIZE = 32 * 1024;
+    /* In pixels, per side. */
+    final private static int MAX_ICON_SIZE = 128;
+
+    /* The times the icons failed to be fetched, by their URLs. */
+    final private static Map<String, Long> failedIcons = new HashMap<String, Long>();
     private static SubscriptionDataSyncer instance;
 
     private static synchronized void clearInstance() {
@@ -70,6 +139,23 @@ public class SubscriptionDataSyncer extends AbsDataSyncer {
         return instance != null;
     }
 
+    private static boolean isIconFailed(final String url) {
+        synchronized (failedIcons) {
+            final Long time = failedIcons.get(url);
+            if (time != null && time + FAILED_ICON_RETRY_INTERVAL < System.currentTimeMillis()) {
+                failedIcons.remove(url);
+                return false;
+            }
+            return (time != null);
+        }
+    }
+
+    private static void setIconFailed(final String url) {
+        synchronized (failedIcons) {
+            failedIcons.put(url, System.currentTimeMillis());
+        }
+    }
+
     private SubscriptionDataSyncer(final DataMgr dataMgr, final int networkConfig) {
         super(dataMgr, networkConfig);
     }
@@ -99,41 +185,70 @@ public class SubscriptionDataSyncer extends AbsDataSyncer {
         }
 
         syncSubscriptions();
+        yieldToUrgentSyncers();
         syncSubscriptionIcons();
 
         dataMgr.updateSetting(new Setting(Setting.SETTING_SUBSCRIPTION_LIST_EXPIRE_TIME, System.currentTimeMillis()));
     }
 
-    private void syncSubscriptionIcons() throws DataSyncerException {
+    /*
+     * Fetches the missing icons ICON_FETCHING_THREAD_COUNT at a time, once for
+     * all the subscriptions sharing one. An icon failed to be fetched is left
+     * out without failing the others, and not tried again for
+     * FAILED_ICON_RETRY_INTERVAL. The icons fetched are stored at once.
+     */
+    private void syncSubscriptionIcons() {
         final Context context = dataMgr.getContext();
         if (!NetworkUtils.checkSyncingNetworkStatus(context, networkConfig)) {
             return;
         }
+        final Map<String, IconRequest> requests = new LinkedHashMap<String, IconRequest>();
         final ContentResolver resolver = context.getContentResolver();
         final Cursor cur = resolver.query(Subscription.CONTENT_URI, new String[] { Subscription._UID,
-                Subscription._ICON, Subscription._URL }, null, null, null);
+                Subscription._URL }, Subscription._ICON + " IS NULL", null, null);
         for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
-            final String uid = cur.getString(0);
-            final byte[] data = cur.getBlob(1);
-            final String subUrl = cur.getString(2);
-            if (subUrl != null && data == null) {
-                final SubscriptionIconUrl fetchUrl = new SubscriptionIconUrl(isHttpsConnection, subUrl);
-                try {
-                    final byte[] iconData = httpGetQueryByte(fetchUrl);
-                    final Bitmap icon = BitmapFactory.decodeByteArray(iconData, 0, iconData.length);
-                    final int size = icon.getWidth() * icon.getHeight() * 2;
-                    final ByteArrayOutputStream output = new ByteArrayOutputStream(size);
-                    icon.compress(Bitmap.CompressFormat.PNG, 100, output);
-                    output.flush();
-                    output.close();
-                    dataMgr.updateSubscriptionIconByUid(uid, output.toByteArray());
-                } catch (final IOException exception) {
-                    cur.close();
-                    throw new DataSyncerException(exception);
+            final String subUrl = cur.getString(1);
+            if (subUrl == null) {
+                continue;
+            }
+            final SubscriptionIconUrl fetchUrl = new SubscriptionIconUrl(isHttpsConnection, subUrl);
+            final String key = fetchUrl.getCacheKey();
+            IconRequest request = requests.get(key);
+            if (request == null) {
+                if (isIconFailed(key)) {
+                    continue;
                 }
+                request = new IconRequest(fetchUrl);
+                requests.put(key, request);
             }
+            request.addUid(cur.getString(0));
         }
         cur.close();
+        if (requests.isEmpty()) {
+            return;
+        }
+
+        final ExecutorService execService = Executors.newFixedThreadPool(ICON_FETCHING_THREAD_COUNT);
+        for (final IconRequest request : requests.values()) {
+            execService.execute(request);
+        }
+        execService.shutdown();
+        try {
+            execService.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+        } catch (final InterruptedException exception) {
+            exception.printStackTrace();
+            execService.shutdownNow();
+        }
+        final Map<String, byte[]> icons = new HashMap<String, byte[]>();
+        for (final IconRequest request : requests.values()) {
+            final byte[] data = request.getData();
+            if (data != null) {
+                for (final String uid : request.getUids()) {
+                    icons.put(uid, data);
+                }
+            }
+        }
+        dataMgr.updateSubscriptionIcons(icons);
     }
 
     private void syncSubscriptions() throws DataSyncerException {
@@ -143,7 +258,12 @@ public class SubscriptionDataSyncer extends AbsDataSyncer {
         }
         notifyProgressChanged(context.getString(R.string.TxtSyncingSubscriptions), -1, -1);
 
-        final InputStream stream = httpGetQueryStream(new SubscriptionListURL(isHttpsConnection));
+        final SubscriptionListURL url = new SubscriptionListURL(isHttpsConnection);
+        final MeteredInputStream stream = httpGetQueryStreamIfModified(url);
+        if (stream == null) {
+            /* Not modified: the stored subscriptions are up to date. */
+            return;
+        }
         final SubscriptionJSONParser parser = new SubscriptionJSONParser(stream);
         final long curTime = System.currentTimeMillis();
         try {
@@ -168,5 +288,6 @@ public class SubscriptionDataSyncer extends AbsDataSyncer {
             }
         }
         dataMgr.removeOutdatedSubscriptions(curTime);
+        updateHttpValidator(url, stream);
     }
 }
@@ -12,7 +12,6 @@
 package com.pursuer.reader.easyrss.network;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -104,7 +103,12 @@ public class TagDataSyncer extends AbsDataSyncer {
         }
         notifyProgressChanged(context.getString(R.string.TxtSyncingTags), -1, -1);
 
-        final InputStream stream = httpGetQueryStream(new TagListURL(isHttpsConnection));
+        final TagListURL url = new TagListURL(isHttpsConnection);
+        final MeteredInputStream stream = httpGetQueryStreamIfModified(url);
+        if (stream == null) {
+            /* Not modified: the stored tags are up to date. */
+            return;
+        }
         final TagJSONParser parser = new TagJSONParser(stream);
         final long curTime = System.currentTimeMillis();
         try {
@@ -129,5 +133,6 @@ public class TagDataSyncer extends AbsDataSyncer {
             }
         }
         dataMgr.removeOutdatedTags(curTime);
+        updateHttpValidator(url, stream);
     }
 }
@@ -12,7 +12,10 @@
 package com.pursuer.reader.easyrss.network;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -26,7 +29,43 @@ import com.pursuer.reader.easyrss.R;
 import com.pursuer.reader.easyrss.data.DataMgr;
 import com.pursuer.reader.easyrss.data.Transaction;
 
+/*
+ * Sends the pending transactions by edit-tag requests of up to batchSize items
+ * each, one request for the items sharing a tag and a direction. Of the
+ * transactions of an item on the same tag, only the last one is sent; the
+ * ones before it are removed along with it.
+ */
 public class TransactionDataSyncer extends AbsDataSyncer {
+    private class Batch {
+        final private List<Long> ids;
+        final private List<String> itemUids;
+        final private String tagUid;
+        final private boolean isAdd;
+
+        public Batch(final String tagUid, final boolean isAdd) {
+            this.ids = new ArrayList<Long>();
+            this.itemUids = new ArrayList<String>();
+            this.tagUid = tagUid;
+            this.isAdd = isAdd;
+        }
+
+        public List<Long> getIds() {
+            return ids;
+        }
+
+        public List<String> getItemUids() {
+            return itemUids;
+        }
+
+        public String getTagUid() {
+            return tagUid;
+        }
+
+        public boolean isAdd() {
+            return isAdd;
+        }
+    }
+
     private class SyncingThread implements Runnable {
         private Exception exception;
 
@@ -38,37 +77,14 @@ public class TransactionDataSyncer extends AbsDataSyncer {
         public void run() {
             while (true) {
                 try {
-                    final Transaction trans = getNextTransaction();
-                    if (trans == null) {
+                    final Batch batch = getNextBatch();
+                    if (batch == null) {
                         return;
                     }
-                    String tag = "";
-                    boolean isAdd = false;
-                    switch (trans.getType()) {
-                    case Transaction.TYPE_SET_READ:
-                        tag = "user/-/state/com.google/read";
-                        isAdd = true;
-                        break;
-                    case Transaction.TYPE_REMOVE_READ:
-                        tag = "user/-/state/com.google/read";
-                        isAdd = false;
-                        break;
-                    case Transaction.TYPE_SET_STARRED:
-                        tag = "user/-/state/com.google/starred";
-                        isAdd = true;
-                        break;
-                    case Transaction.TYPE_REMOVE_STARRED:
-                        tag = "user/-/state/com.google/starred";
-                        isAdd = false;
-                        break;
-                    default:
-                    }
-                    if (tag.length() > 0) {
-                        final ItemTagDataSyncer syncer = new ItemTagDataSyncer(dataMgr, networkConfig, trans.getUid(),
-                                tag, isAdd);
-                        syncer.sync();
-                    }
-                    dataMgr.removeTransactionById(trans.getId());
+                    final ItemTagDataSyncer syncer = new ItemTagDataSyncer(dataMgr, networkConfig,
+                            batch.getItemUids(), batch.getTagUid(), batch.isAdd());
+                    syncer.sync();
+                    dataMgr.removeTransactionsByIds(batch.getIds());
                 } catch (final DataSyncerException exception) {
                     this.exception = exception;
                     return;
@@ -77,10 +93,11 @@ public class TransactionDataSyncer extends AbsDataSyncer {
         }
     }
 
+    final public static int DEFAULT_BATCH_SIZE = 100;
     final static int SYNCING_THREAD_COUNT = 5;
-
-    final private List<Transaction> transactions;
-    private int progress;
+    final static int TRANSACTION_QUERY_LIMIT = 1000;
+    final private static String TAG_READ = "user/-/state/com.google/read";
+    final private static String TAG_STARRED = "user/-/state/com.google/starred";
 
     private static TransactionDataSyncer instance;
 
@@ -91,9 +108,72 @@ public class TransactionDataSyncer extends AbsDataSyncer {
         return instance;
     }
 
+    private static String getTagUid(final int type) {
+        switch (type) {
+        case Transaction.TYPE_SET_READ:
+        case Transaction.TYPE_REMOVE_READ:
+            return TAG_READ;
+        case Transaction.TYPE_SET_STARRED:
+        case Transaction.TYPE_REMOVE_STARRED:
+            return TAG_STARRED;
+        default:
+            return null;
+        }
+    }
+
+    private static boolean isAdd(final int type) {
+        return (type == Transaction.TYPE_SET_READ || type == Transaction.TYPE_SET_STARRED);
+    }
+
+    final private List<Batch> batches;
+    private int batchSize;
+    private int progress;
+
     private TransactionDataSyncer(final DataMgr dataMgr, final int networkConfig) {
         super(dataMgr, networkConfig);
-        this.transactions = new ArrayList<Transaction>();
+        this.batches = new ArrayList<Batch>();
+        this.batchSize = DEFAULT_BATCH_SIZE;
+    }
+
+    /*
+     * Groups the transactions (in the order they are queued) into batches.
+     * Return: the ids of the transactions not to be sent at all.
+     */
+    private List<Long> createBatches(final List<Transaction> transactions) {
+        final List<Long> ret = new LinkedList<Long>();
+        final Map<String, List<Transaction>> transByItemTag = new LinkedHashMap<String, List<Transaction>>();
+        for (final Transaction trans : transactions) {
+            final String tagUid = getTagUid(trans.getType());
+            if (tagUid == null) {
+                ret.add(trans.getId());
+                continue;
+            }
+            final String key = trans.getUid() + ' ' + tagUid;
+            List<Transaction> list = transByItemTag.get(key);
+            if (list == null) {
+                list = new LinkedList<Transaction>();
+                transByItemTag.put(key, list);
+            }
+            list.add(trans);
+        }
+        final Map<Integer, Batch> openBatches = new LinkedHashMap<Integer, Batch>();
+        for (final List<Transaction> list : transByItemTag.values()) {
+            final Transaction last = list.get(list.size() - 1);
+            Batch batch = openBatches.get(last.getType());
+            if (batch == null) {
+                batch = new Batch(getTagUid(last.getType()), isAdd(last.getType()));
+                openBatches.put(last.getType(), batch);
+                batches.add(batch);
+            }
+            for (final Transaction trans : list) {
+                batch.getIds().add(trans.getId());
+            }
+            batch.getItemUids().add(last.getUid());
+            if (batch.getItemUids().size() >= batchSize) {
+                openBatches.remove(last.getType());
+            }
+        }
+        return ret;
     }
 
     @Override
@@ -101,14 +181,21 @@ public class TransactionDataSyncer extends AbsDataSyncer {
         // TODO nothing needed
     }
 
-    private Transaction getNextTransaction() throws DataSyncerException {
-        synchronized (transactions) {
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /*
+     * The token is checked once for each batch, instead of each item.
+     */
+    private Batch getNextBatch() throws DataSyncerException {
+        synchronized (batches) {
             final Context context = dataMgr.getContext();
-            notifyProgressChanged(context.getString(R.string.TxtSyncingItemStatus), progress, transactions.size());
-            if (progress < transactions.size()) {
+            notifyProgressChanged(context.getString(R.string.TxtSyncingItemStatus), progress, batches.size());
+            if (progress < batches.size()) {
                 final TokenDataSyncer tSyncer = new TokenDataSyncer(dataMgr, networkConfig);
                 tSyncer.sync();
-                final Transaction ret = transactions.get(progress);
+                final Batch ret = batches.get(progress);
                 progress++;
                 return ret;
             } else {
@@ -117,6 +204,18 @@ public class TransactionDataSyncer extends AbsDataSyncer {
         }
     }
 
+    @Override
+    public int getPriority() {
+        return PRIORITY_STATE;
+    }
+
+    /*
+     * batchSize: the max number of items sent by a single edit-tag request.
+     */
+    public void setBatchSize(final int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
     @Override
     public void startSyncing() throws DataSyncerException {
         syncTransactions();
@@ -130,14 +229,20 @@ public class TransactionDataSyncer extends AbsDataSyncer {
                 return;
             }
             progress = 0;
-            transactions.clear();
-            final Cursor cur = resolver.query(Transaction.CONTENT_URI, null, null, null, Transaction._ID + " LIMIT 50");
+            batches.clear();
+            final List<Transaction> transactions = new ArrayList<Transaction>();
+            final Cursor cur = resolver.query(Transaction.CONTENT_URI, null, null, null, Transaction._ID + " LIMIT "
+                    + TRANSACTION_QUERY_LIMIT);
             for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
                 transactions.add(Transaction.fromCursor(cur));
             }
             cur.close();
-            if (!transactions.isEmpty()) {
-                final int tCount = Math.min(SYNCING_THREAD_COUNT, transactions.size());
+            if (transactions.isEmpty()) {
+                break;
+            }
+            dataMgr.removeTransactionsByIds(createBatches(transactions));
+            if (!batches.isEmpty()) {
+                final int tCount = Math.min(SYNCING_THREAD_COUNT, batches.size());
                 final List<SyncingThread> syncingThreads = new ArrayList<TransactionDataSyncer.SyncingThread>(tCount);
                 final ExecutorService execService = Executors.newFixedThreadPool(tCount, new ThreadFactory() {
                     @Override
@@ -163,8 +268,6 @@ public class TransactionDataSyncer extends AbsDataSyncer {
                 } catch (final InterruptedException exception) {
                     exception.printStackTrace();
                 }
-            } else {
-                break;
             }
         }
     }
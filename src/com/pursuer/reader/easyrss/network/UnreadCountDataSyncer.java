@@ -66,10 +66,15 @@ public class UnreadCountDataSyncer extends AbsDataSyncer {
         if (!NetworkUtils.checkSyncingNetworkStatus(context, networkConfig)) {
             return;
         }
-        final byte[] content = httpGetQueryByte(new UnreadCountURL(isHttpsConnection));
+        final UnreadCountURL url = new UnreadCountURL(isHttpsConnection);
+        final MeteredInputStream stream = httpGetQueryStreamIfModified(url);
+        if (stream == null) {
+            /* Not modified: the stored unread counts are up to date. */
+            return;
+        }
         final long curTime = System.currentTimeMillis();
         try {
-            final UnreadCountJSONParser parser = new UnreadCountJSONParser(content);
+            final UnreadCountJSONParser parser = new UnreadCountJSONParser(stream);
             final UnreadCountListener listener = new UnreadCountListener();
             parser.parse(listener);
             dataMgr.updateUnreadCounts(listener.getUnreadCounts());
@@ -79,8 +84,15 @@ public class UnreadCountDataSyncer extends AbsDataSyncer {
             throw new DataSyncerException(exception);
         } catch (final IOException exception) {
             throw new DataSyncerException(exception);
+        } finally {
+            try {
+                stream.close();
+            } catch (final IOException exception) {
+                exception.printStackTrace();
+            }
         }
         dataMgr.removeOutdatedUnreadCounts(curTime);
+        updateHttpValidator(url, stream);
         final String sUpdTime = dataMgr.getSettingByName(Setting.SETTING_GLOBAL_ITEM_UPDATE_TIME);
         final long updTime = (sUpdTime == null) ? 0 : Long.valueOf(sUpdTime);
         if (updTime < curTime) {
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Pursuer (http://pursuer.me).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Pursuer - initial API and implementation
+ ******************************************************************************/
+
+package com.pursuer.reader.easyrss.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import android.os.Build;
+
+/*
+ * HttpTransport over HttpURLConnection, which keeps idle connections alive in
+ * a pool of its own. Closing a body reads what is left of it (up to
+ * MAX_DRAINED_BYTES), so that the connection can go back to that pool.
+ * At most MAX_CONNECTIONS_PER_HOST requests run against a host at a time; a
+ * request holds its slot until its body is closed.
+ */
+final class UrlConnectionTransport implements HttpTransport {
+    final private static class Body extends FilterInputStream {
+        final private HttpURLConnection connection;
+        final private Semaphore permit;
+        private boolean isClosed;
+
+        public Body(final InputStream input, final HttpURLConnection connection, final Semaphore permit) {
+            super(input);
+            this.connection = connection;
+            this.permit = permit;
+            this.isClosed = false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+            try {
+                if (!drain(in)) {
+                    /* Cheaper to drop the connection than to read the rest. */
+                    connection.disconnect();
+                }
+                in.close();
+            } finally {
+                permit.release();
+            }
+        }
+    }
+
+    final private static int CONNECT_TIMEOUT = 40 * 1000;
+    final private static int MAX_CONNECTIONS_PER_HOST = 4;
+    final private static int MAX_DRAINED_BYTES = 64 * 1024;
+    final private static int READ_TIMEOUT = 30 * 1000;
+
+    static {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.FROYO) {
+            /* Connection reuse is broken in HttpURLConnection before Froyo. */
+            System.setProperty("http.keepAlive", "false");
+        } else {
+            System.setProperty("http.maxConnections", String.valueOf(MAX_CONNECTIONS_PER_HOST));
+        }
+    }
+
+    /*
+     * Return: whether the stream is read to its end.
+     */
+    private static boolean drain(final InputStream input) {
+        final byte[] buff = new byte[4096];
+        int count = 0;
+        try {
+            int len;
+            while ((len = input.read(buff)) != -1) {
+                count += len;
+                if (count > MAX_DRAINED_BYTES) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (final IOException exception) {
+            return false;
+        }
+    }
+
+    final private Map<String, Semaphore> permits;
+
+    public UrlConnectionTransport() {
+        this.permits = new HashMap<String, Semaphore>();
+    }
+
+    @Override
+    public Response execute(final String url, final Map<String, String> headers, final byte[] body)
+            throws IOException {
+        final URL target = new URL(url);
+        final Semaphore permit = getPermit(target);
+        permit.acquireUninterruptibly();
+        boolean isSucceeded = false;
+        try {
+            final HttpURLConnection connection = (HttpURLConnection) target.openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+            for (final Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            if (body == null) {
+                connection.setRequestMethod("GET");
+            } else {
+                connection.setRequestMethod("POST");
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(body.length);
+                final OutputStream output = connection.getOutputStream();
+                try {
+                    output.write(body);
+                    output.flush();
+                } finally {
+                    output.close();
+                }
+            }
+            final int status = connection.getResponseCode();
+            InputStream input = (status < HttpURLConnection.HTTP_BAD_REQUEST) ? connection.getInputStream()
+                    : connection.getErrorStream();
+            if (input == null) {
+                input = new ByteArrayInputStream(new byte[0]);
+            }
+            final Map<String, String> responseHeaders = new HashMap<String, String>();
+            for (final Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+                /* The status line comes with a null name. */
+                if (header.getKey() != null && !header.getValue().isEmpty()) {
+                    responseHeaders.put(header.getKey().toLowerCase(), header.getValue().get(0));
+                }
+            }
+            final Response ret = new Response(status, responseHeaders, new Body(input, connection, permit));
+            isSucceeded = true;
+            return ret;
+        } finally {
+            if (!isSucceeded) {
+                permit.release();
+            }
+        }
+    }
+
+    private synchronized Semaphore getPermit(final URL url) {
+        final String host = url.getHost() + ":" + url.getPort();
+        Semaphore ret = permits.get(host);
+        if (ret == null) {
+            ret = new Semaphore(MAX_CONNECTIONS_PER_HOST);
+            permits.put(host, ret);
+        }
+        return ret;
+    }
+}
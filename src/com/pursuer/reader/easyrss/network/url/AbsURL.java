@@ -12,6 +12,8 @@
 package com.pursuer.reader.easyrss.network.url;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 
 import org.apache.http.NameValuePair;
@@ -79,13 +81,33 @@ public abstract class AbsURL {
         params.add(new BasicNameValuePair(key, Uri.encode(value)));
     }
 
+    /*
+     * Replaces the values of the key with the given ones, one parameter each.
+     */
+    protected void addParams(final String key, final Collection<String> values) {
+        for (final Iterator<NameValuePair> iter = params.iterator(); iter.hasNext();) {
+            if (iter.next().getName().equals(key)) {
+                iter.remove();
+            }
+        }
+        for (final String value : values) {
+            params.add(new BasicNameValuePair(key, Uri.encode(value)));
+        }
+    }
+
     protected abstract String getBaseURL();
 
+    /*
+     * Return: the URL with its parameters, but without the cache-buster of list
+     * queries, which is the same for the same resource.
+     */
+    public String getCacheKey() {
+        return getURL() + "?" + paramsToString(getStableParams());
+    }
+
     public List<NameValuePair> getParams() {
         if (isListQuery) {
-            final List<NameValuePair> ret = new ArrayList<NameValuePair>(params);
-            ret.add(new BasicNameValuePair("client", "android"));
-            ret.add(new BasicNameValuePair("output", "json"));
+            final List<NameValuePair> ret = getStableParams();
             ret.add(new BasicNameValuePair("ck", String.valueOf(System.currentTimeMillis())));
             return ret;
         } else {
@@ -97,6 +119,15 @@ public abstract class AbsURL {
         return paramsToString(getParams());
     }
 
+    private List<NameValuePair> getStableParams() {
+        final List<NameValuePair> ret = new ArrayList<NameValuePair>(params);
+        if (isListQuery) {
+            ret.add(new BasicNameValuePair("client", "android"));
+            ret.add(new BasicNameValuePair("output", "json"));
+        }
+        return ret;
+    }
+
     public String getURL() {
         return (isHttpsConnection ? "https://" : "http://") + getBaseURL();
     }
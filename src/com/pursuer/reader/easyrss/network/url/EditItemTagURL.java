@@ -11,21 +11,34 @@
 
 package com.pursuer.reader.easyrss.network.url;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import com.pursuer.reader.easyrss.data.DataMgr;
 import com.pursuer.reader.easyrss.data.Setting;
 
 public class EditItemTagURL extends AbsURL {
     private static final String URL_API_EDIT_TAG = URL_GOOGLE_READER_API + "/edit-tag?client=scroll";
 
-    private String itemUid;
+    private List<String> itemUids;
     private String tagUid;
     private boolean isAdd;
 
     public EditItemTagURL(final boolean isHttpsConnection, final String itemUid, final String tagUid,
             final boolean isAdd) {
+        this(isHttpsConnection, Collections.singletonList(itemUid), tagUid, isAdd);
+    }
+
+    /*
+     * itemUids: the items to edit by a single request, each sent as an "i"
+     * parameter.
+     */
+    public EditItemTagURL(final boolean isHttpsConnection, final List<String> itemUids, final String tagUid,
+            final boolean isAdd) {
         super(isHttpsConnection, true, false);
 
-        setItemUid(itemUid);
+        setItemUids(itemUids);
         setTagUid(tagUid);
         setAdd(isAdd);
         init();
@@ -39,11 +52,11 @@ public class EditItemTagURL extends AbsURL {
             return false;
         }
         final EditItemTagURL url = (EditItemTagURL) obj;
-        return (itemUid.equals(url.itemUid) && tagUid.equals(url.tagUid) && isAdd == url.isAdd);
+        return (itemUids.equals(url.itemUids) && tagUid.equals(url.tagUid) && isAdd == url.isAdd);
     }
 
-    public String getItemUid() {
-        return itemUid;
+    public List<String> getItemUids() {
+        return itemUids;
     }
 
     public String getTagUid() {
@@ -78,9 +91,9 @@ public class EditItemTagURL extends AbsURL {
         }
     }
 
-    public void setItemUid(final String itemUid) {
-        this.itemUid = itemUid;
-        addParam("i", itemUid);
+    public void setItemUids(final List<String> itemUids) {
+        this.itemUids = new ArrayList<String>(itemUids);
+        addParams("i", itemUids);
     }
 
     public void setTagUid(final String tagUid) {
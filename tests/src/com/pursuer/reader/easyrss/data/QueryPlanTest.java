@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Pursuer (http://pursuer.me).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Pursuer - initial API and implementation
+ ******************************************************************************/
+
+package com.pursuer.reader.easyrss.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.pursuer.reader.easyrss.Home;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+/*
+ * Checks with EXPLAIN QUERY PLAN that the hot queries are answered from the
+ * indexes created by DBOpenHelper: no scan of a whole table and no temporary
+ * B-tree for sorting. The lists read whole by HomeViewCtrl are only checked
+ * for sorting.
+ */
+public class QueryPlanTest extends AndroidTestCase {
+    final private static String FEED_UID = "feed/http://example.com/rss";
+    final private static String TAG_UID = "user/-/label/news";
+    final private static int[] VIEW_TYPES = { Home.VIEW_TYPE_ALL, Home.VIEW_TYPE_UNREAD, Home.VIEW_TYPE_STARRED };
+
+    private SQLiteDatabase database;
+
+    /*
+     * Asserts that the query reads indexes only, and that it seeks through an
+     * index on the filter column, if given. With a stream filter, the items
+     * must never be scanned, not even along an index.
+     */
+    private void assertIndexed(final String sql, final String[] args, final String filterColumn,
+            final boolean isStreamFiltered) {
+        final List<String> plan = assertNotSorted(sql, args);
+        boolean isFiltered = (filterColumn == null);
+        for (final String detail : plan) {
+            assertFalse(sql + ": " + plan, detail.startsWith("SCAN") && !detail.contains("INDEX"));
+            assertFalse(sql + ": " + plan, isStreamFiltered && detail.startsWith("SCAN")
+                    && Arrays.asList(detail.split(" ")).contains(Item.TABLE_NAME));
+            if (detail.contains("INDEX") && detail.contains(String.valueOf(filterColumn))) {
+                isFiltered = true;
+            }
+        }
+        assertTrue(sql + ": " + plan, isFiltered);
+    }
+
+    private void assertItemPageIndexed(final String streamUid) {
+        final boolean isTag = DataUtils.isTagUid(streamUid);
+        for (final int viewType : VIEW_TYPES) {
+            final String filterColumn;
+            if (isTag) {
+                /* The links are walked by tag, the view is filtered on the items joined. */
+                filterColumn = ItemTag._TAGID;
+            } else if (viewType == Home.VIEW_TYPE_UNREAD) {
+                filterColumn = ItemState._ISREAD;
+            } else if (viewType == Home.VIEW_TYPE_STARRED) {
+                filterColumn = ItemState._ISSTARRED;
+            } else if (streamUid.length() > 0) {
+                filterColumn = Item._SOURCEURI;
+            } else {
+                filterColumn = null;
+            }
+            for (int i = 0; i < 4; i++) {
+                final boolean isDescending = (i % 2 == 0);
+                final Long lastTimestamp = (i < 2) ? null : Long.valueOf(1000L);
+                final List<String> args = new ArrayList<String>();
+                final String sql = DataMgr.buildItemPageQuery(database, streamUid, viewType, isDescending,
+                        lastTimestamp, "uid", 20, null, args);
+                assertIndexed(sql, args.toArray(new String[args.size()]), filterColumn, streamUid.length() > 0);
+            }
+        }
+    }
+
+    private List<String> assertNotSorted(final String sql, final String[] args) {
+        final List<String> plan = explain(sql, args);
+        for (final String detail : plan) {
+            assertFalse(sql + ": " + plan, detail.contains("TEMP B-TREE"));
+        }
+        return plan;
+    }
+
+    private List<String> explain(final String sql, final String[] args) {
+        final List<String> ret = new ArrayList<String>();
+        final Cursor cur = database.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        final int column = cur.getColumnIndex("detail");
+        for (cur.moveToFirst(); !cur.isAfterLast(); cur.moveToNext()) {
+            ret.add(cur.getString(column));
+        }
+        cur.close();
+        return ret;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        DBOpenHelper.init(getContext());
+        database = SQLiteDatabase.create(null);
+        DBOpenHelper.getInstance().onCreate(database);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        database.close();
+        super.tearDown();
+    }
+
+    public void testFeedItemPage() {
+        assertItemPageIndexed(FEED_UID);
+    }
+
+    public void testGlobalItemPage() {
+        assertItemPageIndexed("");
+    }
+
+    public void testHomeSettingByName() {
+        assertIndexed("SELECT * FROM " + Setting.TABLE_NAME + " WHERE " + Setting._NAME + "=?",
+                new String[] { Setting.SETTING_GLOBAL_VIEW_TYPE }, Setting._NAME, false);
+    }
+
+    public void testHomeSubscriptionList() {
+        assertNotSorted("SELECT " + Subscription._UID + "," + Subscription._TITLE + "," + Subscription._UNREADCOUNT
+                + "," + Subscription._ICON + " FROM " + Subscription.TABLE_NAME, null);
+    }
+
+    public void testHomeTagList() {
+        assertNotSorted("SELECT " + Tag._UID + "," + Tag._UNREADCOUNT + " FROM " + Tag.TABLE_NAME, null);
+    }
+
+    public void testTagItemPage() {
+        assertItemPageIndexed(TAG_UID);
+    }
+
+    public void testUnreadCount() {
+        assertIndexed(SQLConstants.SELECT_UNREAD_COUNT, new String[] { TAG_UID }, null, false);
+    }
+}
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Pursuer (http://pursuer.me).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Pursuer - initial API and implementation
+ ******************************************************************************/
+
+package com.pursuer.reader.easyrss.data.parser;
+
+import junit.framework.TestCase;
+
+public class HtmlTextTest extends TestCase {
+    public void testLatin1Entities() {
+        assertEquals("\u00A0\u00E9\u00C9\u00FF\u00BD\u00D7\u00F7", HtmlText.toPlainText("&nbsp;&eacute;&Eacute;&yuml;"
+                + "&frac12;&times;&divide;"));
+        assertEquals("Caf\u00E9 \u00AB\u00A0na\u00EFve\u00A0\u00BB", HtmlText.toPlainText("Caf&eacute; &laquo;&nbsp;"
+                + "na&iuml;ve&nbsp;&raquo;"));
+    }
+
+    public void testLoneLessThan() {
+        assertEquals("a < b and c", HtmlText.toPlainText("a < b and c"));
+        assertEquals("x<y", HtmlText.toPlainText("x<y"));
+        assertEquals("1<2 ", HtmlText.toPlainText("1<2 "));
+        assertEquals("ends with <", HtmlText.toPlainText("ends with <"));
+    }
+
+    public void testNumericEntities() {
+        assertEquals("A\u00E9\uD83D\uDE00", HtmlText.toPlainText("&#65;&#xE9;&#x1F600;"));
+        assertEquals("&#xZZ;", HtmlText.toPlainText("&#xZZ;"));
+    }
+
+    public void testOtherEntities() {
+        assertEquals("<a & b>", HtmlText.toPlainText("&lt;a &amp; b&gt;"));
+        assertEquals("\u2018\u2019\u201C\u201D\u2026\u20AC\u2122\u0152", HtmlText.toPlainText("&lsquo;&rsquo;&ldquo;"
+                + "&rdquo;&hellip;&euro;&trade;&OElig;"));
+    }
+
+    public void testPlain() {
+        final String title = "Plain title";
+        assertTrue(HtmlText.isPlain(title));
+        assertTrue(title == HtmlText.toPlainText(title));
+        assertEquals(null, HtmlText.toPlainText(null));
+    }
+
+    public void testTags() {
+        assertEquals("bold and italic", HtmlText.toPlainText("<b>bold</b> and <i>italic</i>"));
+        assertEquals("a b", HtmlText.toPlainText("a<br/>\n <!-- c -->b"));
+    }
+
+    public void testUnknownEntities() {
+        assertEquals("&foo; &amp &EACUTE;", HtmlText.toPlainText("&foo; &amp &EACUTE;"));
+    }
+
+    public void testWhiteSpaces() {
+        assertEquals(" a b ", HtmlText.toPlainText("\n a \t\r\n b  "));
+    }
+}